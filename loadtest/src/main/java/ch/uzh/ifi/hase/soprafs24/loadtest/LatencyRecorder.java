@@ -0,0 +1,151 @@
+package ch.uzh.ifi.hase.soprafs24.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.LongStream;
+
+/**
+ * Records the responses per operation: the latency from the time the request
+ * was due (not when it could be sent, which hides the waiting time of a
+ * saturated server, i.e., coordinated omission), the service time from
+ * sending until the response, and the number of responses per status code.
+ * Requests that failed count as answered when they failed, requests that were
+ * dropped instead of sent or were still unanswered count as answered at the
+ * end of the run, so they are in the latency but not in the service time.
+ * Times are recorded in microseconds.
+ */
+public final class LatencyRecorder {
+
+  private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+  private static final int SIGNIFICANT_DIGITS = 3;
+  private static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+
+  private final Map<Operation, Recording> recordings = new EnumMap<>(Operation.class);
+
+  private static final class Recording {
+    private final Histogram latency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private final Histogram serviceTime = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    private final LongAdder failed = new LongAdder();
+    // when the dropped and unanswered requests were due, recorded in the latency once the run has ended
+    private final LongStream.Builder dueAtEnd = LongStream.builder();
+    private long dropped;
+    private long unanswered;
+  }
+
+  public LatencyRecorder() {
+    for (Operation operation : Operation.values()) {
+      recordings.put(operation, new Recording());
+    }
+  }
+
+  public void recordResponse(Operation operation, int statusCode, long dueNanos, long sentNanos, long receivedNanos) {
+    Recording recording = recordings.get(operation);
+    recording.latency.recordValue(toMicros(receivedNanos - dueNanos));
+    recording.serviceTime.recordValue(toMicros(receivedNanos - sentNanos));
+    recording.statusCodes.computeIfAbsent(statusCode, code -> new LongAdder()).increment();
+  }
+
+  /**
+   * A request that got no response (e.g. the connection was refused or timed
+   * out).
+   */
+  public void recordFailure(Operation operation, long dueNanos, long failedNanos) {
+    Recording recording = recordings.get(operation);
+    recording.latency.recordValue(toMicros(failedNanos - dueNanos));
+    recording.failed.increment();
+  }
+
+  /**
+   * A request that was not sent since too many requests were in flight. Only
+   * called by the thread that sends the requests.
+   */
+  public void recordDropped(Operation operation, long dueNanos) {
+    Recording recording = recordings.get(operation);
+    recording.dueAtEnd.add(dueNanos);
+    recording.dropped++;
+  }
+
+  /**
+   * A request that was still waiting for a response at the end of the run.
+   * Only called by the thread that sends the requests.
+   */
+  public void recordUnanswered(Operation operation, long dueNanos) {
+    Recording recording = recordings.get(operation);
+    recording.dueAtEnd.add(dueNanos);
+    recording.unanswered++;
+  }
+
+  /**
+   * Records the latency of the dropped and the unanswered requests, from when
+   * they were due until the end of the run.
+   */
+  public void recordEnd(long endNanos) {
+    recordings.values().forEach(recording -> recording.dueAtEnd.build()
+        .forEach(dueNanos -> recording.latency.recordValue(toMicros(endNanos - dueNanos))));
+  }
+
+  /**
+   * The results per endpoint, with the throughput over the given time.
+   */
+  public Map<String, Object> toReport(double measuredSeconds) {
+    Map<String, Object> report = new LinkedHashMap<>();
+    recordings.forEach((operation, recording) -> {
+      long count = recording.serviceTime.getTotalCount();
+      if (count == 0 && recording.failed.sum() == 0 && recording.dropped == 0 && recording.unanswered == 0) {
+        return;
+      }
+      Map<String, Object> endpoint = new LinkedHashMap<>();
+      endpoint.put("count", count);
+      endpoint.put("throughput", count / measuredSeconds);
+      Map<String, Long> statusCodes = new TreeMap<>();
+      recording.statusCodes.forEach((code, responses) -> statusCodes.put(String.valueOf(code), responses.sum()));
+      endpoint.put("statusCodes", statusCodes);
+      endpoint.put("failed", recording.failed.sum());
+      endpoint.put("dropped", recording.dropped);
+      endpoint.put("unanswered", recording.unanswered);
+      endpoint.put("latencyMicros", summarize(recording.latency));
+      endpoint.put("serviceTimeMicros", summarize(recording.serviceTime));
+      // the whole histogram, so results of several runs can be merged or compared at any percentile
+      endpoint.put("latencyHistogram", encode(recording.latency));
+      report.put(operation.getEndpoint(), endpoint);
+    });
+    return report;
+  }
+
+  private static Map<String, Object> summarize(Histogram histogram) {
+    Map<String, Object> summary = new LinkedHashMap<>();
+    summary.put("min", histogram.getMinValue());
+    summary.put("mean", histogram.getMean());
+    for (double percentile : PERCENTILES) {
+      summary.put("p" + (percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : percentile),
+          histogram.getValueAtPercentile(percentile));
+    }
+    summary.put("max", histogram.getMaxValue());
+    return summary;
+  }
+
+  // base64 of HdrHistogram's compressed encoding, read with Histogram.decodeFromCompressedByteBuffer
+  private static String encode(Histogram histogram) {
+    ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+    int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+    byte[] bytes = new byte[length];
+    buffer.flip();
+    buffer.get(bytes);
+    return Base64.getEncoder().encodeToString(bytes);
+  }
+
+  private static long toMicros(long nanos) {
+    return Math.min(HIGHEST_TRACKABLE_MICROS, Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+  }
+}
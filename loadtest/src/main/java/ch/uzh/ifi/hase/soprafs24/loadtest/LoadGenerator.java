@@ -0,0 +1,129 @@
+package ch.uzh.ifi.hase.soprafs24.loadtest;
+
+import java.net.http.HttpRequest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the requests at a constant rate (an open model): the k-th request is
+ * due at {@code start + k / rate}, no matter whether the earlier ones have
+ * been answered. A slow server therefore shows up as latency instead of as a
+ * lower request rate. Requests that are due while {@code maxInFlight}
+ * requests are waiting for a response are dropped; they are counted and their
+ * latency is recorded as if they were answered at the end of the run, so the
+ * dropped requests do not hide how far the server fell behind. So are the
+ * requests that are still unanswered when the run ends.
+ */
+public final class LoadGenerator {
+
+  private final LoadTestOptions options;
+  private final UserApiClient client;
+  private final LatencyRecorder recorder;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  // the measured requests waiting for a response, whoever removes one records it
+  private final Set<PendingRequest> pending = ConcurrentHashMap.newKeySet();
+
+  // how late the requests were sent, i.e., whether the generator kept up
+  private long maxSendDelayNanos;
+  private long sent;
+
+  private static final class PendingRequest {
+    private final Operation operation;
+    private final long due;
+
+    private PendingRequest(Operation operation, long due) {
+      this.operation = operation;
+      this.due = due;
+    }
+  }
+
+  public LoadGenerator(LoadTestOptions options, UserApiClient client, LatencyRecorder recorder) {
+    this.options = options;
+    this.client = client;
+    this.recorder = recorder;
+  }
+
+  /**
+   * Runs the warmup and the measured part, and waits for the outstanding
+   * responses. Only requests that are due after the warmup are recorded.
+   */
+  public void run() throws InterruptedException {
+    Random random = new Random(options.getSeed());
+    double intervalNanos = TimeUnit.SECONDS.toNanos(1) / options.getRate();
+    long start = System.nanoTime();
+    long measuredFrom = start + options.getWarmup().toNanos();
+    long end = measuredFrom + options.getDuration().toNanos();
+
+    for (long k = 0; ; k++) {
+      long due = start + (long) (k * intervalNanos);
+      if (due - end >= 0) {
+        break;
+      }
+      long now;
+      while ((now = System.nanoTime()) - due < 0) {
+        LockSupport.parkNanos(due - now);
+      }
+      boolean measured = due - measuredFrom >= 0;
+      Operation operation = options.getMix().next(random);
+      if (inFlight.get() >= options.getMaxInFlight()) {
+        if (measured) {
+          recorder.recordDropped(operation, due);
+        }
+        continue;
+      }
+      send(operation, client.request(operation, random), due, measured);
+      maxSendDelayNanos = Math.max(maxSendDelayNanos, now - due);
+    }
+
+    long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+    while (inFlight.get() > 0 && System.nanoTime() - deadline < 0) {
+      Thread.sleep(10);
+    }
+    for (PendingRequest request : pending) {
+      if (pending.remove(request)) {
+        recorder.recordUnanswered(request.operation, request.due);
+      }
+    }
+    recorder.recordEnd(System.nanoTime());
+  }
+
+  private void send(Operation operation, HttpRequest request, long due, boolean measured) {
+    inFlight.incrementAndGet();
+    sent++;
+    PendingRequest pendingRequest = new PendingRequest(operation, due);
+    if (measured) {
+      pending.add(pendingRequest);
+    }
+    long sentAt = System.nanoTime();
+    client.send(operation, request).whenComplete((response, failure) -> {
+      long received = System.nanoTime();
+      inFlight.decrementAndGet();
+      // not measured, or already recorded as unanswered
+      if (!pending.remove(pendingRequest)) {
+        return;
+      }
+      if (failure != null) {
+        recorder.recordFailure(operation, due, received);
+      } else {
+        recorder.recordResponse(operation, response.statusCode(), due, sentAt, received);
+      }
+    });
+  }
+
+  /**
+   * What the generator itself did, recorded along with the results.
+   */
+  public Map<String, Object> toReport() {
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("sent", sent);
+    report.put("maxSendDelayMicros", TimeUnit.NANOSECONDS.toMicros(maxSendDelayNanos));
+    report.put("unanswered", inFlight.get());
+    return report;
+  }
+}
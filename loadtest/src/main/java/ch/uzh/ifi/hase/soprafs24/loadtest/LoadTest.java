@@ -0,0 +1,117 @@
+package ch.uzh.ifi.hase.soprafs24.loadtest;
+
+import ch.uzh.ifi.hase.soprafs24.Application;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Load Test
+ * Starts the application on a random port with an in-memory database (or uses
+ * the one given with {@code --target}), seeds users, sends the mix of requests
+ * at a constant rate and writes the latency percentiles per endpoint as JSON.
+ * Run with {@code ./gradlew :loadtest:run --args='--rate=500 --duration=2m'}.
+ */
+public final class LoadTest {
+
+  private LoadTest() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    LoadTestOptions options = LoadTestOptions.parse(args);
+    ConfigurableApplicationContext application = null;
+    URI baseUri;
+    if (options.getTarget() == null) {
+      application = startApplication(options.getApplicationArguments());
+      baseUri = URI.create("http://localhost:" + ((WebServerApplicationContext) application).getWebServer().getPort());
+    } else {
+      baseUri = URI.create(options.getTarget());
+    }
+    try {
+      UserApiClient client = new UserApiClient(baseUri, options.getPageSize());
+      client.seed(options.getUsers());
+      System.out.printf("Seeded %d users, sending %s at %.0f requests/s for %s after a warmup of %s%n",
+          client.getSeededUsers(), options.getMix(), options.getRate(), options.getDuration(), options.getWarmup());
+
+      LatencyRecorder recorder = new LatencyRecorder();
+      LoadGenerator generator = new LoadGenerator(options, client, recorder);
+      generator.run();
+
+      double measuredSeconds = options.getDuration().toNanos() / 1e9;
+      Map<String, Object> results = new LinkedHashMap<>();
+      results.put("timestamp", Instant.now().toString());
+      results.put("options", options.toMap());
+      results.put("measuredSeconds", measuredSeconds);
+      results.put("generator", generator.toReport());
+      Map<String, Object> endpoints = recorder.toReport(measuredSeconds);
+      results.put("endpoints", endpoints);
+      write(results, options.getOutput());
+      printSummary(endpoints);
+      System.out.println("Results written to " + options.getOutput().toAbsolutePath());
+    } finally {
+      if (application != null) {
+        application.close();
+      }
+    }
+  }
+
+  private static ConfigurableApplicationContext startApplication(List<String> applicationArguments) {
+    List<String> args = new ArrayList<>(List.of(
+        "--server.port=0",
+        "--spring.datasource.url=jdbc:h2:mem:loadtest-" + UUID.randomUUID(),
+        "--spring.main.banner-mode=off",
+        "--logging.level.root=WARN",
+        // all requests come from one address, which must not be throttled like a brute force attack
+        "--auth.login-throttle.address.capacity=100000",
+        "--auth.login-throttle.address.refill-interval=1ms",
+        "--auth.login-throttle.username.capacity=100000",
+        "--auth.login-throttle.username.refill-interval=1ms"));
+    // given arguments come last and win
+    args.addAll(applicationArguments);
+    return new SpringApplicationBuilder(Application.class).run(args.toArray(new String[0]));
+  }
+
+  private static void write(Map<String, Object> results, Path output) throws IOException {
+    Path parent = output.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(output.toFile(), results);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void printSummary(Map<String, Object> endpoints) {
+    System.out.printf("%-20s %8s %8s %10s %10s %10s %10s %10s%n",
+        "endpoint", "count", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+    endpoints.forEach((endpoint, value) -> {
+      Map<String, Object> result = (Map<String, Object>) value;
+      Map<String, Object> latency = (Map<String, Object>) result.get("latencyMicros");
+      long errors = (long) result.get("failed") + (long) result.get("dropped") + (long) result.get("unanswered");
+      for (Map.Entry<String, Long> status : ((Map<String, Long>) result.get("statusCodes")).entrySet()) {
+        if (status.getKey().startsWith("5")) {
+          errors += status.getValue();
+        }
+      }
+      System.out.printf("%-20s %8d %8d %10.2f %10.2f %10.2f %10.2f %10.2f%n", endpoint, (long) result.get("count"),
+          errors, millis(latency.get("p50")), millis(latency.get("p90")), millis(latency.get("p99")),
+          millis(latency.get("p99.9")), millis(latency.get("max")));
+    });
+  }
+
+  private static double millis(Object micros) {
+    return ((Number) micros).longValue() / 1000.0;
+  }
+}
@@ -0,0 +1,144 @@
+package ch.uzh.ifi.hase.soprafs24.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The options of the load test, given as {@code --name=value}. All other
+ * arguments are passed on to the application (e.g.
+ * {@code --users.write-behind.enabled=true}).
+ */
+public final class LoadTestOptions {
+
+  private double rate = 200;
+  private Duration duration = Duration.ofSeconds(60);
+  private Duration warmup = Duration.ofSeconds(10);
+  private int users = 1000;
+  private OperationMix mix = OperationMix.parse("get=55,list=10,update=20,login=10,create=5");
+  private int pageSize = 100;
+  private long seed = 42;
+  private int maxInFlight = 2000;
+  private String target;
+  private Path output = Paths.get("build", "results", "loadtest", "results.json");
+  private final List<String> applicationArguments = new ArrayList<>();
+
+  public static LoadTestOptions parse(String... args) {
+    LoadTestOptions options = new LoadTestOptions();
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      String name = arg.startsWith("--") && equals > 2 ? arg.substring(2, equals) : "";
+      String value = equals < 0 ? "" : arg.substring(equals + 1);
+      switch (name) {
+        case "rate":
+          options.rate = Double.parseDouble(value);
+          break;
+        case "duration":
+          options.duration = DurationStyle.detectAndParse(value);
+          break;
+        case "warmup":
+          options.warmup = DurationStyle.detectAndParse(value);
+          break;
+        case "users":
+          options.users = Integer.parseInt(value);
+          break;
+        case "mix":
+          options.mix = OperationMix.parse(value);
+          break;
+        case "page-size":
+          options.pageSize = Integer.parseInt(value);
+          break;
+        case "seed":
+          options.seed = Long.parseLong(value);
+          break;
+        case "max-in-flight":
+          options.maxInFlight = Integer.parseInt(value);
+          break;
+        case "target":
+          options.target = value;
+          break;
+        case "output":
+          options.output = Paths.get(value);
+          break;
+        default:
+          options.applicationArguments.add(arg);
+      }
+    }
+    if (options.rate <= 0 || options.users < 1 || options.maxInFlight < 1) {
+      throw new IllegalArgumentException("rate, users and max-in-flight must be positive");
+    }
+    return options;
+  }
+
+  /**
+   * The options as they are recorded in the results.
+   */
+  public Map<String, Object> toMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("rate", rate);
+    map.put("duration", duration.toString());
+    map.put("warmup", warmup.toString());
+    map.put("users", users);
+    map.put("mix", mix.toString());
+    map.put("pageSize", pageSize);
+    map.put("seed", seed);
+    map.put("maxInFlight", maxInFlight);
+    map.put("target", target);
+    map.put("applicationArguments", applicationArguments);
+    return map;
+  }
+
+  public double getRate() {
+    return rate;
+  }
+
+  public Duration getDuration() {
+    return duration;
+  }
+
+  public Duration getWarmup() {
+    return warmup;
+  }
+
+  public int getUsers() {
+    return users;
+  }
+
+  public OperationMix getMix() {
+    return mix;
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  /**
+   * The base URL of a running application, null to start one.
+   */
+  public String getTarget() {
+    return target;
+  }
+
+  public Path getOutput() {
+    return output;
+  }
+
+  public List<String> getApplicationArguments() {
+    return Collections.unmodifiableList(applicationArguments);
+  }
+}
@@ -0,0 +1,22 @@
+package ch.uzh.ifi.hase.soprafs24.loadtest;
+
+/**
+ * The requests of the load test, named after their endpoint in the report.
+ */
+public enum Operation {
+  CREATE("POST /users"),
+  LOGIN("POST /users/login"),
+  LIST("GET /users"),
+  GET("GET /users/{id}"),
+  UPDATE("PUT /users/{id}");
+
+  private final String endpoint;
+
+  Operation(String endpoint) {
+    this.endpoint = endpoint;
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+}
@@ -0,0 +1,78 @@
+package ch.uzh.ifi.hase.soprafs24.loadtest;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The share of each operation in the requests, given as relative weights,
+ * e.g. {@code get=55,list=10,update=20,login=10,create=5}. Operations that are
+ * not named are not sent.
+ */
+public final class OperationMix {
+
+  private final Map<Operation, Integer> weights;
+  private final Operation[] operations;
+  // cumulative weights, in the order of the operations
+  private final int[] thresholds;
+
+  private OperationMix(Map<Operation, Integer> weights) {
+    this.weights = weights;
+    this.operations = weights.keySet().toArray(new Operation[0]);
+    this.thresholds = new int[operations.length];
+    int total = 0;
+    for (int i = 0; i < operations.length; i++) {
+      total += weights.get(operations[i]);
+      thresholds[i] = total;
+    }
+  }
+
+  public static OperationMix parse(String mix) {
+    Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+    for (String entry : mix.split(",")) {
+      String[] parts = entry.trim().split("=");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("The mix must be operation=weight,..., not " + mix);
+      }
+      Operation operation = Operation.valueOf(parts[0].trim().toUpperCase(Locale.ROOT));
+      int weight = Integer.parseInt(parts[1].trim());
+      if (weight < 0) {
+        throw new IllegalArgumentException("The weight of " + operation + " must not be negative");
+      }
+      if (weight > 0) {
+        weights.put(operation, weight);
+      }
+    }
+    if (weights.isEmpty()) {
+      throw new IllegalArgumentException("The mix must contain at least one operation");
+    }
+    return new OperationMix(weights);
+  }
+
+  public Operation next(Random random) {
+    int value = random.nextInt(thresholds[thresholds.length - 1]);
+    for (int i = 0; i < thresholds.length; i++) {
+      if (value < thresholds[i]) {
+        return operations[i];
+      }
+    }
+    throw new IllegalStateException();
+  }
+
+  public Map<Operation, Integer> getWeights() {
+    return weights;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder mix = new StringBuilder();
+    weights.forEach((operation, weight) -> {
+      if (mix.length() > 0) {
+        mix.append(',');
+      }
+      mix.append(operation.name().toLowerCase(Locale.ROOT)).append('=').append(weight);
+    });
+    return mix.toString();
+  }
+}
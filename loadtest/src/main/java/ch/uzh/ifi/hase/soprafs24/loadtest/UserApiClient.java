@@ -0,0 +1,203 @@
+package ch.uzh.ifi.hase.soprafs24.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The requests of the operations against the user API, and the users they
+ * work with: the seeded users, the users created during the run, and the
+ * tokens of the users that logged in, which are sent along with the requests
+ * for their own profile.
+ */
+public final class UserApiClient {
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+  private final URI baseUri;
+  private final HttpClient httpClient;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  // users are named after the run, so a target can be loaded several times
+  private final String runId = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+  private final int pageSize;
+
+  private final List<Long> seededUserIds = new ArrayList<>();
+  private final Map<Long, String> seededUsernames = new ConcurrentHashMap<>();
+  private final List<Long> createdUserIds = new CopyOnWriteArrayList<>();
+  private final Map<Long, String> tokens = new ConcurrentHashMap<>();
+  private final AtomicLong createSequence = new AtomicLong();
+
+  public UserApiClient(URI baseUri, int pageSize) {
+    this.baseUri = baseUri;
+    this.pageSize = pageSize;
+    this.httpClient = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(TIMEOUT)
+        .build();
+  }
+
+  /**
+   * Imports the users in one request (POST /users/import).
+   */
+  public void seed(int users) throws IOException, InterruptedException {
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < users; i++) {
+      ObjectNode user = objectMapper.createObjectNode();
+      user.put("username", "seed-" + runId + "-" + i);
+      user.put("name", "Seeded User " + i);
+      user.put("password", password(user.get("username").asText()));
+      body.append(user).append('\n');
+    }
+    HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/users/import"))
+        .timeout(Duration.ofMinutes(30))
+        .header("Content-Type", "application/x-ndjson")
+        .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+        .build();
+    HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() != 200) {
+      throw new IllegalStateException("Seeding failed with " + response.statusCode() + ": " + response.body());
+    }
+    for (JsonNode result : objectMapper.readTree(response.body())) {
+      if (result.hasNonNull("id")) {
+        long id = result.get("id").asLong();
+        seededUserIds.add(id);
+        seededUsernames.put(id, result.get("username").asText());
+      }
+    }
+    if (seededUserIds.isEmpty()) {
+      throw new IllegalStateException("No user could be seeded: " + response.body());
+    }
+  }
+
+  public int getSeededUsers() {
+    return seededUserIds.size();
+  }
+
+  /**
+   * The next request of the operation. Called by a single thread only.
+   */
+  public HttpRequest request(Operation operation, Random random) {
+    switch (operation) {
+      case CREATE: {
+        String username = "load-" + runId + "-" + createSequence.incrementAndGet();
+        ObjectNode user = objectMapper.createObjectNode();
+        user.put("username", username);
+        user.put("name", "Load Test User");
+        user.put("password", password(username));
+        return post("/users", user);
+      }
+      case LOGIN: {
+        Long userId = seededUserIds.get(random.nextInt(seededUserIds.size()));
+        String username = seededUsernames.get(userId);
+        ObjectNode credentials = objectMapper.createObjectNode();
+        credentials.put("username", username);
+        credentials.put("password", password(username));
+        return post("/users/login", credentials);
+      }
+      case LIST: {
+        // a random page, the first one at times
+        Long after = random.nextInt(4) == 0 ? null : randomUserId(random);
+        String query = "?limit=" + pageSize + (after == null ? "" : "&after=" + after);
+        return authenticated(HttpRequest.newBuilder(baseUri.resolve("/users" + query)), null).GET().build();
+      }
+      case GET: {
+        Long userId = randomUserId(random);
+        return authenticated(HttpRequest.newBuilder(baseUri.resolve("/users/" + userId)), userId).GET().build();
+      }
+      case UPDATE: {
+        Long userId = randomUserId(random);
+        ObjectNode update = objectMapper.createObjectNode();
+        update.put("birthDate", LocalDate.of(1950, 1, 1).plusDays(random.nextInt(20_000)).toString());
+        return authenticated(HttpRequest.newBuilder(baseUri.resolve("/users/" + userId)), userId)
+            .header("Content-Type", "application/json")
+            .PUT(HttpRequest.BodyPublishers.ofString(update.toString()))
+            .build();
+      }
+      default:
+        throw new IllegalArgumentException(operation.name());
+    }
+  }
+
+  /**
+   * Sends the request. The bodies of created and logged in users are read to
+   * use them in later requests, all others are discarded. A token that is
+   * rejected (e.g. since the user went offline) is not sent anymore.
+   */
+  public CompletableFuture<HttpResponse<String>> send(Operation operation, HttpRequest request) {
+    if (operation != Operation.CREATE && operation != Operation.LOGIN) {
+      return httpClient.sendAsync(request, HttpResponse.BodyHandlers.replacing((String) null)).thenApply(response -> {
+        if (response.statusCode() == 401) {
+          request.headers().firstValue("Authorization")
+              .ifPresent(authorization -> tokens.values().remove(authorization.substring("Bearer ".length())));
+        }
+        return response;
+      });
+    }
+    return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+      remember(operation, response);
+      return response;
+    });
+  }
+
+  private void remember(Operation operation, HttpResponse<String> response) {
+    if (response.statusCode() / 100 != 2) {
+      return;
+    }
+    try {
+      JsonNode user = objectMapper.readTree(response.body());
+      long id = user.get("id").asLong();
+      if (operation == Operation.CREATE) {
+        createdUserIds.add(id);
+      }
+      if (user.hasNonNull("token")) {
+        tokens.put(id, user.get("token").asText());
+      }
+    } catch (IOException | RuntimeException e) {
+      // not a user, nothing to remember
+    }
+  }
+
+  private Long randomUserId(Random random) {
+    int created = createdUserIds.size();
+    int index = random.nextInt(seededUserIds.size() + created);
+    return index < seededUserIds.size() ? seededUserIds.get(index) : createdUserIds.get(index - seededUserIds.size());
+  }
+
+  private HttpRequest post(String path, ObjectNode body) {
+    return HttpRequest.newBuilder(baseUri.resolve(path))
+        .timeout(TIMEOUT)
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+        .build();
+  }
+
+  // with the token of the user if it has logged in
+  private HttpRequest.Builder authenticated(HttpRequest.Builder builder, Long userId) {
+    builder.timeout(TIMEOUT);
+    String token = userId == null ? null : tokens.get(userId);
+    if (token != null) {
+      builder.header("Authorization", "Bearer " + token);
+    }
+    return builder;
+  }
+
+  private static String password(String username) {
+    return "password-" + username;
+  }
+}
@@ -0,0 +1,58 @@
+package ch.uzh.ifi.hase.soprafs24.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyRecorderTest {
+
+  @Test
+  void recordEnd_droppedRequests_recordedWithLatencyUntilTheEnd() {
+    // Arrange
+    LatencyRecorder recorder = new LatencyRecorder();
+    long start = 0;
+    recorder.recordResponse(Operation.GET, 200, start, start, start + TimeUnit.MILLISECONDS.toNanos(1));
+    recorder.recordDropped(Operation.GET, start + TimeUnit.SECONDS.toNanos(1));
+
+    // Act
+    recorder.recordEnd(start + TimeUnit.SECONDS.toNanos(11));
+
+    // Assert
+    @SuppressWarnings("unchecked")
+    Map<String, Object> get = (Map<String, Object>) recorder.toReport(1).get(Operation.GET.getEndpoint());
+    @SuppressWarnings("unchecked")
+    Map<String, Object> latency = (Map<String, Object>) get.get("latencyMicros");
+    @SuppressWarnings("unchecked")
+    Map<String, Object> serviceTime = (Map<String, Object>) get.get("serviceTimeMicros");
+    assertEquals(1L, get.get("count"));
+    assertEquals(1L, get.get("dropped"));
+    assertEquals(10_000_000, (long) latency.get("max"), 10_000);
+    assertEquals(1_000, (long) serviceTime.get("max"), 10);
+  }
+
+  @Test
+  void recordEnd_failedAndUnansweredRequests_recordedInTheLatency() {
+    // Arrange
+    LatencyRecorder recorder = new LatencyRecorder();
+    long start = 0;
+    recorder.recordFailure(Operation.GET, start, start + TimeUnit.SECONDS.toNanos(5));
+    recorder.recordUnanswered(Operation.GET, start + TimeUnit.SECONDS.toNanos(2));
+
+    // Act
+    recorder.recordEnd(start + TimeUnit.SECONDS.toNanos(62));
+
+    // Assert
+    @SuppressWarnings("unchecked")
+    Map<String, Object> get = (Map<String, Object>) recorder.toReport(1).get(Operation.GET.getEndpoint());
+    @SuppressWarnings("unchecked")
+    Map<String, Object> latency = (Map<String, Object>) get.get("latencyMicros");
+    assertEquals(0L, get.get("count"));
+    assertEquals(1L, get.get("failed"));
+    assertEquals(1L, get.get("unanswered"));
+    assertEquals(5_000_000, (long) latency.get("min"), 5_000);
+    assertEquals(60_000_000, (long) latency.get("max"), 60_000);
+  }
+}
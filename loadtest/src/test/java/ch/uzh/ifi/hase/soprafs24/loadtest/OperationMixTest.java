@@ -0,0 +1,55 @@
+package ch.uzh.ifi.hase.soprafs24.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OperationMixTest {
+
+  @Test
+  void next_followsWeights() {
+    // Arrange
+    OperationMix mix = OperationMix.parse("get=60, list=30, create=10, update=0");
+    Random random = new Random(42);
+    Map<Operation, Integer> counts = new EnumMap<>(Operation.class);
+
+    // Act
+    for (int i = 0; i < 100_000; i++) {
+      counts.merge(mix.next(random), 1, Integer::sum);
+    }
+
+    // Assert
+    assertEquals(60_000, counts.get(Operation.GET), 1_000);
+    assertEquals(30_000, counts.get(Operation.LIST), 1_000);
+    assertEquals(10_000, counts.get(Operation.CREATE), 1_000);
+    assertFalse(counts.containsKey(Operation.UPDATE));
+    assertFalse(counts.containsKey(Operation.LOGIN));
+    assertEquals("create=10,list=30,get=60", mix.toString());
+  }
+
+  @Test
+  void parse_invalidMix_throwsIllegalArgument() {
+    assertThrows(IllegalArgumentException.class, () -> OperationMix.parse("get"));
+    assertThrows(IllegalArgumentException.class, () -> OperationMix.parse("delete=10"));
+    assertThrows(IllegalArgumentException.class, () -> OperationMix.parse("get=-1"));
+    assertThrows(IllegalArgumentException.class, () -> OperationMix.parse("get=0"));
+  }
+
+  @Test
+  void parseOptions_splitsLoadTestAndApplicationArguments() {
+    // Act
+    LoadTestOptions options = LoadTestOptions.parse("--rate=500", "--duration=2m", "--mix=get=1",
+        "--users.write-behind.enabled=true");
+
+    // Assert
+    assertEquals(500, options.getRate());
+    assertEquals(120, options.getDuration().getSeconds());
+    assertEquals(Map.of(Operation.GET, 1), options.getMix().getWeights());
+    assertEquals(List.of("--users.write-behind.enabled=true"), options.getApplicationArguments());
+  }
+}
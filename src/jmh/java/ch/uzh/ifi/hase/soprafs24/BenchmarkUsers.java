@@ -0,0 +1,75 @@
+package ch.uzh.ifi.hase.soprafs24;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserSummary;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * BenchmarkUsers
+ * Shared fixtures of the benchmarks: users and their summaries as the
+ * controller gets them from the service, and a non-web application context on
+ * its own in-memory H2 database for the benchmarks that go through the
+ * repository.
+ */
+public final class BenchmarkUsers {
+
+  private BenchmarkUsers() {
+  }
+
+  public static User user(long id) {
+    User user = new User();
+    user.setId(id);
+    user.setName("Benchmark User " + id);
+    user.setUsername("benchmark-user-" + id);
+    user.setPassword("$2a$10$abcdefghijklmnopqrstuuJv3LMRd3q5gkq0sD9bWg1YyFqY3hYxS");
+    user.setToken(UUID.randomUUID().toString());
+    user.setStatus(id % 2 == 0 ? UserStatus.ONLINE : UserStatus.OFFLINE);
+    user.setCreationDate(LocalDate.of(2024, 1, 1));
+    user.setBirthDate(id % 3 == 0 ? null : LocalDate.of(2000, 5, 15));
+    return user;
+  }
+
+  public static List<User> users(int count) {
+    List<User> users = new ArrayList<>(count);
+    for (long id = 1; id <= count; id++) {
+      users.add(user(id));
+    }
+    return users;
+  }
+
+  public static List<UserSummary> summaries(int count) {
+    List<UserSummary> summaries = new ArrayList<>(count);
+    for (User user : users(count)) {
+      summaries.add(new UserSummary(user.getId(), user.getName(), user.getUsername(), user.getStatus(),
+          user.getCreationDate(), user.getBirthDate()));
+    }
+    return summaries;
+  }
+
+  /**
+   * Starts the application without web server on a fresh in-memory database.
+   * Further configuration classes (e.g., bean overrides) can be passed.
+   */
+  public static ConfigurableApplicationContext startApplication(Class<?>... additionalSources) {
+    Class<?>[] sources = new Class<?>[additionalSources.length + 1];
+    sources[0] = Application.class;
+    System.arraycopy(additionalSources, 0, sources, 1, additionalSources.length);
+
+    SpringApplication application = new SpringApplicationBuilder(sources)
+        .web(WebApplicationType.NONE)
+        .build();
+    return application.run(
+        "--spring.datasource.url=jdbc:h2:mem:benchmark-" + UUID.randomUUID(),
+        "--spring.main.banner-mode=off",
+        "--logging.level.root=WARN");
+  }
+}
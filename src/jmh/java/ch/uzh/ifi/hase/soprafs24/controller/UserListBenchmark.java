@@ -0,0 +1,66 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.BenchmarkUsers;
+import ch.uzh.ifi.hase.soprafs24.repository.UserSummary;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserListBenchmark
+ * Measures the two CPU-bound steps of GET /users: converting the users to
+ * their API representation and serializing that list with Jackson (configured
+ * like Spring's default object mapper).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserListBenchmark {
+
+  @Param({ "10", "1000", "10000" })
+  private int users;
+
+  private List<UserSummary> summaries;
+  private List<UserGetDTO> userGetDTOs;
+  private ObjectMapper objectMapper;
+
+  @Setup
+  public void setup() {
+    summaries = BenchmarkUsers.summaries(users);
+    userGetDTOs = UserController.convertToUserGetDTOs(summaries);
+    objectMapper = Jackson2ObjectMapperBuilder.json().build();
+  }
+
+  @Benchmark
+  public List<UserGetDTO> convertList() {
+    return UserController.convertToUserGetDTOs(summaries);
+  }
+
+  @Benchmark
+  public byte[] serializeList() throws JsonProcessingException {
+    return objectMapper.writeValueAsBytes(userGetDTOs);
+  }
+
+  @Benchmark
+  public byte[] convertAndSerializeList() throws JsonProcessingException {
+    return objectMapper.writeValueAsBytes(UserController.convertToUserGetDTOs(summaries));
+  }
+}
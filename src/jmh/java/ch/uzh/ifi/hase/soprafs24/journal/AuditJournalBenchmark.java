@@ -0,0 +1,104 @@
+package ch.uzh.ifi.hase.soprafs24.journal;
+
+import ch.uzh.ifi.hase.soprafs24.constant.AuditEventType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AuditJournalBenchmark
+ * Measures the throughput of the audit journal: appending to the mapped
+ * segments on the writer thread, recording from several request threads at
+ * once (only the ring buffer, see the journal.records.dropped count printed
+ * at the end for events the writer could not keep up with), and as the
+ * baseline one INSERT per event into an audit table of a file-backed H2
+ * database.
+ * Run with: ./gradlew jmh -Pjmh.includes=AuditJournalBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuditJournalBenchmark {
+
+  private static final AuditRecord RECORD =
+      new AuditRecord(0, 1_700_000_000_000L, AuditEventType.LOGIN, 4711L, "benchmark-user-4711");
+
+  private Path directory;
+  private JournalWriter writer;
+  private AuditJournal journal;
+  private SimpleMeterRegistry meterRegistry;
+  private Connection connection;
+  private PreparedStatement insert;
+
+  @Setup
+  public void setup() throws IOException, SQLException {
+    directory = Files.createTempDirectory("journal-benchmark");
+    writer = new JournalWriter(directory.resolve("writer"), (int) DataSize.ofMegabytes(64).toBytes());
+    meterRegistry = new SimpleMeterRegistry();
+    journal = new AuditJournal(true, directory.resolve("journal").toString(), DataSize.ofMegabytes(64), 65536,
+        Duration.ofSeconds(1), meterRegistry);
+
+    connection = DriverManager.getConnection("jdbc:h2:file:" + directory.resolve("audit"), "sa", "");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("create table audit (id bigint auto_increment primary key, created_at bigint, "
+          + "type tinyint, user_id bigint, username varchar(255))");
+    }
+    insert = connection.prepareStatement("insert into audit (created_at, type, user_id, username) values (?, ?, ?, ?)");
+  }
+
+  @TearDown
+  public void tearDown() throws IOException, SQLException {
+    journal.close();
+    System.out.printf("%njournal.records.dropped: %.0f%n", meterRegistry.counter("journal.records.dropped").count());
+    writer.close();
+    connection.close();
+    FileSystemUtils.deleteRecursively(directory);
+  }
+
+  @Benchmark
+  public long writer_append() throws IOException {
+    return writer.append(RECORD);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void journal_record() {
+    journal.record(AuditEventType.LOGIN, ThreadLocalRandom.current().nextLong(1, 100_000), "benchmark-user");
+  }
+
+  @Benchmark
+  public int jdbc_insert() throws SQLException {
+    insert.setLong(1, RECORD.getTimestamp());
+    insert.setInt(2, RECORD.getType().ordinal());
+    insert.setLong(3, RECORD.getUserId());
+    insert.setString(4, RECORD.getUsername());
+    return insert.executeUpdate();
+  }
+}
@@ -0,0 +1,81 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.BenchmarkUsers;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserRepositoryBenchmark
+ * Measures UserRepository.findByUsername against a seeded H2 database, for
+ * existing as well as for unknown usernames, and reading a page of users as
+ * entities compared to as summaries (projection).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserRepositoryBenchmark {
+
+  @Param({ "1000", "100000" })
+  private int users;
+
+  private static final int PAGE_SIZE = 100;
+
+  private ConfigurableApplicationContext context;
+  private UserRepository userRepository;
+
+  @Setup
+  public void setup() {
+    context = BenchmarkUsers.startApplication();
+    userRepository = context.getBean(UserRepository.class);
+
+    List<User> seed = BenchmarkUsers.users(users);
+    seed.forEach(user -> user.setId(null));
+    userRepository.saveAll(seed);
+    userRepository.flush();
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public User findByUsername_existing() {
+    return userRepository.findByUsername("benchmark-user-" + ThreadLocalRandom.current().nextInt(1, users + 1));
+  }
+
+  @Benchmark
+  public User findByUsername_unknown() {
+    return userRepository.findByUsername("unknown-user-" + ThreadLocalRandom.current().nextInt(users));
+  }
+
+  @Benchmark
+  public List<User> listPage_entities() {
+    return userRepository.findAll(PageRequest.of(0, PAGE_SIZE)).getContent();
+  }
+
+  @Benchmark
+  public List<UserSummary> listPage_summaries() {
+    return userRepository.findSummariesByIdGreaterThan(0L, PageRequest.of(0, PAGE_SIZE));
+  }
+}
@@ -0,0 +1,42 @@
+package ch.uzh.ifi.hase.soprafs24.rest.mapper;
+
+import ch.uzh.ifi.hase.soprafs24.BenchmarkUsers;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DTOMapperBenchmark
+ * Measures the conversion of one user entity to its API representation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DTOMapperBenchmark {
+
+  private User user;
+
+  @Setup
+  public void setup() {
+    user = BenchmarkUsers.user(42);
+  }
+
+  @Benchmark
+  public UserGetDTO convertEntityToUserGetDTO() {
+    return DTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
+  }
+}
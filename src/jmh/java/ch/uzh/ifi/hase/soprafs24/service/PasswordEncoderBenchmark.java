@@ -0,0 +1,54 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PasswordEncoderBenchmark
+ * Measures the time of one BCrypt hash and one verification for each strength,
+ * which is the basis for choosing hashing.bcrypt.strength (or the target
+ * duration of the calibration) for a given machine.
+ * Run with: ./gradlew jmh -Pjmh.includes=PasswordEncoderBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.Throughput })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class PasswordEncoderBenchmark {
+
+  @Param({ "8", "10", "11", "12", "13" })
+  private int strength;
+
+  private BCryptPasswordEncoder encoder;
+  private String hash;
+
+  @Setup
+  public void setup() {
+    encoder = new BCryptPasswordEncoder(strength);
+    hash = encoder.encode("benchmarkPassword");
+  }
+
+  @Benchmark
+  public String encode() {
+    return encoder.encode("benchmarkPassword");
+  }
+
+  @Benchmark
+  public boolean matches() {
+    return encoder.matches("benchmarkPassword", hash);
+  }
+}
@@ -0,0 +1,120 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.BenchmarkUsers;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserSearchResultDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserSearchBenchmark
+ * Measures a search for the first page of matches (GET /users/search) in the
+ * UserSearchIndex, by prefix and with a typo, against the SQL baseline of a
+ * case-insensitive LIKE '%q%' over username and name on the same H2 database.
+ * The users get names made of random syllables, since the generated names of
+ * the other benchmarks all share most of their characters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserSearchBenchmark {
+
+  private static final int PAGE_SIZE = 10;
+  private static final String[] SYLLABLES = { "an", "be", "ca", "do", "el", "fi", "ga", "ho", "is", "ju", "ka",
+      "lo", "ma", "ne", "or", "pi", "qu", "ri", "sa", "to", "ul", "vi", "wa", "xe", "yo", "zu" };
+  private static final String LIKE_QUERY = "select id, username, name from user "
+      + "where lower(username) like ? or lower(name) like ? order by username limit ?";
+
+  @Param({ "10000", "100000" })
+  private int users;
+
+  private ConfigurableApplicationContext context;
+  private UserSearchIndex searchIndex;
+  private JdbcTemplate jdbcTemplate;
+  private String[] usernames;
+
+  @Setup
+  public void setup() {
+    context = BenchmarkUsers.startApplication();
+    UserRepository userRepository = context.getBean(UserRepository.class);
+    Random random = new Random(42);
+    List<User> seed = BenchmarkUsers.users(users);
+    usernames = new String[users];
+    for (int i = 0; i < users; i++) {
+      User user = seed.get(i);
+      user.setId(null);
+      user.setUsername(word(random, 3) + i);
+      user.setName(capitalize(word(random, 2)) + " " + capitalize(word(random, 3)));
+      usernames[i] = user.getUsername();
+    }
+    userRepository.saveAll(seed);
+    userRepository.flush();
+
+    searchIndex = context.getBean(UserSearchIndex.class);
+    searchIndex.rebuild();
+    jdbcTemplate = context.getBean(JdbcTemplate.class);
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  private static String word(Random random, int syllables) {
+    StringBuilder word = new StringBuilder();
+    for (int i = 0; i < syllables; i++) {
+      word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+    }
+    return word.toString();
+  }
+
+  private static String capitalize(String word) {
+    return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+  }
+
+  // the first characters of a username, as typed into the search box
+  private String randomPrefix() {
+    String username = usernames[ThreadLocalRandom.current().nextInt(users)];
+    return username.substring(0, 4);
+  }
+
+  @Benchmark
+  public List<UserSearchResultDTO> index_prefix() {
+    return searchIndex.search(randomPrefix(), 0, PAGE_SIZE);
+  }
+
+  @Benchmark
+  public List<UserSearchResultDTO> index_typo() {
+    // the second character of a username missing
+    String username = usernames[ThreadLocalRandom.current().nextInt(users)];
+    return searchIndex.search(username.charAt(0) + username.substring(2), 0, PAGE_SIZE);
+  }
+
+  @Benchmark
+  public List<Map<String, Object>> sql_like() {
+    String pattern = "%" + randomPrefix() + "%";
+    return jdbcTemplate.queryForList(LIKE_QUERY, pattern, pattern, PAGE_SIZE);
+  }
+}
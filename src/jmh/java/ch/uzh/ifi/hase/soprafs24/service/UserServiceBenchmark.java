@@ -0,0 +1,79 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.BenchmarkUsers;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UserServiceBenchmark
+ * Measures UserService.createUser end to end against H2, once with the
+ * configured BCrypt encoder and once with a no-op encoder, which shows how
+ * much of a registration is spent on hashing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class UserServiceBenchmark {
+
+  @Param({ "bcrypt", "none" })
+  private String hashing;
+
+  private final AtomicLong sequence = new AtomicLong();
+
+  private ConfigurableApplicationContext context;
+  private UserService userService;
+
+  @Setup
+  public void setup() {
+    context = "none".equals(hashing)
+        ? BenchmarkUsers.startApplication(NoHashingConfig.class)
+        : BenchmarkUsers.startApplication();
+    userService = context.getBean(UserService.class);
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public User createUser() {
+    User user = new User();
+    user.setUsername("created-" + sequence.incrementAndGet());
+    user.setPassword("benchmarkPassword");
+    return userService.createUser(user);
+  }
+
+  // deliberately no @Configuration, component scanning would pick it up for every context
+  static class NoHashingConfig {
+
+    @Bean
+    @Primary
+    @SuppressWarnings("deprecation")
+    PasswordEncoder noOpPasswordEncoder() {
+      return NoOpPasswordEncoder.getInstance();
+    }
+  }
+}
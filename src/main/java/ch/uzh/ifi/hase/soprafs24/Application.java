@@ -3,9 +3,11 @@ package ch.uzh.ifi.hase.soprafs24;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -29,7 +31,21 @@ public class Application {
     return new WebMvcConfigurer() {
       @Override
       public void addCorsMappings(CorsRegistry registry) {
-        registry.addMapping("/**").allowedOrigins("*").allowedMethods("*");
+        registry.addMapping("/**").allowedOrigins("*").allowedMethods("*")
+            .exposedHeaders("X-Next-Cursor");
+      }
+    };
+  }
+
+  // the same CORS mappings for the reactive profile
+  @Bean
+  @Profile("reactive")
+  public WebFluxConfigurer reactiveCorsConfigurer() {
+    return new WebFluxConfigurer() {
+      @Override
+      public void addCorsMappings(org.springframework.web.reactive.config.CorsRegistry registry) {
+        registry.addMapping("/**").allowedOrigins("*").allowedMethods("*")
+            .exposedHeaders("X-Next-Cursor");
       }
     };
   }
@@ -0,0 +1,26 @@
+package ch.uzh.ifi.hase.soprafs24.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * Cluster Bus
+ * Carries the messages of ClusterEventRelay between the instances of the
+ * application. Delivery is best effort: a message may be lost, but it is
+ * never delivered to the instance that sent it. Selected with the
+ * {@code cluster.bus} property (see ClusterConfig).
+ */
+public interface ClusterBus extends AutoCloseable {
+
+  /**
+   * Starts passing the messages of the other instances on to the receiver.
+   */
+  void start(Consumer<ClusterMessage> receiver);
+
+  /**
+   * Sends the message to all other instances.
+   */
+  void send(ClusterMessage message);
+
+  @Override
+  void close();
+}
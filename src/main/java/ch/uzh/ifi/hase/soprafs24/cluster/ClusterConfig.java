@@ -0,0 +1,60 @@
+package ch.uzh.ifi.hase.soprafs24.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cluster Config
+ * Creates the ClusterBus selected by {@code cluster.bus}: {@code loopback}
+ * for several instances in one JVM, {@code udp} for instances that reach
+ * each other at the addresses in {@code cluster.udp.peers}. There is no bus
+ * by default. The UDP bus listens on the loopback interface unless
+ * {@code cluster.udp.bind-address} names the private address of the instance,
+ * and needs the secret {@code cluster.udp.secret} shared by all instances.
+ */
+@Configuration
+public class ClusterConfig {
+
+  @Bean(destroyMethod = "close")
+  @ConditionalOnProperty(name = "cluster.bus", havingValue = "loopback")
+  public ClusterBus loopbackClusterBus() {
+    return new LoopbackClusterBus();
+  }
+
+  @Bean(destroyMethod = "close")
+  @ConditionalOnProperty(name = "cluster.bus", havingValue = "udp")
+  public ClusterBus udpClusterBus(@Value("${cluster.udp.bind-address:127.0.0.1}") String bindAddress,
+      @Value("${cluster.udp.port:7600}") int port, @Value("${cluster.udp.peers:}") List<String> peers,
+      @Value("${cluster.udp.secret:}") String secret, ObjectMapper objectMapper) {
+    if (secret.isBlank()) {
+      throw new IllegalArgumentException("cluster.udp.secret must be set for the udp cluster bus");
+    }
+    return new UdpClusterBus(new InetSocketAddress(bindAddress, port), parsePeers(peers),
+        secret.getBytes(StandardCharsets.UTF_8), objectMapper);
+  }
+
+  // host:port
+  static List<InetSocketAddress> parsePeers(List<String> peers) {
+    List<InetSocketAddress> addresses = new ArrayList<>();
+    for (String peer : peers) {
+      String trimmed = peer.trim();
+      if (trimmed.isEmpty()) {
+        continue;
+      }
+      int colon = trimmed.lastIndexOf(':');
+      if (colon < 0) {
+        throw new IllegalArgumentException("cluster.udp.peers must be host:port, not " + trimmed);
+      }
+      addresses.add(new InetSocketAddress(trimmed.substring(0, colon), Integer.parseInt(trimmed.substring(colon + 1))));
+    }
+    return addresses;
+  }
+}
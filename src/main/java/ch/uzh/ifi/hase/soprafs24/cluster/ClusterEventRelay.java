@@ -0,0 +1,297 @@
+package ch.uzh.ifi.hase.soprafs24.cluster;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserChangeType;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserEventDTO;
+import ch.uzh.ifi.hase.soprafs24.service.PresenceService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cluster Event Relay
+ * Keeps the in-memory state of several instances behind a load balancer in
+ * line. The committed user changes of this instance (UserChangedEvent) and
+ * its heartbeats are collected, coalesced to the last profile change and the
+ * last presence change per user, and sent to the other instances in batches
+ * over the ClusterBus. A received batch is applied like a local change: the
+ * presence state and the second-level cache are updated, and the change is
+ * published again (as local only) for the token cache, the search index and
+ * the subscribers of /users/events. Without a bus (cluster.bus=none, the
+ * default) nothing is relayed.
+ */
+@Component
+public class ClusterEventRelay {
+
+  private final ClusterBus bus;
+  private final PresenceService presenceService;
+  private final EntityManagerFactory entityManagerFactory;
+  private final ApplicationEventPublisher eventPublisher;
+  private final Clock clock;
+  private final String nodeId;
+  private final int batchSize;
+
+  // the last change of the profile and of the presence per user, which have not been sent yet
+  private final Map<Long, PendingChange> profileChanges = new ConcurrentHashMap<>();
+  private final Map<Long, PendingChange> presenceChanges = new ConcurrentHashMap<>();
+  private final long started;
+  private final AtomicLong sequence = new AtomicLong();
+  // the newest message received from each instance
+  private final Map<String, Position> receivedPositions = new ConcurrentHashMap<>();
+
+  private final Counter changesSentCounter;
+  private final Counter changesCoalescedCounter;
+  private final Counter messagesSentCounter;
+  private final Counter messagesReceivedCounter;
+  private final Counter messagesLostCounter;
+  private final Counter messagesRejectedCounter;
+  private final Timer propagationLagTimer;
+
+  private static final class PendingChange {
+    private final UserEventDTO change;
+    private final long since;
+
+    private PendingChange(UserEventDTO change, long since) {
+      this.change = change;
+      this.since = since;
+    }
+  }
+
+  // where a message is in the messages of its instance: a restart starts a new sequence
+  private static final class Position {
+    private final long started;
+    private final long sequence;
+
+    private Position(long started, long sequence) {
+      this.started = started;
+      this.sequence = sequence;
+    }
+  }
+
+  @Autowired
+  public ClusterEventRelay(ObjectProvider<ClusterBus> bus, PresenceService presenceService,
+      EntityManagerFactory entityManagerFactory, ApplicationEventPublisher eventPublisher,
+      @Value("${cluster.node-id:}") String nodeId, @Value("${cluster.batch-size:200}") int batchSize,
+      MeterRegistry meterRegistry) {
+    this(bus.getIfAvailable(), presenceService, entityManagerFactory, eventPublisher, nodeId, batchSize,
+        meterRegistry, Clock.systemUTC());
+  }
+
+  ClusterEventRelay(ClusterBus bus, PresenceService presenceService,
+      EntityManagerFactory entityManagerFactory, ApplicationEventPublisher eventPublisher, String nodeId,
+      int batchSize, MeterRegistry meterRegistry, Clock clock) {
+    this.bus = bus;
+    this.presenceService = presenceService;
+    this.entityManagerFactory = entityManagerFactory;
+    this.eventPublisher = eventPublisher;
+    this.clock = clock;
+    this.nodeId = nodeId == null || nodeId.isEmpty() ? UUID.randomUUID().toString() : nodeId;
+    this.started = clock.millis();
+    this.batchSize = batchSize;
+    this.changesSentCounter = meterRegistry.counter("cluster.changes.sent");
+    this.changesCoalescedCounter = meterRegistry.counter("cluster.changes.coalesced");
+    this.messagesSentCounter = meterRegistry.counter("cluster.messages.sent");
+    this.messagesReceivedCounter = meterRegistry.counter("cluster.messages.received");
+    this.messagesLostCounter = meterRegistry.counter("cluster.messages.lost");
+    this.messagesRejectedCounter = meterRegistry.counter("cluster.messages.rejected");
+    // from the oldest change of a message on the sending instance until it was applied here (wall clocks)
+    this.propagationLagTimer = Timer.builder("cluster.propagation.lag").register(meterRegistry);
+    Gauge.builder("cluster.changes.pending", this, relay -> relay.profileChanges.size() + relay.presenceChanges.size())
+        .register(meterRegistry);
+
+    if (bus != null) {
+      presenceService.recordHeartbeats();
+      bus.start(this::receive);
+    }
+  }
+
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  /**
+   * Only committed changes are relayed (see UserEventBroadcaster).
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onUserChanged(UserChangedEvent event) {
+    if (bus == null || event.isLocalOnly()) {
+      return;
+    }
+    UserEventDTO change = event.getChange();
+    boolean presence = change.getType() == UserChangeType.ONLINE || change.getType() == UserChangeType.OFFLINE;
+    Map<Long, PendingChange> pending = presence ? presenceChanges : profileChanges;
+    pending.merge(change.getId(), new PendingChange(change, clock.millis()), (previous, next) -> {
+      changesCoalescedCounter.increment();
+      UserEventDTO merged = next.change;
+      // peers that have not seen the user yet must still learn that it was created
+      if (previous.change.getType() == UserChangeType.CREATED && merged.getType() == UserChangeType.UPDATED) {
+        merged = copyOf(merged);
+        merged.setType(UserChangeType.CREATED);
+      }
+      return new PendingChange(merged, previous.since);
+    });
+  }
+
+  /**
+   * Sends the collected changes and heartbeats, in messages of at most
+   * cluster.batch-size entries.
+   */
+  @Scheduled(fixedDelayString = "${cluster.flush-interval-ms:50}")
+  public synchronized void flush() {
+    if (bus == null) {
+      return;
+    }
+    List<PendingChange> changes = drain(profileChanges);
+    changes.addAll(drain(presenceChanges));
+    List<Long> heartbeats = presenceService.drainHeartbeats();
+    if (changes.isEmpty() && heartbeats.isEmpty()) {
+      return;
+    }
+
+    // heartbeats first, a logout after them must win on the other instances
+    ClusterMessage message = null;
+    for (Long userId : heartbeats) {
+      if (message == null) {
+        message = newMessage(clock.millis());
+      }
+      message.getHeartbeats().add(userId);
+      if (message.getHeartbeats().size() == batchSize) {
+        send(message);
+        message = null;
+      }
+    }
+    for (PendingChange change : changes) {
+      if (message == null) {
+        message = newMessage(change.since);
+      }
+      message.getChanges().add(change.change);
+      message.setSince(Math.min(message.getSince(), change.since));
+      if (message.getHeartbeats().size() + message.getChanges().size() == batchSize) {
+        send(message);
+        message = null;
+      }
+    }
+    if (message != null) {
+      send(message);
+    }
+  }
+
+  /**
+   * Applies a message of another instance, heartbeats first (see flush).
+   * Only a message newer than all the others received from its instance is
+   * applied: a duplicated, late or replayed one (say an ONLINE after the
+   * OFFLINE that followed it) would undo newer changes.
+   */
+  void receive(ClusterMessage message) {
+    if (nodeId.equals(message.getOrigin())) {
+      return;
+    }
+    messagesReceivedCounter.increment();
+    Position position = new Position(message.getStarted(), message.getSequence());
+    if (receivedPositions.compute(message.getOrigin(), (origin, last) -> advance(last, position)) != position) {
+      messagesRejectedCounter.increment();
+      return;
+    }
+
+    for (Long userId : message.getHeartbeats()) {
+      presenceService.applyRemote(userId, UserStatus.ONLINE);
+    }
+    boolean updated = false;
+    for (UserEventDTO change : message.getChanges()) {
+      entityManagerFactory.getCache().evict(User.class, change.getId());
+      switch (change.getType()) {
+        case ONLINE:
+          presenceService.applyRemote(change.getId(), UserStatus.ONLINE);
+          break;
+        case OFFLINE:
+          presenceService.applyRemote(change.getId(), UserStatus.OFFLINE);
+          break;
+        case UPDATED:
+          updated = true;
+          eventPublisher.publishEvent(new UserChangedEvent(change).localOnly());
+          break;
+        default:
+          eventPublisher.publishEvent(new UserChangedEvent(change).localOnly());
+      }
+    }
+    if (updated) {
+      // the user may have been renamed, the username -> id entries cannot be evicted one by one
+      entityManagerFactory.unwrap(SessionFactory.class).getCache().evictNaturalIdData(User.class);
+    }
+    propagationLagTimer.record(Math.max(0, clock.millis() - message.getSince()), TimeUnit.MILLISECONDS);
+  }
+
+  // the next position if it is newer than the last one, counting the messages lost in between
+  private Position advance(Position last, Position next) {
+    if (last == null || next.started > last.started) {
+      return next;
+    }
+    if (next.started < last.started || next.sequence <= last.sequence) {
+      return last;
+    }
+    if (next.sequence > last.sequence + 1) {
+      messagesLostCounter.increment(next.sequence - last.sequence - 1);
+    }
+    return next;
+  }
+
+  private ClusterMessage newMessage(long since) {
+    ClusterMessage message = new ClusterMessage();
+    message.setOrigin(nodeId);
+    message.setStarted(started);
+    message.setSequence(sequence.incrementAndGet());
+    message.setSince(since);
+    return message;
+  }
+
+  private void send(ClusterMessage message) {
+    bus.send(message);
+    messagesSentCounter.increment();
+    changesSentCounter.increment(message.getChanges().size());
+  }
+
+  private static List<PendingChange> drain(Map<Long, PendingChange> pending) {
+    List<PendingChange> drained = new ArrayList<>();
+    for (Long userId : pending.keySet()) {
+      PendingChange change = pending.remove(userId);
+      if (change != null) {
+        drained.add(change);
+      }
+    }
+    return drained;
+  }
+
+  // the change may still be waiting to be sent to the subscribers of /users/events
+  private static UserEventDTO copyOf(UserEventDTO change) {
+    UserEventDTO copy = new UserEventDTO();
+    copy.setType(change.getType());
+    copy.setId(change.getId());
+    copy.setName(change.getName());
+    copy.setUsername(change.getUsername());
+    copy.setStatus(change.getStatus());
+    copy.setCreationDate(change.getCreationDate());
+    copy.setBirthDate(change.getBirthDate());
+    return copy;
+  }
+}
@@ -0,0 +1,73 @@
+package ch.uzh.ifi.hase.soprafs24.cluster;
+
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserEventDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A batch of user changes that one instance sends to the others (see
+ * ClusterEventRelay): the coalesced changes and the users with a heartbeat
+ * since the last batch. The sequence counts the messages of the sending
+ * instance since it started, so receivers can tell lost messages and drop
+ * duplicated, reordered or replayed ones.
+ */
+public class ClusterMessage {
+
+  private String origin;
+  // when the sending instance started (epoch millis), its sequence starts at 1 again after a restart
+  private long started;
+  private long sequence;
+  // when the oldest change of the batch happened (epoch millis)
+  private long since;
+  private List<UserEventDTO> changes = new ArrayList<>();
+  private List<Long> heartbeats = new ArrayList<>();
+
+  public String getOrigin() {
+    return origin;
+  }
+
+  public void setOrigin(String origin) {
+    this.origin = origin;
+  }
+
+  public long getStarted() {
+    return started;
+  }
+
+  public void setStarted(long started) {
+    this.started = started;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public void setSequence(long sequence) {
+    this.sequence = sequence;
+  }
+
+  public long getSince() {
+    return since;
+  }
+
+  public void setSince(long since) {
+    this.since = since;
+  }
+
+  public List<UserEventDTO> getChanges() {
+    return changes;
+  }
+
+  public void setChanges(List<UserEventDTO> changes) {
+    this.changes = changes;
+  }
+
+  public List<Long> getHeartbeats() {
+    return heartbeats;
+  }
+
+  public void setHeartbeats(List<Long> heartbeats) {
+    this.heartbeats = heartbeats;
+  }
+}
@@ -0,0 +1,38 @@
+package ch.uzh.ifi.hase.soprafs24.cluster;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Delivers the messages to all other started loopback buses of the same JVM,
+ * i.e., to the other application contexts (e.g., several instances started
+ * by a test). The message is passed on as is and on the thread of the
+ * sender.
+ */
+public class LoopbackClusterBus implements ClusterBus {
+
+  private static final List<LoopbackClusterBus> STARTED = new CopyOnWriteArrayList<>();
+
+  private volatile Consumer<ClusterMessage> receiver;
+
+  @Override
+  public void start(Consumer<ClusterMessage> receiver) {
+    this.receiver = receiver;
+    STARTED.add(this);
+  }
+
+  @Override
+  public void send(ClusterMessage message) {
+    for (LoopbackClusterBus bus : STARTED) {
+      if (bus != this) {
+        bus.receiver.accept(message);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    STARTED.remove(this);
+  }
+}
@@ -0,0 +1,167 @@
+package ch.uzh.ifi.hase.soprafs24.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Sends every message as one JSON datagram to each of a fixed list of peers
+ * and receives the messages of the peers on its own thread. UDP neither
+ * retries nor orders, so a lost message is only noticed by the gap in the
+ * sequence, and a duplicated or late one is dropped by its sequence (see
+ * ClusterEventRelay). The peers may include this instance itself, so all
+ * instances can share the same list. Each datagram starts with an
+ * HMAC-SHA256 of the JSON under a secret shared by all instances; datagrams
+ * from addresses other than the peers or without a valid HMAC are dropped.
+ * As the HMAC covers the sequence and the start time of the sender, a
+ * replayed datagram is dropped like a duplicated one, also after a restart.
+ */
+public class UdpClusterBus implements ClusterBus {
+
+  // the largest payload of a UDP datagram over IPv4
+  static final int MAX_DATAGRAM_SIZE = 65507;
+  private static final String HMAC_ALGORITHM = "HmacSHA256";
+  private static final int HMAC_LENGTH = 32;
+
+  private final Logger log = LoggerFactory.getLogger(UdpClusterBus.class);
+
+  private final DatagramChannel channel;
+  private final List<InetSocketAddress> peers;
+  private final SecretKeySpec secret;
+  private final ObjectMapper objectMapper;
+
+  public UdpClusterBus(InetSocketAddress bindAddress, List<InetSocketAddress> peers, byte[] secret,
+      ObjectMapper objectMapper) {
+    if (secret.length == 0) {
+      throw new IllegalArgumentException("The cluster bus needs a secret");
+    }
+    this.peers = peers;
+    this.secret = new SecretKeySpec(secret, HMAC_ALGORITHM);
+    this.objectMapper = objectMapper;
+    try {
+      this.channel = DatagramChannel.open().bind(bindAddress);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not bind the cluster bus to " + bindAddress, e);
+    }
+  }
+
+  public int getLocalPort() {
+    try {
+      return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void start(Consumer<ClusterMessage> receiver) {
+    Thread receiverThread = new Thread(() -> receive(receiver), "cluster-bus-receiver");
+    receiverThread.setDaemon(true);
+    receiverThread.start();
+    log.info("Cluster bus on UDP port {} with peers {}", getLocalPort(), peers);
+  }
+
+  @Override
+  public void send(ClusterMessage message) {
+    byte[] datagram = encode(message);
+    if (datagram.length > MAX_DATAGRAM_SIZE) {
+      log.warn("Dropped a cluster message of {} bytes, more than fit into a datagram", datagram.length);
+      return;
+    }
+    for (InetSocketAddress peer : peers) {
+      try {
+        channel.send(ByteBuffer.wrap(datagram), peer);
+      } catch (IOException e) {
+        log.warn("Could not send a cluster message to {}", peer, e);
+      }
+    }
+  }
+
+  // the HMAC, then the JSON
+  byte[] encode(ClusterMessage message) {
+    byte[] json;
+    try {
+      json = objectMapper.writeValueAsBytes(message);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    byte[] datagram = Arrays.copyOf(newMac().doFinal(json), HMAC_LENGTH + json.length);
+    System.arraycopy(json, 0, datagram, HMAC_LENGTH, json.length);
+    return datagram;
+  }
+
+  private void receive(Consumer<ClusterMessage> receiver) {
+    ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+    // only used by the receiver thread
+    Mac mac = newMac();
+    while (channel.isOpen()) {
+      try {
+        buffer.clear();
+        SocketAddress sender = channel.receive(buffer);
+        buffer.flip();
+        if (!peers.contains(sender)) {
+          log.warn("Ignored a cluster message from {}, which is not a peer", sender);
+          continue;
+        }
+        if (buffer.limit() < HMAC_LENGTH) {
+          log.warn("Ignored a cluster message without an HMAC from {}", sender);
+          continue;
+        }
+        mac.update(buffer.array(), HMAC_LENGTH, buffer.limit() - HMAC_LENGTH);
+        byte[] expected = mac.doFinal();
+        // in constant time, so the HMAC cannot be guessed byte by byte
+        if (!MessageDigest.isEqual(expected, Arrays.copyOf(buffer.array(), HMAC_LENGTH))) {
+          log.warn("Ignored a cluster message with an invalid HMAC from {}", sender);
+          continue;
+        }
+        ClusterMessage message;
+        try {
+          message = objectMapper.readValue(buffer.array(), HMAC_LENGTH, buffer.limit() - HMAC_LENGTH,
+              ClusterMessage.class);
+        } catch (IOException e) {
+          log.warn("Ignored an invalid cluster message from {}", sender, e);
+          continue;
+        }
+        receiver.accept(message);
+      } catch (ClosedChannelException e) {
+        return;
+      } catch (IOException | RuntimeException e) {
+        log.warn("Could not receive a cluster message", e);
+      }
+    }
+  }
+
+  private Mac newMac() {
+    try {
+      Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+      mac.init(secret);
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      log.warn("Could not close the cluster bus", e);
+    }
+  }
+}
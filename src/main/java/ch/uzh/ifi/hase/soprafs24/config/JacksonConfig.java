@@ -0,0 +1,68 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.UserFields;
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Jackson Config
+ * Sparse fieldsets of users (see UserFields) and the binary encodings of the
+ * responses. Besides JSON, clients may ask for CBOR (application/cbor) or
+ * Smile (application/x-jackson-smile) with the Accept header; JSON stays the
+ * default for any other Accept header.
+ */
+@Configuration
+@Profile("!reactive")
+public class JacksonConfig implements WebMvcConfigurer {
+
+  // a prototype, every builder comes with the customizations of the JSON object mapper
+  private final ObjectProvider<Jackson2ObjectMapperBuilder> objectMapperBuilder;
+
+  JacksonConfig(ObjectProvider<Jackson2ObjectMapperBuilder> objectMapperBuilder) {
+    this.objectMapperBuilder = objectMapperBuilder;
+  }
+
+  // UserGetDTO is serialized through the fieldset filter, which lets all fields pass unless a response sets its own
+  @JsonFilter(UserFields.FILTER)
+  abstract static class UserGetDTOMixin {
+  }
+
+  @Bean
+  public Jackson2ObjectMapperBuilderCustomizer userFieldsCustomizer() {
+    return builder -> builder
+        .mixIn(UserGetDTO.class, UserGetDTOMixin.class)
+        .filters(new SimpleFilterProvider().setDefaultFilter(SimpleBeanPropertyFilter.serializeAll()));
+  }
+
+  /**
+   * Spring MVC registers converters for CBOR and Smile after the JSON
+   * converter as soon as the Jackson dataformats are present, so they are only
+   * chosen when asked for. They are replaced by converters that share the
+   * configuration of the JSON object mapper.
+   */
+  @Override
+  public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+    converters.removeIf(converter -> converter instanceof MappingJackson2CborHttpMessageConverter
+        || converter instanceof MappingJackson2SmileHttpMessageConverter);
+    converters.add(new MappingJackson2CborHttpMessageConverter(
+        objectMapperBuilder.getObject().factory(new CBORFactory()).build()));
+    converters.add(new MappingJackson2SmileHttpMessageConverter(
+        objectMapperBuilder.getObject().factory(new SmileFactory()).build()));
+  }
+}
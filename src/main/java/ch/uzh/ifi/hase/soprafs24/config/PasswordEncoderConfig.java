@@ -0,0 +1,67 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+
+/**
+ * Password Encoder Config
+ * Defines the password encoder used for all stored passwords. The BCrypt
+ * strength is either taken from the configuration or, with
+ * {@code hashing.bcrypt.strength=auto}, calibrated at startup such that one
+ * hash takes about {@code hashing.bcrypt.target-duration} on this machine.
+ * Stored hashes with a lower strength are upgraded on the next login.
+ */
+@Configuration
+public class PasswordEncoderConfig {
+
+  static final int MIN_STRENGTH = 10;
+  static final int MAX_STRENGTH = 16;
+
+  private static final int CALIBRATION_STRENGTH = 8;
+  private static final int CALIBRATION_ROUNDS = 3;
+
+  private final Logger log = LoggerFactory.getLogger(PasswordEncoderConfig.class);
+
+  @Bean
+  public PasswordEncoder passwordEncoder(@Value("${hashing.bcrypt.strength:10}") String strength,
+      @Value("${hashing.bcrypt.target-duration:50ms}") Duration targetDuration) {
+    int bcryptStrength;
+    if ("auto".equalsIgnoreCase(strength)) {
+      bcryptStrength = calibrateStrength(targetDuration);
+      log.info("Calibrated BCrypt strength {} for a target duration of {}", bcryptStrength, targetDuration);
+    } else {
+      bcryptStrength = Integer.parseInt(strength.trim());
+    }
+    return new BCryptPasswordEncoder(bcryptStrength);
+  }
+
+  /**
+   * Measures one hash at a low strength and extrapolates the highest strength
+   * whose hash still fits into the target duration (every additional strength
+   * doubles the work). The result never drops below the default strength.
+   */
+  static int calibrateStrength(Duration targetDuration) {
+    BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(CALIBRATION_STRENGTH);
+    long fastestNanos = Long.MAX_VALUE;
+    for (int i = 0; i < CALIBRATION_ROUNDS; i++) {
+      long start = System.nanoTime();
+      encoder.encode("calibration");
+      fastestNanos = Math.min(fastestNanos, System.nanoTime() - start);
+    }
+
+    int strength = CALIBRATION_STRENGTH;
+    long nanos = fastestNanos;
+    while (strength < MAX_STRENGTH && nanos * 2 <= targetDuration.toNanos()) {
+      nanos *= 2;
+      strength++;
+    }
+    return Math.max(strength, MIN_STRENGTH);
+  }
+}
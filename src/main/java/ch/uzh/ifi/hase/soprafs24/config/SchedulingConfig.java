@@ -0,0 +1,13 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Scheduling Config
+ * Enables @Scheduled methods (e.g., presence expiry and flushing).
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
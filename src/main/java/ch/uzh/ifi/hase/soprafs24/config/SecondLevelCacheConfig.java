@@ -0,0 +1,73 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Second Level Cache Config
+ * Hibernate's second-level cache is backed by bounded Caffeine caches (through
+ * JCache) that are created here, so that every region has a maximum size and
+ * a time to live. Hibernate keeps the regions up to date on every write of a
+ * cached entity; bulk updates (JPQL update statements) evict the whole region
+ * instead, so the users are written through the entities.
+ */
+@Configuration
+public class SecondLevelCacheConfig {
+
+  private static final List<String> BOUNDED_REGIONS = Arrays.asList(
+      User.CACHE_REGION, User.USERNAME_CACHE_REGION, RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME);
+
+  @Bean(destroyMethod = "close")
+  public CacheManager hibernateCacheManager(@Value("${users.cache.maximum-size:10000}") long maximumSize,
+      @Value("${users.cache.ttl:10m}") Duration ttl) {
+    // a cache manager of its own per application context (e.g., per test context)
+    CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+        .getCacheManager(URI.create("hibernate-" + UUID.randomUUID()), getClass().getClassLoader());
+
+    for (String region : BOUNDED_REGIONS) {
+      CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+      configuration.setMaximumSize(OptionalLong.of(maximumSize));
+      configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+      configuration.setStatisticsEnabled(true);
+      cacheManager.createCache(region, configuration);
+    }
+    // must neither expire nor be evicted, otherwise stale query results could be returned
+    CaffeineConfiguration<Object, Object> timestamps = new CaffeineConfiguration<>();
+    timestamps.setStatisticsEnabled(true);
+    cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, timestamps);
+    return cacheManager;
+  }
+
+  @Bean
+  public HibernatePropertiesCustomizer hibernateCacheManagerCustomizer(CacheManager hibernateCacheManager) {
+    return properties -> {
+      properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+      properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+    };
+  }
+
+  // cache.gets (hit/miss), cache.puts and cache.evictions per region
+  @Bean
+  public MeterBinder hibernateCacheMetrics(CacheManager hibernateCacheManager) {
+    return registry -> hibernateCacheManager.getCacheNames().forEach(region ->
+        JCacheMetrics.monitor(registry, hibernateCacheManager.getCache(region)));
+  }
+}
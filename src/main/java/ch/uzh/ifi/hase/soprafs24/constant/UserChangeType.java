@@ -0,0 +1,5 @@
+package ch.uzh.ifi.hase.soprafs24.constant;
+
+public enum UserChangeType {
+  CREATED, UPDATED, ONLINE, OFFLINE;
+}
@@ -0,0 +1,371 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Idempotency Filter
+ * Answers a retried POST request that carries the same Idempotency-Key header
+ * with the response to the first request, without running it again (e.g. a
+ * client that timed out while its user was being created). A retry that
+ * arrives while the first request still runs waits for it. A key that is
+ * reused for a different request (method, path, Authorization header or body)
+ * is rejected with 422. Responses with 5xx or 429 are not kept, so the request
+ * can be retried. The responses are kept in an in-memory store for the ttl,
+ * per instance; the store is bounded by the size of the kept responses, so it
+ * holds many small ones or fewer large ones.
+ */
+@Component
+@Profile("!reactive")
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+  public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+  public static final String REPLAYED = "Idempotent-Replayed";
+
+  private static final int MAX_KEY_LENGTH = 255;
+  // set by the server for every response
+  private static final Set<String> UNSTORED_HEADERS = Set.of(HttpHeaders.CONTENT_LENGTH.toLowerCase(Locale.ROOT),
+      HttpHeaders.CONTENT_TYPE.toLowerCase(Locale.ROOT), HttpHeaders.DATE.toLowerCase(Locale.ROOT),
+      HttpHeaders.TRANSFER_ENCODING.toLowerCase(Locale.ROOT), HttpHeaders.CONNECTION.toLowerCase(Locale.ROOT));
+
+  // the key, the fingerprint and the bookkeeping of an entry, roughly
+  private static final int ENTRY_OVERHEAD = 256;
+
+  private final Cache<String, Entry> entries;
+  private final Duration waitTimeout;
+  private final long maxResponseSize;
+
+  private final Counter executedCounter;
+  private final Counter replayedCounter;
+  private final Counter conflictCounter;
+  private final Counter mismatchCounter;
+
+  public IdempotencyFilter(@Value("${idempotency.max-store-size:32MB}") DataSize maxStoreSize,
+      @Value("${idempotency.ttl:24h}") Duration ttl,
+      @Value("${idempotency.wait-timeout:10s}") Duration waitTimeout,
+      @Value("${idempotency.max-response-size:64KB}") DataSize maxResponseSize,
+      MeterRegistry meterRegistry) {
+    this.entries = Caffeine.newBuilder()
+        .maximumWeight(maxStoreSize.toBytes())
+        .weigher((String key, Entry entry) -> entry.weight(key))
+        .expireAfterWrite(ttl)
+        .build();
+    this.waitTimeout = waitTimeout;
+    this.maxResponseSize = maxResponseSize.toBytes();
+    this.executedCounter = meterRegistry.counter("idempotency.requests", "result", "executed");
+    this.replayedCounter = meterRegistry.counter("idempotency.requests", "result", "replayed");
+    this.conflictCounter = meterRegistry.counter("idempotency.requests", "result", "conflict");
+    this.mismatchCounter = meterRegistry.counter("idempotency.requests", "result", "mismatch");
+    Gauge.builder("idempotency.store.size", entries,
+        cache -> cache.policy().eviction().orElseThrow().weightedSize().orElse(0))
+        .baseUnit("bytes").register(meterRegistry);
+  }
+
+  // a request with a key, completed with its response or null if it is not kept
+  private static final class Entry {
+    private final CompletableFuture<StoredResponse> response = new CompletableFuture<>();
+
+    // the size in bytes, roughly; weighed again once the response is stored
+    private int weight(String key) {
+      StoredResponse stored = response.getNow(null);
+      return ENTRY_OVERHEAD + key.length() * 2 + (stored == null ? 0 : stored.size());
+    }
+  }
+
+  private static final class StoredResponse {
+    private final String fingerprint;
+    private final int status;
+    // the message of HttpServletResponse#sendError, the error page renders the body
+    private final String errorMessage;
+    private final boolean error;
+    // not among the header names on Tomcat
+    private final String contentType;
+    private final Map<String, List<String>> headers;
+    private final byte[] body;
+
+    private StoredResponse(String fingerprint, RecordingResponse response) {
+      this.fingerprint = fingerprint;
+      this.status = response.getStatus();
+      this.error = response.error;
+      this.errorMessage = response.errorMessage;
+      this.contentType = response.getContentType();
+      this.headers = new LinkedHashMap<>();
+      for (String name : response.getHeaderNames()) {
+        if (!UNSTORED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+          headers.put(name, new ArrayList<>(response.getHeaders(name)));
+        }
+      }
+      this.body = response.getContentAsByteArray();
+    }
+
+    private int size() {
+      int size = body.length;
+      for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+        size += header.getKey().length() * 2;
+        for (String value : header.getValue()) {
+          size += value.length() * 2;
+        }
+      }
+      return size;
+    }
+
+    private void writeTo(HttpServletResponse response) throws IOException {
+      headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+      response.setHeader(REPLAYED, "true");
+      if (error) {
+        if (errorMessage == null) {
+          response.sendError(status);
+        } else {
+          response.sendError(status, errorMessage);
+        }
+        return;
+      }
+      response.setStatus(status);
+      if (contentType != null) {
+        response.setContentType(contentType);
+      }
+      response.setContentLength(body.length);
+      response.getOutputStream().write(body);
+    }
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    return !HttpMethod.POST.matches(request.getMethod()) || request.getHeader(IDEMPOTENCY_KEY) == null;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    String key = request.getHeader(IDEMPOTENCY_KEY);
+    if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+      response.sendError(HttpStatus.BAD_REQUEST.value(),
+          "The " + IDEMPOTENCY_KEY + " must have 1 to " + MAX_KEY_LENGTH + " characters");
+      return;
+    }
+    FingerprintingRequest fingerprintingRequest = new FingerprintingRequest(request);
+    Entry entry = new Entry();
+    Entry running = entries.asMap().putIfAbsent(key, entry);
+    if (running != null) {
+      replay(running, fingerprintingRequest, response);
+      return;
+    }
+
+    executedCounter.increment();
+    RecordingResponse recordingResponse = new RecordingResponse(response);
+    StoredResponse stored = null;
+    try {
+      filterChain.doFilter(fingerprintingRequest, recordingResponse);
+      if (isKept(request, recordingResponse)) {
+        stored = new StoredResponse(fingerprintingRequest.fingerprint(), recordingResponse);
+      }
+    } finally {
+      if (stored == null) {
+        entries.asMap().remove(key, entry);
+      }
+      entry.response.complete(stored);
+      if (stored != null) {
+        // weighs the entry again, now with its response
+        entries.asMap().replace(key, entry, entry);
+      }
+      recordingResponse.copyBodyToResponse();
+    }
+  }
+
+  private boolean isKept(HttpServletRequest request, RecordingResponse response) {
+    int status = response.getStatus();
+    return !request.isAsyncStarted() && status < 500 && status != HttpStatus.TOO_MANY_REQUESTS.value()
+        && response.getContentSize() <= maxResponseSize;
+  }
+
+  private void replay(Entry running, FingerprintingRequest request, HttpServletResponse response) throws IOException {
+    StoredResponse stored;
+    try {
+      stored = running.response.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      conflictCounter.increment();
+      response.sendError(HttpStatus.CONFLICT.value(), "A request with this " + IDEMPOTENCY_KEY + " is still running");
+      return;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+      return;
+    } catch (ExecutionException e) {
+      // never completed exceptionally
+      throw new IllegalStateException(e);
+    }
+    if (stored == null) {
+      conflictCounter.increment();
+      response.sendError(HttpStatus.CONFLICT.value(),
+          "The request with this " + IDEMPOTENCY_KEY + " did not complete, please retry");
+      return;
+    }
+    if (!stored.fingerprint.equals(request.fingerprint())) {
+      mismatchCounter.increment();
+      response.sendError(HttpStatus.UNPROCESSABLE_ENTITY.value(),
+          "The " + IDEMPOTENCY_KEY + " has been used for a different request");
+      return;
+    }
+    replayedCounter.increment();
+    stored.writeTo(response);
+  }
+
+  /**
+   * Computes a digest of the request while its body is read, so the body does
+   * not have to be kept (e.g. of an import).
+   */
+  private static final class FingerprintingRequest extends HttpServletRequestWrapper {
+
+    private final MessageDigest digest;
+    private ServletInputStream inputStream;
+    private BufferedReader reader;
+
+    private FingerprintingRequest(HttpServletRequest request) {
+      super(request);
+      try {
+        this.digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+      String target = request.getMethod() + " " + request.getRequestURI() + "?" + request.getQueryString() + "\n"
+          + request.getHeader(HttpHeaders.AUTHORIZATION) + "\n";
+      digest.update(target.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+      if (inputStream == null) {
+        inputStream = new DigestingInputStream(super.getInputStream(), digest);
+      }
+      return inputStream;
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+      if (reader == null) {
+        String encoding = getCharacterEncoding();
+        reader = new BufferedReader(new InputStreamReader(getInputStream(),
+            encoding != null ? encoding : StandardCharsets.ISO_8859_1.name()));
+      }
+      return reader;
+    }
+
+    // reads what is left of the body
+    private String fingerprint() throws IOException {
+      ServletInputStream in = getInputStream();
+      byte[] buffer = new byte[8192];
+      while (in.read(buffer) != -1) {
+        // digested while read
+      }
+      return Base64.getEncoder().encodeToString(digest.digest());
+    }
+  }
+
+  private static final class DigestingInputStream extends ServletInputStream {
+
+    private final ServletInputStream in;
+    private final MessageDigest digest;
+
+    private DigestingInputStream(ServletInputStream in, MessageDigest digest) {
+      this.in = in;
+      this.digest = digest;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      if (b != -1) {
+        digest.update((byte) b);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = in.read(b, off, len);
+      if (read > 0) {
+        digest.update(b, off, read);
+      }
+      return read;
+    }
+
+    @Override
+    public boolean isFinished() {
+      return in.isFinished();
+    }
+
+    @Override
+    public boolean isReady() {
+      return in.isReady();
+    }
+
+    @Override
+    public void setReadListener(ReadListener readListener) {
+      in.setReadListener(readListener);
+    }
+  }
+
+  /**
+   * Keeps the body, and the error if the response is an error page.
+   */
+  private static final class RecordingResponse extends ContentCachingResponseWrapper {
+
+    private boolean error;
+    private String errorMessage;
+
+    private RecordingResponse(HttpServletResponse response) {
+      super(response);
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+      error = true;
+      super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+      error = true;
+      errorMessage = msg;
+      super.sendError(sc, msg);
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.TooManyRequestsException;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.UserFields;
+import ch.uzh.ifi.hase.soprafs24.security.LoginThrottle;
+import ch.uzh.ifi.hase.soprafs24.service.PresenceService;
+import ch.uzh.ifi.hase.soprafs24.service.ReactiveUserService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Reactive User Controller
+ * Serves the user API on the non-blocking stack (reactive profile, WebFlux)
+ * and delegates to the ReactiveUserService. The endpoints and their responses
+ * are the same as the ones of UserController.
+ */
+@RestController
+@Profile("reactive")
+public class ReactiveUserController {
+
+  private static final String RETRY_AFTER_SECONDS = "1";
+
+  private final ReactiveUserService userService;
+  private final PresenceService presenceService;
+  private final LoginThrottle loginThrottle;
+
+  ReactiveUserController(ReactiveUserService userService, PresenceService presenceService,
+      LoginThrottle loginThrottle) {
+    this.userService = userService;
+    this.presenceService = presenceService;
+    this.loginThrottle = loginThrottle;
+  }
+
+  /**
+   * The users are streamed as they are read: as one JSON array, or one user
+   * per line if application/x-ndjson is accepted. Like the list of
+   * UserController, it leaves out the tokens.
+   */
+  @GetMapping("/users")
+  public Flux<UserGetDTO> getAllUsers() {
+    UserFields userFields = UserFields.forList(null);
+    return userService.getUsers().map(user -> {
+      UserGetDTO userGetDTO = userFields.toUserGetDTO(user);
+      presenceService.applyTo(userGetDTO);
+      return userGetDTO;
+    });
+  }
+
+  @PostMapping("/users")
+  @ResponseStatus(HttpStatus.CREATED)
+  public Mono<UserGetDTO> createUser(@RequestBody UserPostDTO userPostDTO) {
+    User userInput = DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO);
+    return userService.createUser(userInput).map(this::toUserGetDTO);
+  }
+
+  @PostMapping("/users/login")
+  @ResponseStatus(HttpStatus.OK)
+  public Mono<UserGetDTO> loginUser(@RequestBody UserPostDTO userPostDTO, ServerHttpRequest request) {
+    InetSocketAddress remoteAddress = request.getRemoteAddress();
+    loginThrottle.acquire(remoteAddress == null ? null : remoteAddress.getHostString(), userPostDTO.getUsername());
+    return userService.loginUser(userPostDTO.getUsername(), userPostDTO.getPassword()).map(this::toUserGetDTO);
+  }
+
+  @PostMapping("/users/{userId}/logout")
+  @ResponseStatus(HttpStatus.OK)
+  public Mono<Void> logoutUser(@PathVariable Long userId) {
+    return userService.logoutUser(userId);
+  }
+
+  @PostMapping("/users/{userId}/heartbeat")
+  @ResponseStatus(HttpStatus.NO_CONTENT)
+  public Mono<Void> heartbeat(@PathVariable Long userId) {
+    return userService.heartbeat(userId);
+  }
+
+  @GetMapping("/users/{userId}")
+  @ResponseStatus(HttpStatus.OK)
+  public Mono<UserGetDTO> getUser(@PathVariable Long userId) {
+    return userService.getUserById(userId).map(this::toUserGetDTO);
+  }
+
+  @PutMapping("/users/{userId}")
+  @ResponseStatus(HttpStatus.NO_CONTENT)
+  public Mono<Void> updateUser(@PathVariable Long userId, @RequestBody UserPutDTO userPutDTO) {
+    return userService.updateUser(userId, userPutDTO);
+  }
+
+  // the password hashing pool is saturated (see GlobalExceptionAdvice)
+  @ExceptionHandler(RejectedExecutionException.class)
+  public ResponseEntity<String> handleRejectedExecution() {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+        .body("The server is busy, please retry later");
+  }
+
+  @ExceptionHandler(TooManyRequestsException.class)
+  public ResponseEntity<String> handleTooManyRequests(TooManyRequestsException ex) {
+    return ResponseEntity.status(ex.getStatus())
+        .headers(ex.getResponseHeaders())
+        .body(ex.getReason());
+  }
+
+  private UserGetDTO toUserGetDTO(User user) {
+    UserGetDTO userGetDTO = DTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
+    presenceService.applyTo(userGetDTO);
+    return userGetDTO;
+  }
+}
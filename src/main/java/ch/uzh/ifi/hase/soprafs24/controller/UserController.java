@@ -1,15 +1,52 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.constant.ImportStatus;
+import ch.uzh.ifi.hase.soprafs24.event.UserEventBroadcaster;
+import ch.uzh.ifi.hase.soprafs24.repository.UserSummary;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserImportResultDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserSearchResultDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UsernameAvailabilityDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.UserFields;
+import ch.uzh.ifi.hase.soprafs24.security.LoginThrottle;
+import ch.uzh.ifi.hase.soprafs24.service.PresenceService;
+import ch.uzh.ifi.hase.soprafs24.service.ProfileWriteBuffer;
+import ch.uzh.ifi.hase.soprafs24.service.UserProfile;
+import ch.uzh.ifi.hase.soprafs24.service.UserSearchIndex;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -20,27 +57,127 @@ import java.util.List;
  * UserService and finally return the result.
  */
 @RestController
+@Profile("!reactive")
 public class UserController {
 
+  static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+  private final Logger log = LoggerFactory.getLogger(UserController.class);
+
   private final UserService userService;
+  private final PresenceService presenceService;
+  private final ProfileWriteBuffer profileWriteBuffer;
+  private final UserEventBroadcaster userEventBroadcaster;
+  private final UserSearchIndex userSearchIndex;
+  private final LoginThrottle loginThrottle;
+  private final ObjectMapper objectMapper;
+  private final Timer singleMappingTimer;
+  private final Timer listMappingTimer;
+
+  @Value("${users.page.default-size:100}")
+  private int defaultPageSize;
+
+  @Value("${users.page.max-size:1000}")
+  private int maxPageSize;
+
+  @Value("${users.import.batch-size:500}")
+  private int importBatchSize;
 
-  UserController(UserService userService) {
+  @Value("${users.search.default-limit:10}")
+  private int defaultSearchLimit;
+
+  @Value("${users.search.max-results:1000}")
+  private int maxSearchResults;
+
+  UserController(UserService userService, PresenceService presenceService, ProfileWriteBuffer profileWriteBuffer,
+      UserEventBroadcaster userEventBroadcaster, UserSearchIndex userSearchIndex, LoginThrottle loginThrottle,
+      ObjectMapper objectMapper, MeterRegistry meterRegistry) {
     this.userService = userService;
+    this.presenceService = presenceService;
+    this.profileWriteBuffer = profileWriteBuffer;
+    this.userEventBroadcaster = userEventBroadcaster;
+    this.userSearchIndex = userSearchIndex;
+    this.loginThrottle = loginThrottle;
+    this.objectMapper = objectMapper;
+    this.singleMappingTimer = meterRegistry.timer("users.mapping", "kind", "single");
+    this.listMappingTimer = meterRegistry.timer("users.mapping", "kind", "list");
   }
 
+  /**
+   * Without parameters all users are returned at once. As soon as {@code after}
+   * or {@code limit} is given, a single page ordered by id is returned instead;
+   * if there may be more users, the cursor of the next page is sent in the
+   * X-Next-Cursor header. Either way the ETag is the version of all users, so
+   * an unchanged list is answered with 304 before any user is loaded. It is a
+   * weak ETag, Tomcat does not compress responses with a strong one.
+   * The JSON, CBOR and Smile encodings share the ETag, so responses vary by
+   * the Accept header. {@code fields} selects the fields of the users (see UserFields), lists
+   * never contain the tokens.
+   */
   @GetMapping("/users")
-  @ResponseStatus(HttpStatus.OK)
   @ResponseBody
-  public List<UserGetDTO> getAllUsers() {
-    // fetch all users in the internal representation
-    List<User> users = userService.getUsers();
-    List<UserGetDTO> userGetDTOs = new ArrayList<>();
+  public ResponseEntity<MappingJacksonValue> getAllUsers(@RequestParam(required = false) Long after,
+      @RequestParam(required = false) Integer limit, @RequestParam(required = false) String fields,
+      WebRequest request, HttpServletResponse servletResponse) {
+    UserFields userFields = UserFields.forList(fields);
+    servletResponse.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+    if (request.checkNotModified(toWeakETag(userService.getUsersVersion()))) {
+      return null;
+    }
+    if (after == null && limit == null) {
+      // fetch all users in the internal representation
+      List<UserGetDTO> userGetDTOs = convertToUserGetDTOs(userService.getUsers(), userFields);
+      return ResponseEntity.ok(userFields.wrap(withLiveStatus(userGetDTOs)));
+    }
 
-    // convert each user to the API representation
-    for (User user : users) {
-      userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+    int pageSize = limit == null ? defaultPageSize : limit;
+    if (pageSize < 1 || pageSize > maxPageSize) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          String.format("limit must be between 1 and %d", maxPageSize));
     }
-    return userGetDTOs;
+
+    List<UserSummary> users = userService.getUsersAfter(after, pageSize);
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+    if (users.size() == pageSize) {
+      response.header(NEXT_CURSOR_HEADER, String.valueOf(users.get(users.size() - 1).getId()));
+    }
+    return response.body(userFields.wrap(withLiveStatus(convertToUserGetDTOs(users, userFields))));
+  }
+
+  /**
+   * Streams all users as one JSON array. The array is written incrementally
+   * while the users are read from the database, so the memory needed does not
+   * depend on the number of users.
+   */
+  @GetMapping(value = "/users", params = "stream=true")
+  public ResponseEntity<StreamingResponseBody> streamAllUsers(@RequestParam(required = false) String fields) {
+    UserFields userFields = UserFields.forList(fields);
+    ObjectWriter writer = objectMapper.writer(userFields.getFilters());
+    StreamingResponseBody body = outputStream -> {
+      try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+        generator.writeStartArray();
+        userService.forEachUser(user -> {
+          try {
+            writer.writeValue(generator, withLiveStatus(userFields.toUserGetDTO(user)));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+        generator.writeEndArray();
+      }
+    };
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+  }
+
+  /**
+   * Server-sent events with every change of a user (see UserEventDTO), so
+   * clients can keep their list of users up to date without polling. A client
+   * should load the users after subscribing and again whenever it has to
+   * reconnect, since changes are not replayed.
+   */
+  @GetMapping(value = "/users/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter subscribeToUserEvents() {
+    return userEventBroadcaster.subscribe();
   }
 
   @PostMapping("/users")
@@ -52,15 +189,94 @@ public class UserController {
     // create user
     User createdUser = userService.createUser(userInput);
     // convert internal representation of user back to API
-    return DTOMapper.INSTANCE.convertEntityToUserGetDTO(createdUser);
+    return withLiveStatus(convertToUserGetDTO(createdUser));
+  }
+
+  /**
+   * Bulk import of users from a newline delimited JSON body (one UserPostDTO
+   * per line). The body is read as a stream and imported in batches, so its
+   * size is not limited by memory. The response reports the result of every
+   * non-empty line. Each batch is committed on its own; if one fails, its
+   * lines are reported as FAILED and the import stops, the lines after it are
+   * neither imported nor reported.
+   */
+  @PostMapping(value = "/users/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+  @ResponseStatus(HttpStatus.OK)
+  @ResponseBody
+  public List<UserImportResultDTO> importUsers(Reader body) throws IOException {
+    List<UserImportResultDTO> results = new ArrayList<>();
+    List<User> batch = new ArrayList<>(importBatchSize);
+    List<Integer> batchLines = new ArrayList<>(importBatchSize);
+
+    BufferedReader reader = new BufferedReader(body);
+    int lineNumber = 0;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      try {
+        UserPostDTO userPostDTO = objectMapper.readValue(line, UserPostDTO.class);
+        batch.add(DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO));
+        batchLines.add(lineNumber);
+      } catch (JsonProcessingException e) {
+        UserImportResultDTO result = new UserImportResultDTO();
+        result.setLine(lineNumber);
+        result.setStatus(ImportStatus.INVALID);
+        result.setMessage("Malformed JSON");
+        results.add(result);
+      }
+      if (batch.size() == importBatchSize && !importBatch(batch, batchLines, results)) {
+        break;
+      }
+    }
+    if (line == null) {
+      importBatch(batch, batchLines, results);
+    }
+
+    results.sort(Comparator.comparingInt(UserImportResultDTO::getLine));
+    return results;
+  }
+
+  // false if the batch failed
+  private boolean importBatch(List<User> batch, List<Integer> batchLines, List<UserImportResultDTO> results) {
+    if (batch.isEmpty()) {
+      return true;
+    }
+    boolean imported = true;
+    List<UserImportResultDTO> batchResults;
+    try {
+      batchResults = userService.importUsers(batch);
+    } catch (RuntimeException e) {
+      log.warn("Import of the batch of lines {} to {} failed", batchLines.get(0),
+          batchLines.get(batchLines.size() - 1), e);
+      imported = false;
+      batchResults = new ArrayList<>(batch.size());
+      for (User user : batch) {
+        UserImportResultDTO result = new UserImportResultDTO();
+        result.setUsername(user.getUsername());
+        result.setStatus(ImportStatus.FAILED);
+        result.setMessage("The batch of this user could not be imported");
+        batchResults.add(result);
+      }
+    }
+    for (int i = 0; i < batchResults.size(); i++) {
+      batchResults.get(i).setLine(batchLines.get(i));
+    }
+    results.addAll(batchResults);
+    batch.clear();
+    batchLines.clear();
+    return imported;
   }
 
   @PostMapping("/users/login")
   @ResponseStatus(HttpStatus.OK)
   @ResponseBody
-  public UserGetDTO loginUser(@RequestBody UserPostDTO userPostDTO) {
+  public UserGetDTO loginUser(@RequestBody UserPostDTO userPostDTO, HttpServletRequest request) {
+    loginThrottle.acquire(request.getRemoteAddr(), userPostDTO.getUsername());
     User loggedInUser = userService.loginUser(userPostDTO.getUsername(), userPostDTO.getPassword());
-    return DTOMapper.INSTANCE.convertEntityToUserGetDTO(loggedInUser);
+    return withLiveStatus(convertToUserGetDTO(loggedInUser));
   }
 
   @PostMapping("/users/{userId}/logout")
@@ -69,18 +285,137 @@ public class UserController {
     userService.logoutUser(userId);
   }
 
-  @GetMapping("/users/{userId}")
+  /**
+   * Keeps the user online; without a heartbeat a user goes offline after
+   * the presence time to live.
+   */
+  @PostMapping("/users/{userId}/heartbeat")
+  @ResponseStatus(HttpStatus.NO_CONTENT)
+  public void heartbeat(@PathVariable Long userId) {
+    userService.heartbeat(userId);
+  }
+
+  /**
+   * Search by username and name (autocomplete), best matches first (see
+   * UserSearchIndex). Pages are selected with {@code offset} and
+   * {@code limit}; only the first users.search.max-results matches can be
+   * paged through.
+   */
+  @GetMapping("/users/search")
   @ResponseStatus(HttpStatus.OK)
   @ResponseBody
-  public UserGetDTO getUser(@PathVariable Long userId) {
-    User user = userService.getUserById(userId);
-    return DTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
+  public List<UserSearchResultDTO> searchUsers(@RequestParam("q") String query,
+      @RequestParam(defaultValue = "0") int offset, @RequestParam(required = false) Integer limit) {
+    int pageSize = limit == null ? defaultSearchLimit : limit;
+    if (offset < 0 || pageSize < 1 || offset + pageSize > maxSearchResults) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          String.format("offset and limit must select a page within the first %d results", maxSearchResults));
+    }
+    return userSearchIndex.search(query, offset, pageSize);
+  }
+
+  /**
+   * Whether the username can still be taken, e.g. to check it while it is
+   * typed. Free usernames are mostly answered without a query (see
+   * UsernameFilter).
+   */
+  @GetMapping("/users/availability")
+  @ResponseStatus(HttpStatus.OK)
+  @ResponseBody
+  public UsernameAvailabilityDTO getUsernameAvailability(@RequestParam String username) {
+    if (username.trim().isEmpty()) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "username must not be empty");
+    }
+    return new UsernameAvailabilityDTO(username, userService.isUsernameAvailable(username));
+  }
+
+  /**
+   * Answers If-None-Match with 304, the version comes with the (coalesced)
+   * read of the user; responses vary by the Accept header like the list.
+   * {@code fields} selects the fields of the user (see UserFields).
+   */
+  @GetMapping("/users/{userId}")
+  @ResponseBody
+  public ResponseEntity<MappingJacksonValue> getUser(@PathVariable Long userId,
+      @RequestParam(required = false) String fields, WebRequest request, HttpServletResponse servletResponse) {
+    UserFields userFields = UserFields.forUser(fields);
+    servletResponse.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+    UserProfile profile = userService.getUserProfile(userId);
+    if (request.checkNotModified(toETag(profile.getVersion()))) {
+      return null;
+    }
+    return ResponseEntity.ok(userFields.wrap(withLiveStatus(profile.getUser())));
   }
 
   @PutMapping("/users/{userId}")
   @ResponseStatus(HttpStatus.NO_CONTENT)
   @ResponseBody
-  public void updateUser(@PathVariable Long userId, @RequestBody UserPutDTO userPutDTO) {
-    userService.updateUser(userId, userPutDTO);
+  public void updateUser(@PathVariable Long userId, @RequestBody UserPutDTO userPutDTO,
+      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+    userService.updateUser(userId, userPutDTO, parseVersion(ifMatch));
+  }
+
+  // a strong ETag of a version, null if there is none
+  private static String toETag(String version) {
+    return version == null ? null : "\"" + version + "\"";
+  }
+
+  // the same for the compressed and the binary encodings of a response
+  private static String toWeakETag(String version) {
+    return version == null ? null : "W/" + toETag(version);
+  }
+
+  // the entity version from an ETag of a single user (see UserService#getUserProfile)
+  private static Long parseVersion(String eTag) {
+    if (eTag == null || eTag.equals("*")) {
+      return null;
+    }
+    String value = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+    value = value.replace("\"", "");
+    int end = value.indexOf('.');
+    try {
+      return Long.valueOf(end < 0 ? value : value.substring(0, end));
+    } catch (NumberFormatException e) {
+      throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "Unknown ETag");
+    }
+  }
+
+  // the live status (the stored one may lag behind, see PresenceService) and a profile update that has not been
+  // written yet (see ProfileWriteBuffer)
+  private UserGetDTO withLiveStatus(UserGetDTO userGetDTO) {
+    presenceService.applyTo(userGetDTO);
+    profileWriteBuffer.applyTo(userGetDTO);
+    return userGetDTO;
+  }
+
+  private List<UserGetDTO> withLiveStatus(List<UserGetDTO> userGetDTOs) {
+    userGetDTOs.forEach(this::withLiveStatus);
+    return userGetDTOs;
+  }
+
+  private UserGetDTO convertToUserGetDTO(User user) {
+    return singleMappingTimer.record(() -> DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+  }
+
+  // all fields and untimed, the mapping measured by UserListBenchmark
+  static List<UserGetDTO> convertToUserGetDTOs(List<UserSummary> users) {
+    List<UserGetDTO> userGetDTOs = new ArrayList<>(users.size());
+
+    // convert each user to the API representation
+    for (UserSummary user : users) {
+      userGetDTOs.add(DTOMapper.INSTANCE.convertUserSummaryToUserGetDTO(user));
+    }
+    return userGetDTOs;
+  }
+
+  // only the requested fields, see UserFields
+  private List<UserGetDTO> convertToUserGetDTOs(List<UserSummary> users, UserFields fields) {
+    return listMappingTimer.record(() -> {
+      List<UserGetDTO> userGetDTOs = new ArrayList<>(users.size());
+      for (UserSummary user : users) {
+        userGetDTOs.add(fields.toUserGetDTO(user));
+      }
+      return userGetDTOs;
+    });
   }
 }
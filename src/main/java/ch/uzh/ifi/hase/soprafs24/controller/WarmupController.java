@@ -0,0 +1,29 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.service.WarmupService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Warmup Controller
+ * Answers App Engine's warmup request (inbound_services: warmup in app.yaml)
+ * once the WarmupService has finished, so App Engine only sends traffic to a
+ * new instance after it has been warmed up.
+ */
+@RestController
+public class WarmupController {
+
+  private final WarmupService warmupService;
+
+  WarmupController(WarmupService warmupService) {
+    this.warmupService = warmupService;
+  }
+
+  @GetMapping("/_ah/warmup")
+  public CompletableFuture<ResponseEntity<Void>> warmup() {
+    return warmupService.whenCompleted().thenApply(done -> ResponseEntity.ok().build());
+  }
+}
@@ -1,6 +1,12 @@
 package ch.uzh.ifi.hase.soprafs24.entity;
 
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.annotations.OptimisticLock;
 
 import javax.persistence.*;
 import java.io.Serializable;
@@ -15,26 +21,46 @@ import java.time.LocalDate;
  * - nullable = false -> this cannot be left empty
  * - unique = true -> this value must be unqiue across the database -> composes
  * the primary key
+ * Updates only write the changed columns, so that an update does not
+ * overwrite columns that are written separately (status, password).
+ * Users are kept in the second-level cache and can be looked up by username
+ * from there (see SecondLevelCacheConfig).
+ * Username and token are indexed through their unique constraints, name and
+ * status (users that are online) have indexes of their own.
  */
 @Entity
-@Table(name = "USER")
+@DynamicUpdate
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = User.CACHE_REGION)
+@NaturalIdCache(region = User.USERNAME_CACHE_REGION)
+@Table(name = "USER", indexes = {
+    @Index(name = "IDX_USER_NAME", columnList = "name"),
+    @Index(name = "IDX_USER_STATUS", columnList = "status") })
 public class User implements Serializable {
 
   private static final long serialVersionUID = 1L;
 
+  public static final String CACHE_REGION = "users";
+  public static final String USERNAME_CACHE_REGION = "users-by-username";
+
+  // ids are allocated in blocks, which allows Hibernate to batch inserts
   @Id
-  @GeneratedValue
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_sequence")
+  @SequenceGenerator(name = "user_sequence", sequenceName = "user_sequence", allocationSize = 50)
   private Long id;
 
   @Column(nullable = false)
   private String name;
 
+  @NaturalId(mutable = true)
   @Column(nullable = false, unique = true)
   private String username;
 
   @Column(nullable = false, unique = true)
   private String token;
 
+  // presence changes do not count as a change of the user (see version)
+  @OptimisticLock(excluded = true)
   @Column(nullable = false)
   private UserStatus status;
 
@@ -47,6 +73,11 @@ public class User implements Serializable {
   @Column(nullable = true)
   private LocalDate birthDate;
 
+  // incremented on every update of the entity, used for ETags and optimistic locking
+  @Version
+  @Column(nullable = false)
+  private Long version;
+
   public Long getId() {
     return id;
   }
@@ -110,4 +141,12 @@ public class User implements Serializable {
   public void setBirthDate(LocalDate birthDate) {
     this.birthDate = birthDate;
   }
+
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
 }
@@ -0,0 +1,61 @@
+package ch.uzh.ifi.hase.soprafs24.event;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserChangeType;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserEventDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+
+/**
+ * Application event that is published whenever a user is created, updated,
+ * goes online or goes offline. Events are relayed to the other instances (see
+ * ClusterEventRelay) unless they are local only.
+ */
+public class UserChangedEvent {
+
+  private final UserEventDTO change;
+  private final boolean localOnly;
+
+  public UserChangedEvent(UserEventDTO change) {
+    this(change, false);
+  }
+
+  private UserChangedEvent(UserEventDTO change, boolean localOnly) {
+    this.change = change;
+    this.localOnly = localOnly;
+  }
+
+  /**
+   * A change of the whole user, with the given (live) status.
+   */
+  public static UserChangedEvent of(UserChangeType type, User user, UserStatus status) {
+    UserEventDTO change = DTOMapper.INSTANCE.convertEntityToUserEventDTO(user);
+    change.setType(type);
+    change.setStatus(status);
+    return new UserChangedEvent(change);
+  }
+
+  public static UserChangedEvent presence(Long userId, UserStatus status) {
+    UserEventDTO change = new UserEventDTO();
+    change.setType(status == UserStatus.ONLINE ? UserChangeType.ONLINE : UserChangeType.OFFLINE);
+    change.setId(userId);
+    change.setStatus(status);
+    return new UserChangedEvent(change);
+  }
+
+  /**
+   * The same change, but not relayed to the other instances: either since it
+   * comes from one of them or since every instance derives it on its own.
+   */
+  public UserChangedEvent localOnly() {
+    return new UserChangedEvent(change, true);
+  }
+
+  public UserEventDTO getChange() {
+    return change;
+  }
+
+  public boolean isLocalOnly() {
+    return localOnly;
+  }
+}
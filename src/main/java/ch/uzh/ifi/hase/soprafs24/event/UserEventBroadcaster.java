@@ -0,0 +1,163 @@
+package ch.uzh.ifi.hase.soprafs24.event;
+
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserEventDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * User Event Broadcaster
+ * Pushes user changes to all subscribers of /users/events as server-sent
+ * events. The subscribers do not hold a thread while waiting; every subscriber
+ * has a bounded buffer, which is drained by a small shared pool of sender
+ * threads. A subscriber whose buffer is full (i.e., who does not keep up) is
+ * disconnected and has to reconnect and reload the users.
+ */
+@Component
+public class UserEventBroadcaster {
+
+  private final Logger log = LoggerFactory.getLogger(UserEventBroadcaster.class);
+
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+  private final Executor executor;
+  private final int bufferSize;
+  private final int maxSubscribers;
+  private final long timeoutMillis;
+  private final Counter droppedCounter;
+
+  @Autowired
+  public UserEventBroadcaster(@Value("${users.events.threads:2}") int threads,
+      @Value("${users.events.buffer-size:256}") int bufferSize,
+      @Value("${users.events.max-subscribers:10000}") int maxSubscribers,
+      @Value("${users.events.timeout:30m}") Duration timeout, MeterRegistry meterRegistry) {
+    this(Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("user-events-")), bufferSize,
+        maxSubscribers, timeout, meterRegistry);
+  }
+
+  UserEventBroadcaster(Executor executor, int bufferSize, int maxSubscribers, Duration timeout,
+      MeterRegistry meterRegistry) {
+    this.executor = executor;
+    this.bufferSize = bufferSize;
+    this.maxSubscribers = maxSubscribers;
+    this.timeoutMillis = timeout.toMillis();
+    this.droppedCounter = meterRegistry.counter("users.events.dropped");
+    Gauge.builder("users.events.subscribers", subscribers, Set::size).register(meterRegistry);
+  }
+
+  /**
+   * Registers a new subscriber. The returned emitter completes when the
+   * timeout is reached, the client disconnects or the client is dropped.
+   */
+  public SseEmitter subscribe() {
+    if (subscribers.size() >= maxSubscribers) {
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many subscribers");
+    }
+    Subscriber subscriber = new Subscriber(new SseEmitter(timeoutMillis), bufferSize);
+    subscriber.emitter.onCompletion(() -> subscribers.remove(subscriber));
+    subscriber.emitter.onTimeout(() -> subscribers.remove(subscriber));
+    subscriber.emitter.onError(e -> subscribers.remove(subscriber));
+    subscribers.add(subscriber);
+    return subscriber.emitter;
+  }
+
+  public int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  /**
+   * Changes made in a transaction are only sent once it has committed, so
+   * subscribers never see changes that are rolled back.
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onUserChanged(UserChangedEvent event) {
+    for (Subscriber subscriber : subscribers) {
+      if (subscriber.buffer.offer(event.getChange())) {
+        schedule(subscriber);
+      } else {
+        drop(subscriber);
+      }
+    }
+  }
+
+  @PreDestroy
+  void shutdown() {
+    subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    subscribers.clear();
+    if (executor instanceof ExecutorService) {
+      ((ExecutorService) executor).shutdown();
+    }
+  }
+
+  private void drop(Subscriber subscriber) {
+    if (subscribers.remove(subscriber)) {
+      droppedCounter.increment();
+      log.debug("Dropped a subscriber whose buffer of {} events was full", bufferSize);
+      subscriber.buffer.clear();
+      subscriber.emitter.complete();
+    }
+  }
+
+  // at most one sender per subscriber at a time, which keeps the events in order
+  private void schedule(Subscriber subscriber) {
+    if (subscriber.sending.compareAndSet(false, true)) {
+      executor.execute(() -> send(subscriber));
+    }
+  }
+
+  private void send(Subscriber subscriber) {
+    try {
+      UserEventDTO change;
+      while ((change = subscriber.buffer.poll()) != null) {
+        subscriber.emitter.send(SseEmitter.event()
+            .name(change.getType().name())
+            .data(change, MediaType.APPLICATION_JSON));
+      }
+    } catch (IOException | IllegalStateException e) {
+      // the client is gone or the emitter has already completed
+      subscribers.remove(subscriber);
+      subscriber.buffer.clear();
+      return;
+    } finally {
+      subscriber.sending.set(false);
+    }
+    // an event may have been added after the last poll but before the flag was reset
+    if (!subscriber.buffer.isEmpty()) {
+      schedule(subscriber);
+    }
+  }
+
+  private static final class Subscriber {
+
+    private final SseEmitter emitter;
+    private final Queue<UserEventDTO> buffer;
+    private final AtomicBoolean sending = new AtomicBoolean();
+
+    private Subscriber(SseEmitter emitter, int bufferSize) {
+      this.emitter = emitter;
+      this.buffer = new ArrayBlockingQueue<>(bufferSize);
+    }
+  }
+}
@@ -2,9 +2,12 @@ package ch.uzh.ifi.hase.soprafs24.exceptions;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.transaction.TransactionSystemException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -15,10 +18,14 @@ import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.RejectedExecutionException;
 
 @ControllerAdvice(annotations = RestController.class)
+@Profile("!reactive")
 public class GlobalExceptionAdvice extends ResponseEntityExceptionHandler {
 
+  private static final String RETRY_AFTER_SECONDS = "1";
+
   private final Logger log = LoggerFactory.getLogger(GlobalExceptionAdvice.class);
 
   @ExceptionHandler(value = { IllegalArgumentException.class, IllegalStateException.class })
@@ -27,6 +34,31 @@ public class GlobalExceptionAdvice extends ResponseEntityExceptionHandler {
     return handleExceptionInternal(ex, bodyOfResponse, new HttpHeaders(), HttpStatus.CONFLICT, request);
   }
 
+  // a bounded worker pool (e.g., the password hashing pool) is saturated
+  @ExceptionHandler(RejectedExecutionException.class)
+  protected ResponseEntity<Object> handleRejectedExecution(RejectedExecutionException ex, WebRequest request) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+    String bodyOfResponse = "The server is busy, please retry later";
+    return handleExceptionInternal(ex, bodyOfResponse, headers, HttpStatus.SERVICE_UNAVAILABLE, request);
+  }
+
+  // the entity was updated concurrently (see User#version)
+  @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+  protected ResponseEntity<Object> handleOptimisticLocking(ObjectOptimisticLockingFailureException ex,
+      WebRequest request) {
+    String bodyOfResponse = "The user has been changed in the meantime, please reload it";
+    return handleExceptionInternal(ex, bodyOfResponse, new HttpHeaders(), HttpStatus.CONFLICT, request);
+  }
+
+  // a unique constraint, e.g. a username taken concurrently on another instance (see UsernameFilter)
+  @ExceptionHandler(DataIntegrityViolationException.class)
+  protected ResponseEntity<Object> handleDataIntegrityViolation(DataIntegrityViolationException ex,
+      WebRequest request) {
+    String bodyOfResponse = "The user conflicts with an existing user";
+    return handleExceptionInternal(ex, bodyOfResponse, new HttpHeaders(), HttpStatus.CONFLICT, request);
+  }
+
   @ExceptionHandler(TransactionSystemException.class)
   public ResponseStatusException handleTransactionSystemException(Exception ex, HttpServletRequest request) {
     log.error("Request: {} raised {}", request.getRequestURL(), ex);
@@ -0,0 +1,32 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Answered with 429 and a Retry-After header telling the client when to try
+ * again (used for both the servlet and the reactive stack).
+ */
+public class TooManyRequestsException extends ResponseStatusException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final long retryAfterSeconds;
+
+  public TooManyRequestsException(String reason, long retryAfterSeconds) {
+    super(HttpStatus.TOO_MANY_REQUESTS, reason);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+
+  @Override
+  public HttpHeaders getResponseHeaders() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+    return headers;
+  }
+}
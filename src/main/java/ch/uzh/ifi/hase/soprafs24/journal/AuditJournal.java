@@ -0,0 +1,182 @@
+package ch.uzh.ifi.hase.soprafs24.journal;
+
+import ch.uzh.ifi.hase.soprafs24.constant.AuditEventType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Audit Journal
+ * Records the lifecycle of the users (created, updated, logged in, logged
+ * out) in an append-only journal on disk instead of the database. Recording
+ * only puts the event into a lock-free ring buffer, a single writer thread
+ * appends the events to memory-mapped segment files (see JournalWriter) and
+ * forces them to disk at a fixed interval. An idle writer parks until an
+ * event is recorded or the next force is due. If the writer falls behind and
+ * the buffer is full, events are dropped and counted rather than slowing down
+ * requests. Disabled by default (journal.enabled).
+ */
+@Component
+public class AuditJournal {
+
+  private final Logger log = LoggerFactory.getLogger(AuditJournal.class);
+
+  private final boolean enabled;
+  private final Path directory;
+  private final long forceIntervalNanos;
+  private final MpscRingBuffer<AuditRecord> buffer;
+  private final Counter writtenCounter;
+  private final Counter droppedCounter;
+
+  private JournalWriter writer;
+  private Thread writerThread;
+  private volatile boolean running;
+  // set while the writer parks, so that only then recording an event has to wake it up
+  private volatile boolean writerParked;
+
+  public AuditJournal(@Value("${journal.enabled:false}") boolean enabled,
+      @Value("${journal.directory:./data/journal}") String directory,
+      @Value("${journal.segment-size:64MB}") DataSize segmentSize,
+      @Value("${journal.buffer-size:65536}") int bufferSize,
+      @Value("${journal.force-interval:1s}") Duration forceInterval, MeterRegistry meterRegistry) {
+    this.enabled = enabled;
+    this.directory = Paths.get(directory);
+    this.forceIntervalNanos = forceInterval.toNanos();
+    this.buffer = new MpscRingBuffer<>(bufferSize);
+    this.writtenCounter = meterRegistry.counter("journal.records.written");
+    this.droppedCounter = meterRegistry.counter("journal.records.dropped");
+    Gauge.builder("journal.backlog", buffer, MpscRingBuffer::size).register(meterRegistry);
+
+    if (enabled) {
+      try {
+        this.writer = new JournalWriter(this.directory, Math.toIntExact(segmentSize.toBytes()));
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not open the journal in " + directory, e);
+      }
+      this.running = true;
+      this.writerThread = new Thread(this::writeLoop, "audit-journal-writer");
+      this.writerThread.setDaemon(true);
+      this.writerThread.start();
+      log.info("Audit journal in {}, continuing at sequence {}", this.directory, writer.getNextSequence());
+    }
+  }
+
+  /**
+   * Records the event. Within a transaction it is recorded once the
+   * transaction has committed (and not at all if it rolls back).
+   */
+  public void record(AuditEventType type, Long userId, String username) {
+    if (!enabled) {
+      return;
+    }
+    AuditRecord record = new AuditRecord(0, System.currentTimeMillis(), type, userId == null ? 0 : userId, username);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          offer(record);
+        }
+      });
+    } else {
+      offer(record);
+    }
+  }
+
+  /**
+   * Passes the written records from the given sequence on to the consumer, see
+   * {@link JournalReader#replay}. Returns the sequence of the last record.
+   */
+  public long replay(long fromSequence, Consumer<AuditRecord> consumer) {
+    try {
+      return new JournalReader(directory).replay(fromSequence, consumer);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read the journal in " + directory, e);
+    }
+  }
+
+  /**
+   * Stops the writer once it has written all recorded events.
+   */
+  @PreDestroy
+  public void close() {
+    if (writerThread == null) {
+      return;
+    }
+    running = false;
+    LockSupport.unpark(writerThread);
+    try {
+      writerThread.join(TimeUnit.SECONDS.toMillis(10));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void offer(AuditRecord record) {
+    if (!buffer.offer(record)) {
+      droppedCounter.increment();
+    } else if (writerParked) {
+      LockSupport.unpark(writerThread);
+    }
+  }
+
+  private void writeLoop() {
+    long lastForce = System.nanoTime();
+    boolean dirty = false;
+    try {
+      while (running || buffer.size() > 0) {
+        AuditRecord record = buffer.poll();
+        if (record != null) {
+          append(record);
+          dirty = true;
+          continue;
+        }
+        long sinceForce = System.nanoTime() - lastForce;
+        if (dirty && sinceForce >= forceIntervalNanos) {
+          writer.force();
+          lastForce = System.nanoTime();
+          dirty = false;
+          sinceForce = 0;
+        }
+        writerParked = true;
+        // an event recorded before the flag was set has to be seen here
+        if (running && buffer.size() == 0) {
+          LockSupport.parkNanos(dirty ? forceIntervalNanos - sinceForce : forceIntervalNanos);
+        }
+        writerParked = false;
+      }
+    } finally {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        log.warn("Could not close the audit journal", e);
+      }
+    }
+  }
+
+  private void append(AuditRecord record) {
+    try {
+      writer.append(record);
+      writtenCounter.increment();
+    } catch (IOException | RuntimeException e) {
+      droppedCounter.increment();
+      log.warn("Could not write {} to the audit journal", record, e);
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package ch.uzh.ifi.hase.soprafs24.journal;
+
+import ch.uzh.ifi.hase.soprafs24.constant.AuditEventType;
+
+/**
+ * One entry of the audit journal. The sequence number is assigned when the
+ * record is written (0 until then) and grows by one with every record.
+ */
+public final class AuditRecord {
+
+  private final long sequence;
+  private final long timestamp;
+  private final AuditEventType type;
+  private final long userId;
+  private final String username;
+
+  public AuditRecord(long sequence, long timestamp, AuditEventType type, long userId, String username) {
+    this.sequence = sequence;
+    this.timestamp = timestamp;
+    this.type = type;
+    this.userId = userId;
+    this.username = username;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  // epoch millis
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public AuditEventType getType() {
+    return type;
+  }
+
+  public long getUserId() {
+    return userId;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  @Override
+  public String toString() {
+    return "AuditRecord{" + sequence + ", " + timestamp + ", " + type + ", " + userId + ", " + username + "}";
+  }
+}
@@ -0,0 +1,144 @@
+package ch.uzh.ifi.hase.soprafs24.journal;
+
+import ch.uzh.ifi.hase.soprafs24.constant.AuditEventType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.zip.CRC32C;
+
+/**
+ * The binary format of the journal segments. A segment starts with a header
+ * (magic number, format version) followed by the records:
+ * <pre>
+ * int  length of the payload (0: no more records in this segment)
+ * int  CRC32C of the payload
+ * long sequence
+ * long timestamp (epoch millis)
+ * byte type (AuditEventType ordinal)
+ * long user id
+ * short length of the username, followed by the username in UTF-8
+ * </pre>
+ * The length is written last, so a record is either complete or ends the
+ * segment. Segments are named after the sequence of their first record.
+ */
+final class JournalFormat {
+
+  static final int MAGIC = 0x554a4e4c;
+  static final int VERSION = 1;
+  static final int SEGMENT_HEADER_SIZE = 8;
+  static final int RECORD_HEADER_SIZE = 8;
+  static final int MAX_USERNAME_BYTES = 1024;
+  // sequence, timestamp, type, user id, length of the username
+  static final int FIXED_PAYLOAD_SIZE = 8 + 8 + 1 + 8 + 2;
+  static final int MAX_RECORD_SIZE = RECORD_HEADER_SIZE + FIXED_PAYLOAD_SIZE + MAX_USERNAME_BYTES;
+  static final String SEGMENT_SUFFIX = ".journal";
+
+  private static final AuditEventType[] TYPES = AuditEventType.values();
+
+  private JournalFormat() {
+  }
+
+  static String segmentName(long firstSequence) {
+    return String.format("%020d%s", firstSequence, SEGMENT_SUFFIX);
+  }
+
+  static boolean isSegment(Path path) {
+    return path.getFileName().toString().endsWith(SEGMENT_SUFFIX);
+  }
+
+  static long firstSequenceOf(Path segment) {
+    String name = segment.getFileName().toString();
+    return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  static void writeSegmentHeader(ByteBuffer buffer) {
+    buffer.putInt(0, MAGIC);
+    buffer.putInt(4, VERSION);
+    buffer.position(SEGMENT_HEADER_SIZE);
+  }
+
+  static boolean hasSegmentHeader(ByteBuffer buffer) {
+    return buffer.limit() >= SEGMENT_HEADER_SIZE && buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION;
+  }
+
+  static byte[] encodeUsername(String username) {
+    if (username == null) {
+      return new byte[0];
+    }
+    byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length <= MAX_USERNAME_BYTES) {
+      return bytes;
+    }
+    byte[] truncated = new byte[MAX_USERNAME_BYTES];
+    System.arraycopy(bytes, 0, truncated, 0, MAX_USERNAME_BYTES);
+    return truncated;
+  }
+
+  static int recordSize(byte[] username) {
+    return RECORD_HEADER_SIZE + FIXED_PAYLOAD_SIZE + username.length;
+  }
+
+  /**
+   * Writes the record at the position of the buffer, which must have room
+   * for it (see {@link #recordSize}), and moves the position past it.
+   */
+  static void writeRecord(ByteBuffer buffer, long sequence, AuditRecord record, byte[] username) {
+    int start = buffer.position();
+    int payloadStart = start + RECORD_HEADER_SIZE;
+    buffer.position(payloadStart);
+    buffer.putLong(sequence);
+    buffer.putLong(record.getTimestamp());
+    buffer.put((byte) record.getType().ordinal());
+    buffer.putLong(record.getUserId());
+    buffer.putShort((short) username.length);
+    buffer.put(username);
+    int end = buffer.position();
+
+    buffer.putInt(start + 4, checksum(buffer, payloadStart, end));
+    buffer.putInt(start, end - payloadStart);
+  }
+
+  /**
+   * Reads the record at the position of the buffer and moves the position
+   * past it. Returns null at the end of the records, or if the record is
+   * incomplete or corrupt.
+   */
+  static AuditRecord readRecord(ByteBuffer buffer) {
+    int start = buffer.position();
+    if (buffer.limit() - start < RECORD_HEADER_SIZE) {
+      return null;
+    }
+    int length = buffer.getInt(start);
+    int payloadStart = start + RECORD_HEADER_SIZE;
+    if (length < FIXED_PAYLOAD_SIZE || length > FIXED_PAYLOAD_SIZE + MAX_USERNAME_BYTES
+        || buffer.limit() - payloadStart < length) {
+      return null;
+    }
+    int end = payloadStart + length;
+    if (buffer.getInt(start + 4) != checksum(buffer, payloadStart, end)) {
+      return null;
+    }
+    buffer.position(payloadStart);
+    long sequence = buffer.getLong();
+    long timestamp = buffer.getLong();
+    int type = buffer.get();
+    long userId = buffer.getLong();
+    int usernameLength = buffer.getShort();
+    if (type < 0 || type >= TYPES.length || usernameLength != length - FIXED_PAYLOAD_SIZE) {
+      return null;
+    }
+    byte[] username = new byte[usernameLength];
+    buffer.get(username);
+    return new AuditRecord(sequence, timestamp, TYPES[type], userId,
+        usernameLength == 0 ? null : new String(username, StandardCharsets.UTF_8));
+  }
+
+  private static int checksum(ByteBuffer buffer, int from, int to) {
+    CRC32C crc = new CRC32C();
+    ByteBuffer payload = buffer.duplicate();
+    payload.limit(to).position(from);
+    crc.update(payload);
+    return (int) crc.getValue();
+  }
+}
@@ -0,0 +1,101 @@
+package ch.uzh.ifi.hase.soprafs24.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Journal Reader
+ * Replays the records of a journal directory in the order of their sequence
+ * numbers. Can be used while the journal is written; records that are not
+ * completely written yet are not returned. A corrupt record ends its segment,
+ * the replay continues with the next one.
+ */
+public class JournalReader {
+
+  private final Logger log = LoggerFactory.getLogger(JournalReader.class);
+
+  private final Path directory;
+
+  public JournalReader(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Passes all records with a sequence of at least {@code fromSequence} to the
+   * consumer and returns the sequence of the last record read (0 if there is
+   * none).
+   */
+  public long replay(long fromSequence, Consumer<AuditRecord> consumer) throws IOException {
+    List<Path> segments = segments();
+    long lastSequence = 0;
+    for (int i = 0; i < segments.size(); i++) {
+      // the records of the segment all come before the next segment
+      if (i + 1 < segments.size() && JournalFormat.firstSequenceOf(segments.get(i + 1)) <= fromSequence) {
+        continue;
+      }
+      lastSequence = Math.max(lastSequence, readSegment(segments.get(i), fromSequence, consumer));
+    }
+    return lastSequence;
+  }
+
+  /**
+   * The sequence of the last record written (0 if there is none).
+   */
+  public long lastSequence() throws IOException {
+    List<Path> segments = segments();
+    for (int i = segments.size() - 1; i >= 0; i--) {
+      long lastSequence = readSegment(segments.get(i), Long.MAX_VALUE, record -> { });
+      if (lastSequence > 0) {
+        return lastSequence;
+      }
+    }
+    return 0;
+  }
+
+  List<Path> segments() throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return List.of();
+    }
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(JournalFormat::isSegment).sorted().collect(Collectors.toList());
+    }
+  }
+
+  private long readSegment(Path segment, long fromSequence, Consumer<AuditRecord> consumer) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (NoSuchFileException e) {
+      return 0;
+    }
+    if (!JournalFormat.hasSegmentHeader(buffer)) {
+      log.warn("Skipped {}, it is not a journal segment", segment);
+      return 0;
+    }
+    buffer.position(JournalFormat.SEGMENT_HEADER_SIZE);
+    long lastSequence = 0;
+    AuditRecord record;
+    while ((record = JournalFormat.readRecord(buffer)) != null) {
+      lastSequence = record.getSequence();
+      if (lastSequence >= fromSequence) {
+        consumer.accept(record);
+      }
+    }
+    if (buffer.remaining() >= JournalFormat.RECORD_HEADER_SIZE && buffer.getInt(buffer.position()) != 0) {
+      log.warn("Corrupt record in {} at offset {}, skipped the rest of the segment", segment, buffer.position());
+    }
+    return lastSequence;
+  }
+}
@@ -0,0 +1,86 @@
+package ch.uzh.ifi.hase.soprafs24.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Journal Writer
+ * Appends records to memory-mapped segment files of a fixed size (see
+ * JournalFormat). When a record does not fit into the current segment, the
+ * segment is forced to disk and a new one is started. After a restart the
+ * writer continues with the next sequence number in a new segment, so a
+ * record torn by a crash simply ends the previous segment.
+ * Not thread-safe: there must be a single writer per directory.
+ */
+public class JournalWriter implements Closeable {
+
+  private final Path directory;
+  private final int segmentSize;
+
+  private long nextSequence;
+  private FileChannel channel;
+  private MappedByteBuffer segment;
+
+  public JournalWriter(Path directory, int segmentSize) throws IOException {
+    if (segmentSize < JournalFormat.SEGMENT_HEADER_SIZE + JournalFormat.MAX_RECORD_SIZE) {
+      throw new IllegalArgumentException("The segment size must be at least "
+          + (JournalFormat.SEGMENT_HEADER_SIZE + JournalFormat.MAX_RECORD_SIZE) + " bytes");
+    }
+    this.directory = Files.createDirectories(directory);
+    this.segmentSize = segmentSize;
+    this.nextSequence = new JournalReader(directory).lastSequence() + 1;
+  }
+
+  /**
+   * Appends the record with the next sequence number and returns it. The
+   * record is in the page cache afterwards, i.e., it survives a crash of the
+   * process, but only survives a crash of the machine once forced.
+   */
+  public long append(AuditRecord record) throws IOException {
+    byte[] username = JournalFormat.encodeUsername(record.getUsername());
+    if (segment == null || segment.remaining() < JournalFormat.recordSize(username)) {
+      startSegment();
+    }
+    long sequence = nextSequence++;
+    JournalFormat.writeRecord(segment, sequence, record, username);
+    return sequence;
+  }
+
+  public long getNextSequence() {
+    return nextSequence;
+  }
+
+  /**
+   * Writes the appended records to disk.
+   */
+  public void force() {
+    if (segment != null) {
+      segment.force();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    force();
+    if (channel != null) {
+      channel.close();
+    }
+    segment = null;
+  }
+
+  private void startSegment() throws IOException {
+    close();
+    Path path = directory.resolve(JournalFormat.segmentName(nextSequence));
+    // a segment named after the next sequence cannot hold any records, it was started just before a crash
+    Files.deleteIfExists(path);
+    channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    JournalFormat.writeSegmentHeader(segment);
+  }
+}
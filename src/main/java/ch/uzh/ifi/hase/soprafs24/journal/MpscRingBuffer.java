@@ -0,0 +1,82 @@
+package ch.uzh.ifi.hase.soprafs24.journal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded queue for many producers and a single consumer, without locks.
+ * Every slot carries a sequence number that tells whether it is free for the
+ * producer of a position or filled for the consumer: a producer claims a
+ * position with one compare-and-set and publishes its element by advancing
+ * the sequence of the slot. If the queue is full, {@link #offer} fails right
+ * away instead of waiting.
+ */
+final class MpscRingBuffer<E> {
+
+  private final int mask;
+  private final AtomicReferenceArray<E> elements;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  // only read and written by the consumer, published for size()
+  private final AtomicLong head = new AtomicLong();
+
+  MpscRingBuffer(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+    this.mask = size - 1;
+    this.elements = new AtomicReferenceArray<>(size);
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  int capacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Adds the element, or returns false if the queue is full. Thread-safe.
+   */
+  boolean offer(E element) {
+    while (true) {
+      long position = tail.get();
+      int index = (int) (position & mask);
+      long available = sequences.get(index) - position;
+      if (available < 0) {
+        return false;
+      }
+      if (available == 0 && tail.compareAndSet(position, position + 1)) {
+        elements.lazySet(index, element);
+        sequences.set(index, position + 1);
+        return true;
+      }
+      // another producer claimed the position first
+    }
+  }
+
+  /**
+   * Removes the oldest element, or returns null if there is none. Must only
+   * be called by the consumer thread.
+   */
+  E poll() {
+    long position = head.get();
+    int index = (int) (position & mask);
+    if (sequences.get(index) != position + 1) {
+      return null;
+    }
+    E element = elements.get(index);
+    elements.lazySet(index, null);
+    // free for the producer one round later
+    sequences.lazySet(index, position + mask + 1);
+    head.lazySet(position + 1);
+    return element;
+  }
+
+  /**
+   * The number of elements, approximately while producers are adding.
+   */
+  int size() {
+    return (int) Math.max(0, tail.get() - head.get());
+  }
+}
@@ -0,0 +1,59 @@
+package ch.uzh.ifi.hase.soprafs24.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * User Metrics Aspect
+ * Times every call of a public UserService method (users.operation, tagged
+ * with the operation and its outcome, e.g., SUCCESS, UNAUTHORIZED, NOT_FOUND
+ * or CONFLICT) and every call of a UserRepository method (users.repository,
+ * tagged with the query). Together with hashing.duration (BCrypt) and
+ * users.mapping (DTO mapping) this shows where the time of a request goes.
+ * Calls of a service method from within the service itself are not timed.
+ */
+@Aspect
+@Component
+public class UserMetricsAspect {
+
+  static final String OUTCOME_SUCCESS = "SUCCESS";
+
+  private final MeterRegistry meterRegistry;
+
+  public UserMetricsAspect(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Around("execution(public * ch.uzh.ifi.hase.soprafs24.service.UserService.*(..))")
+  public Object timeOperation(ProceedingJoinPoint joinPoint) throws Throwable {
+    Timer.Sample sample = Timer.start(meterRegistry);
+    String outcome = OUTCOME_SUCCESS;
+    try {
+      return joinPoint.proceed();
+    } catch (ResponseStatusException e) {
+      outcome = e.getStatus().name();
+      throw e;
+    } catch (Throwable e) {
+      outcome = e.getClass().getSimpleName();
+      throw e;
+    } finally {
+      sample.stop(meterRegistry.timer("users.operation",
+          "operation", joinPoint.getSignature().getName(), "outcome", outcome));
+    }
+  }
+
+  @Around("execution(* ch.uzh.ifi.hase.soprafs24.repository.UserRepository.*(..))")
+  public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+    Timer.Sample sample = Timer.start(meterRegistry);
+    try {
+      return joinPoint.proceed();
+    } finally {
+      sample.stop(meterRegistry.timer("users.repository", "query", joinPoint.getSignature().getName()));
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+
+import java.util.Collection;
+
+/**
+ * Lookups and writes of users that go through the second-level cache, see
+ * CacheAwareUserRepositoryImpl.
+ */
+public interface CacheAwareUserRepository {
+
+  /**
+   * Looks the user up by its natural id, i.e., from the cache if possible.
+   */
+  User findByUsername(String username);
+
+  /**
+   * Sets the status of the given users. Returns the number of users whose
+   * status changed.
+   */
+  int updateStatus(Collection<Long> ids, UserStatus status);
+
+  /**
+   * Replaces the password hash, but only if it is still the expected one. This
+   * way a background re-hash never overwrites a password that was changed in
+   * the meantime. Returns the number of updated users (0 or 1).
+   */
+  int updatePassword(Long id, String password, String expectedPassword);
+}
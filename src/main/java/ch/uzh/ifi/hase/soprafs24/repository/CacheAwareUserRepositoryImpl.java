@@ -0,0 +1,60 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Writes users through the entities instead of JPQL update statements: an
+ * update statement would evict all users from the second-level cache, while
+ * an entity write only updates the cached entry of that user. The changed
+ * users are written with batched updates of the changed columns.
+ */
+class CacheAwareUserRepositoryImpl implements CacheAwareUserRepository {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  @Transactional(readOnly = true)
+  public User findByUsername(String username) {
+    if (username == null) {
+      return null;
+    }
+    return entityManager.unwrap(Session.class).bySimpleNaturalId(User.class).load(username);
+  }
+
+  @Override
+  @Transactional
+  public int updateStatus(Collection<Long> ids, UserStatus status) {
+    List<User> users = entityManager.unwrap(Session.class).byMultipleIds(User.class)
+        .enableSessionCheck(true)
+        .multiLoad(new ArrayList<>(ids));
+    int updated = 0;
+    for (User user : users) {
+      if (user != null && user.getStatus() != status) {
+        user.setStatus(status);
+        updated++;
+      }
+    }
+    return updated;
+  }
+
+  @Override
+  @Transactional
+  public int updatePassword(Long id, String password, String expectedPassword) {
+    User user = entityManager.find(User.class, id);
+    if (user == null || !user.getPassword().equals(expectedPassword)) {
+      return 0;
+    }
+    user.setPassword(password);
+    return 1;
+  }
+}
@@ -0,0 +1,183 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import io.r2dbc.spi.Closeable;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Row;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+
+/**
+ * Reactive User Repository
+ * Non-blocking access (R2DBC) to the same USER table that is mapped by the
+ * User entity, for the reactive profile. Hibernate owns the schema, so the
+ * statements follow its column names, store the status by ordinal and keep the
+ * version column up to date. Ids come from the same sequence as Hibernate's:
+ * with the pooled-lo optimizer every sequence value reserves a block of ids
+ * starting at that value, so a value fetched here is never used by Hibernate.
+ * The connection factory is private to the repository: a ConnectionFactory
+ * bean would make Spring Boot back off from the JDBC datasource that JPA needs.
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveUserRepository implements DisposableBean {
+
+  private static final String SUMMARY_COLUMNS = "id, name, username, status, creation_date, birth_date";
+  private static final String COLUMNS =
+      "id, name, username, token, status, password, creation_date, birth_date, version";
+
+  private final ConnectionFactory connectionFactory;
+  private final DatabaseClient databaseClient;
+
+  // same database (and credentials) as the JDBC datasource
+  public ReactiveUserRepository(@Value("${users.reactive.r2dbc-url}") String url,
+      @Value("${spring.datasource.username}") String username,
+      @Value("${spring.datasource.password}") String password) {
+    this.connectionFactory = ConnectionFactories.get(ConnectionFactoryOptions.parse(url).mutate()
+        .option(ConnectionFactoryOptions.USER, username)
+        .option(ConnectionFactoryOptions.PASSWORD, password)
+        .build());
+    this.databaseClient = DatabaseClient.create(connectionFactory);
+  }
+
+  @Override
+  public void destroy() {
+    if (connectionFactory instanceof Closeable) {
+      Mono.from(((Closeable) connectionFactory).close()).block();
+    }
+  }
+
+  public Flux<UserSummary> findAllSummaries() {
+    return databaseClient.sql("select " + SUMMARY_COLUMNS + " from user order by id")
+        .map((row, metadata) -> new UserSummary(row.get("id", Long.class), row.get("name", String.class),
+            row.get("username", String.class), toStatus(row), row.get("creation_date", LocalDate.class),
+            row.get("birth_date", LocalDate.class)))
+        .all();
+  }
+
+  public Mono<User> findById(Long id) {
+    return databaseClient.sql("select " + COLUMNS + " from user where id = :id")
+        .bind("id", id)
+        .map((row, metadata) -> toUser(row))
+        .one();
+  }
+
+  public Mono<User> findByUsername(String username) {
+    return databaseClient.sql("select " + COLUMNS + " from user where username = :username")
+        .bind("username", username)
+        .map((row, metadata) -> toUser(row))
+        .one();
+  }
+
+  public Mono<User> findByToken(String token) {
+    return databaseClient.sql("select " + COLUMNS + " from user where token = :token")
+        .bind("token", token)
+        .map((row, metadata) -> toUser(row))
+        .one();
+  }
+
+  public Mono<Boolean> existsById(Long id) {
+    return databaseClient.sql("select count(*) from user where id = :id")
+        .bind("id", id)
+        .map((row, metadata) -> row.get(0, Long.class) > 0)
+        .one();
+  }
+
+  public Mono<Boolean> existsByUsername(String username) {
+    return databaseClient.sql("select count(*) from user where username = :username")
+        .bind("username", username)
+        .map((row, metadata) -> row.get(0, Long.class) > 0)
+        .one();
+  }
+
+  /**
+   * Inserts the new user and returns it with its id and version set.
+   */
+  public Mono<User> insert(User user) {
+    return databaseClient.sql("select next value for user_sequence")
+        .map((row, metadata) -> row.get(0, Long.class))
+        .one()
+        .flatMap(id -> {
+          DatabaseClient.GenericExecuteSpec insert = databaseClient.sql("insert into user (" + COLUMNS + ") "
+              + "values (:id, :name, :username, :token, :status, :password, :creationDate, :birthDate, 0)")
+              .bind("id", id)
+              .bind("name", user.getName())
+              .bind("username", user.getUsername())
+              .bind("token", user.getToken())
+              .bind("status", user.getStatus().ordinal())
+              .bind("password", user.getPassword())
+              .bind("creationDate", user.getCreationDate());
+          insert = user.getBirthDate() == null ? insert.bindNull("birthDate", LocalDate.class)
+              : insert.bind("birthDate", user.getBirthDate());
+          return insert.fetch().rowsUpdated().thenReturn(id);
+        })
+        .map(id -> {
+          user.setId(id);
+          user.setVersion(0L);
+          return user;
+        });
+  }
+
+  /**
+   * Writes the profile of the user (username, birth date) if it is still at
+   * the version it was read with. Returns the number of updated users (0 or
+   * 1); on success the version of the given user is incremented.
+   */
+  public Mono<Integer> updateProfile(User user) {
+    DatabaseClient.GenericExecuteSpec update = databaseClient.sql("update user "
+        + "set username = :username, birth_date = :birthDate, version = version + 1 "
+        + "where id = :id and version = :version")
+        .bind("id", user.getId())
+        .bind("version", user.getVersion())
+        .bind("username", user.getUsername());
+    update = user.getBirthDate() == null ? update.bindNull("birthDate", LocalDate.class)
+        : update.bind("birthDate", user.getBirthDate());
+    return update.fetch().rowsUpdated()
+        .doOnNext(updated -> {
+          if (updated > 0) {
+            user.setVersion(user.getVersion() + 1);
+          }
+        });
+  }
+
+  /**
+   * Replaces the password hash, but only if it is still the expected one (see
+   * CacheAwareUserRepository#updatePassword).
+   */
+  public Mono<Integer> updatePassword(Long id, String password, String expectedPassword) {
+    return databaseClient.sql("update user set password = :password, version = version + 1 "
+        + "where id = :id and password = :expectedPassword")
+        .bind("id", id)
+        .bind("password", password)
+        .bind("expectedPassword", expectedPassword)
+        .fetch().rowsUpdated();
+  }
+
+  private static User toUser(Row row) {
+    User user = new User();
+    user.setId(row.get("id", Long.class));
+    user.setName(row.get("name", String.class));
+    user.setUsername(row.get("username", String.class));
+    user.setToken(row.get("token", String.class));
+    user.setStatus(toStatus(row));
+    user.setPassword(row.get("password", String.class));
+    user.setCreationDate(row.get("creation_date", LocalDate.class));
+    user.setBirthDate(row.get("birth_date", LocalDate.class));
+    user.setVersion(row.get("version", Long.class));
+    return user;
+  }
+
+  private static UserStatus toStatus(Row row) {
+    return UserStatus.values()[row.get("status", Integer.class)];
+  }
+}
@@ -1,12 +1,80 @@
 package ch.uzh.ifi.hase.soprafs24.repository;
 
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 @Repository("userRepository")
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, CacheAwareUserRepository {
+
+  // constructor expression of the columns of UserSummary
+  String SUMMARY = "new ch.uzh.ifi.hase.soprafs24.repository.UserSummary("
+      + "u.id, u.name, u.username, u.status, u.creationDate, u.birthDate)";
+
   User findByName(String name);
 
-  User findByUsername(String username);
+  // the token lookups are in addition cached in TokenCache
+  @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+  User findByToken(String token);
+
+  /**
+   * Returns those of the given usernames that are already taken, in a single
+   * query.
+   */
+  @Query("select u.username from User u where u.username in :usernames")
+  List<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
+
+  /**
+   * A value that changes whenever a user is created or updated: the number of
+   * users and the sum of their versions. Reads the whole table, it only seeds
+   * UserListVersion.
+   */
+  @Query("select concat(cast(count(u) as string), '.', cast(coalesce(sum(u.version), 0) as string)) from User u")
+  String findUsersVersion();
+
+  /**
+   * All users, as summaries ordered by id.
+   */
+  @Query("select " + SUMMARY + " from User u order by u.id")
+  List<UserSummary> findAllSummaries();
+
+  /**
+   * Keyset pagination: returns the users whose id is strictly greater than the
+   * given cursor, ordered by id. The size of the page is taken from the
+   * pageable, its offset is expected to be 0.
+   */
+  @Query("select " + SUMMARY + " from User u where u.id > :id order by u.id")
+  List<UserSummary> findSummariesByIdGreaterThan(@Param("id") Long id, Pageable pageable);
+
+  /**
+   * Streams all users as summaries ordered by id. The stream is backed by an
+   * open JDBC cursor and must be consumed (and closed) inside a transaction.
+   */
+  @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+  @Query("select " + SUMMARY + " from User u order by u.id")
+  Stream<UserSummary> streamAllSummaries();
+
+  /**
+   * Streams all usernames (see UsernameFilter), inside a transaction like
+   * streamAllSummaries.
+   */
+  @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+  @Query("select u.username from User u")
+  Stream<String> streamAllUsernames();
+
+  @Query("select u.id from User u where u.status = :status")
+  List<Long> findIdsByStatus(@Param("status") UserStatus status);
 }
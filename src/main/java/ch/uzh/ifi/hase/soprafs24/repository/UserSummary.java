@@ -0,0 +1,55 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+
+import java.time.LocalDate;
+
+/**
+ * Projection of the columns of a user that are returned by the API (see
+ * UserGetDTO), for the queries that list users. It is built by the query
+ * itself (constructor expression), so neither the password hash nor the
+ * token is read and no managed entity is created.
+ */
+public class UserSummary {
+
+  private final Long id;
+  private final String name;
+  private final String username;
+  private final UserStatus status;
+  private final LocalDate creationDate;
+  private final LocalDate birthDate;
+
+  public UserSummary(Long id, String name, String username, UserStatus status, LocalDate creationDate,
+      LocalDate birthDate) {
+    this.id = id;
+    this.name = name;
+    this.username = username;
+    this.status = status;
+    this.creationDate = creationDate;
+    this.birthDate = birthDate;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public UserStatus getStatus() {
+    return status;
+  }
+
+  public LocalDate getCreationDate() {
+    return creationDate;
+  }
+
+  public LocalDate getBirthDate() {
+    return birthDate;
+  }
+}
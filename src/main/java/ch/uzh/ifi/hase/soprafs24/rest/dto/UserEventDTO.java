@@ -0,0 +1,79 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserChangeType;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A change of a user, as pushed to the subscribers of /users/events. CREATED
+ * and UPDATED carry all public fields of the user, ONLINE and OFFLINE only the
+ * id and the status; fields that are not sent did not change. The token is
+ * never sent.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserEventDTO {
+
+  private UserChangeType type;
+  private Long id;
+  private String name;
+  private String username;
+  private UserStatus status;
+  private String creationDate;
+  private String birthDate;
+
+  public UserChangeType getType() {
+    return type;
+  }
+
+  public void setType(UserChangeType type) {
+    this.type = type;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public void setUsername(String username) {
+    this.username = username;
+  }
+
+  public UserStatus getStatus() {
+    return status;
+  }
+
+  public void setStatus(UserStatus status) {
+    this.status = status;
+  }
+
+  public String getCreationDate() {
+    return creationDate;
+  }
+
+  public void setCreationDate(String creationDate) {
+    this.creationDate = creationDate;
+  }
+
+  public String getBirthDate() {
+    return birthDate;
+  }
+
+  public void setBirthDate(String birthDate) {
+    this.birthDate = birthDate;
+  }
+}
@@ -1,6 +1,8 @@
 package ch.uzh.ifi.hase.soprafs24.rest.mapper;
 
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserSummary;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserEventDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
 import org.mapstruct.*;
@@ -34,4 +36,17 @@ public interface DTOMapper {
   @Mapping(source = "creationDate", target = "creationDate", dateFormat = "yyyy-MM-dd")
   @Mapping(source = "birthDate", target = "birthDate", dateFormat = "yyyy-MM-dd")
   UserGetDTO convertEntityToUserGetDTO(User user);
+
+  // lists never contain the tokens
+  @Mapping(target = "token", ignore = true)
+  @Mapping(source = "creationDate", target = "creationDate", dateFormat = "yyyy-MM-dd")
+  @Mapping(source = "birthDate", target = "birthDate", dateFormat = "yyyy-MM-dd")
+  UserGetDTO convertUserSummaryToUserGetDTO(UserSummary userSummary);
+
+  UserGetDTO copyUserGetDTO(UserGetDTO userGetDTO);
+
+  @Mapping(target = "type", ignore = true)
+  @Mapping(source = "creationDate", target = "creationDate", dateFormat = "yyyy-MM-dd")
+  @Mapping(source = "birthDate", target = "birthDate", dateFormat = "yyyy-MM-dd")
+  UserEventDTO convertEntityToUserEventDTO(User user);
 }
@@ -0,0 +1,142 @@
+package ch.uzh.ifi.hase.soprafs24.rest.mapper;
+
+import ch.uzh.ifi.hase.soprafs24.repository.UserSummary;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * User Fields
+ * The sparse fieldset of a UserGetDTO response, requested with
+ * {@code ?fields=id,username,status}. Only the requested fields are mapped
+ * from the UserSummary and serialized (through the Jackson filter
+ * {@link #FILTER}, see JacksonConfig). Lists never contain the tokens of the
+ * users.
+ */
+public final class UserFields {
+
+  public static final String FILTER = "userFields";
+
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+  private static final UserFields ALL = new UserFields(EnumSet.allOf(Field.class));
+  private static final UserFields LIST_DEFAULT = new UserFields(EnumSet.complementOf(EnumSet.of(Field.TOKEN)));
+
+  private enum Field {
+    ID("id"), NAME("name"), USERNAME("username"), STATUS("status"), TOKEN("token"),
+    CREATION_DATE("creationDate"), BIRTH_DATE("birthDate");
+
+    private final String property;
+
+    Field(String property) {
+      this.property = property;
+    }
+
+    static Field of(String property) {
+      for (Field field : values()) {
+        if (field.property.equals(property)) {
+          return field;
+        }
+      }
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown field: " + property);
+    }
+  }
+
+  private final EnumSet<Field> fields;
+  private final FilterProvider filters;
+
+  private UserFields(EnumSet<Field> fields) {
+    this.fields = fields;
+    Set<String> properties = new HashSet<>();
+    fields.forEach(field -> properties.add(field.property));
+    this.filters = new SimpleFilterProvider()
+        .addFilter(FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(properties));
+  }
+
+  /**
+   * The fields of a single user, all of them if none are requested.
+   */
+  public static UserFields forUser(String fields) {
+    return fields == null ? ALL : parse(fields);
+  }
+
+  /**
+   * The fields of the users of a list, all but the token if none are
+   * requested.
+   */
+  public static UserFields forList(String fields) {
+    if (fields == null) {
+      return LIST_DEFAULT;
+    }
+    UserFields userFields = parse(fields);
+    if (userFields.fields.contains(Field.TOKEN)) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The token is not available in lists");
+    }
+    return userFields;
+  }
+
+  private static UserFields parse(String fields) {
+    EnumSet<Field> parsed = EnumSet.noneOf(Field.class);
+    for (String property : fields.split(",")) {
+      if (!property.trim().isEmpty()) {
+        parsed.add(Field.of(property.trim()));
+      }
+    }
+    if (parsed.isEmpty()) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "fields must name at least one field");
+    }
+    return parsed.equals(ALL.fields) ? ALL : new UserFields(parsed);
+  }
+
+  /**
+   * Maps the requested fields only. The id is always mapped, the live status
+   * and buffered profile updates are looked up by it.
+   */
+  public UserGetDTO toUserGetDTO(UserSummary user) {
+    UserGetDTO userGetDTO = new UserGetDTO();
+    userGetDTO.setId(user.getId());
+    if (fields.contains(Field.NAME)) {
+      userGetDTO.setName(user.getName());
+    }
+    if (fields.contains(Field.USERNAME)) {
+      userGetDTO.setUsername(user.getUsername());
+    }
+    if (fields.contains(Field.STATUS)) {
+      userGetDTO.setStatus(user.getStatus());
+    }
+    if (fields.contains(Field.CREATION_DATE)) {
+      userGetDTO.setCreationDate(format(user.getCreationDate()));
+    }
+    if (fields.contains(Field.BIRTH_DATE)) {
+      userGetDTO.setBirthDate(format(user.getBirthDate()));
+    }
+    return userGetDTO;
+  }
+
+  /**
+   * The filter that serializes the requested fields only.
+   */
+  public FilterProvider getFilters() {
+    return filters;
+  }
+
+  public MappingJacksonValue wrap(Object body) {
+    MappingJacksonValue value = new MappingJacksonValue(body);
+    value.setFilters(filters);
+    return value;
+  }
+
+  private static String format(LocalDate date) {
+    return date == null ? null : DATE_FORMAT.format(date);
+  }
+}
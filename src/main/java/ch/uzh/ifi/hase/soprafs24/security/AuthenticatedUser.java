@@ -0,0 +1,32 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import java.io.Serializable;
+
+/**
+ * Authenticated User
+ * The minimal, immutable view of a user that is resolved from a bearer token.
+ * It is what the token cache holds and what is exposed to the handlers of an
+ * authenticated request (see {@link #REQUEST_ATTRIBUTE}).
+ */
+public final class AuthenticatedUser implements Serializable {
+
+  public static final String REQUEST_ATTRIBUTE = AuthenticatedUser.class.getName();
+
+  private static final long serialVersionUID = 1L;
+
+  private final Long id;
+  private final String username;
+
+  public AuthenticatedUser(Long id, String username) {
+    this.id = id;
+    this.username = username;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+}
@@ -0,0 +1,27 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Authentication Config
+ * Registers the token authentication for all requests.
+ */
+@Configuration
+@Profile("!reactive")
+public class AuthenticationConfig implements WebMvcConfigurer {
+
+  private final UserService userService;
+
+  AuthenticationConfig(UserService userService) {
+    this.userService = userService;
+  }
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(new TokenAuthenticationInterceptor(userService));
+  }
+}
@@ -0,0 +1,89 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.exceptions.TooManyRequestsException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Login Throttle
+ * Limits the login attempts per client address and per username with token
+ * buckets, so that a brute-force attempt is rejected with 429 before it costs
+ * a BCrypt verification. The buckets are kept in bounded caches; a bucket that
+ * has not been used for as long as it takes to fill up again is dropped, since
+ * a new bucket is just as full.
+ */
+@Component
+public class LoginThrottle {
+
+  private final Clock clock;
+  private final Limit addressLimit;
+  private final Limit usernameLimit;
+
+  @Autowired
+  public LoginThrottle(@Value("${auth.login-throttle.address.capacity:20}") int addressCapacity,
+      @Value("${auth.login-throttle.address.refill-interval:3s}") Duration addressRefillInterval,
+      @Value("${auth.login-throttle.username.capacity:10}") int usernameCapacity,
+      @Value("${auth.login-throttle.username.refill-interval:6s}") Duration usernameRefillInterval,
+      @Value("${auth.login-throttle.maximum-size:100000}") long maximumSize, MeterRegistry meterRegistry) {
+    this(addressCapacity, addressRefillInterval, usernameCapacity, usernameRefillInterval, maximumSize,
+        meterRegistry, Clock.systemUTC());
+  }
+
+  LoginThrottle(int addressCapacity, Duration addressRefillInterval, int usernameCapacity,
+      Duration usernameRefillInterval, long maximumSize, MeterRegistry meterRegistry, Clock clock) {
+    this.clock = clock;
+    this.addressLimit = new Limit("address", addressCapacity, addressRefillInterval, maximumSize, meterRegistry);
+    this.usernameLimit = new Limit("username", usernameCapacity, usernameRefillInterval, maximumSize, meterRegistry);
+  }
+
+  /**
+   * Takes a login attempt from the buckets of the client address and of the
+   * username, or fails with a {@link TooManyRequestsException} if either is
+   * empty. An attempt rejected for its address does not count for the username.
+   */
+  public void acquire(String clientAddress, String username) {
+    long now = clock.millis();
+    if (clientAddress != null) {
+      addressLimit.acquire(clientAddress, now);
+    }
+    if (username != null) {
+      usernameLimit.acquire(username.toLowerCase(Locale.ROOT), now);
+    }
+  }
+
+  private static final class Limit {
+
+    private final int capacity;
+    private final long intervalMillis;
+    private final Cache<String, TokenBucket> buckets;
+    private final Counter rejectedCounter;
+
+    private Limit(String key, int capacity, Duration refillInterval, long maximumSize, MeterRegistry meterRegistry) {
+      this.capacity = capacity;
+      this.intervalMillis = refillInterval.toMillis();
+      this.buckets = Caffeine.newBuilder()
+          .maximumSize(maximumSize)
+          .expireAfterAccess(refillInterval.multipliedBy(capacity))
+          .build();
+      this.rejectedCounter = meterRegistry.counter("auth.login.throttled", "key", key);
+    }
+
+    private void acquire(String key, long now) {
+      long waitMillis = buckets.get(key, k -> new TokenBucket(capacity, intervalMillis)).tryAcquire(now);
+      if (waitMillis > 0) {
+        rejectedCounter.increment();
+        throw new TooManyRequestsException("Too many login attempts, please retry later",
+            Math.max(1, (waitMillis + 999) / 1000));
+      }
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.service.ReactiveUserService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.Set;
+
+/**
+ * Reactive Token Authentication Filter
+ * The TokenAuthenticationInterceptor of the reactive profile: requests without
+ * a bearer token pass unchanged, requests with an unknown token or a token of a
+ * logged out user are rejected with 401 (except when registering or logging
+ * in), otherwise the user is stored as exchange attribute.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveTokenAuthenticationFilter implements WebFilter {
+
+  private static final String BEARER_PREFIX = "Bearer ";
+  // POST paths that do not need a token
+  private static final Set<String> UNAUTHENTICATED_POST_PATHS = Set.of("/users", "/users/login");
+
+  private final ReactiveUserService userService;
+
+  public ReactiveTokenAuthenticationFilter(ReactiveUserService userService) {
+    this.userService = userService;
+  }
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    String authorization = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+    if (authorization == null || !authorization.regionMatches(true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length())) {
+      return chain.filter(exchange);
+    }
+
+    String token = authorization.substring(BEARER_PREFIX.length()).trim();
+    ServerHttpRequest request = exchange.getRequest();
+    boolean tokenNeeded = request.getMethod() != HttpMethod.POST
+        || !UNAUTHENTICATED_POST_PATHS.contains(request.getPath().pathWithinApplication().value());
+    return userService.authenticate(token)
+        .map(user -> {
+          exchange.getAttributes().put(AuthenticatedUser.REQUEST_ATTRIBUTE, user);
+          return true;
+        })
+        .switchIfEmpty(Mono.defer(() -> tokenNeeded
+            ? Mono.error(new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid token"))
+            : Mono.just(false)))
+        .flatMap(authenticated -> chain.filter(exchange));
+  }
+}
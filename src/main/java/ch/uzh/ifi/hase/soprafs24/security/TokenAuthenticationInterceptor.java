@@ -0,0 +1,53 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Set;
+
+/**
+ * Token Authentication Interceptor
+ * Resolves the bearer token of a request (Authorization: Bearer &lt;token&gt;)
+ * to the user it belongs to and stores it as request attribute. Requests
+ * without a token pass unchanged, requests with an unknown token or a token of
+ * a logged out user are rejected with 401. Registering and logging in need no
+ * token, so a stale token of an earlier session is ignored there.
+ */
+public class TokenAuthenticationInterceptor implements HandlerInterceptor {
+
+  private static final String BEARER_PREFIX = "Bearer ";
+  // POST paths that do not need a token
+  private static final Set<String> UNAUTHENTICATED_POST_PATHS = Set.of("/users", "/users/login");
+
+  private final UserService userService;
+
+  public TokenAuthenticationInterceptor(UserService userService) {
+    this.userService = userService;
+  }
+
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+    String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+    if (authorization == null || !authorization.regionMatches(true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length())) {
+      return true;
+    }
+
+    String token = authorization.substring(BEARER_PREFIX.length()).trim();
+    AuthenticatedUser user = userService.authenticate(token);
+    if (user == null) {
+      String path = request.getRequestURI().substring(request.getContextPath().length());
+      if (HttpMethod.POST.matches(request.getMethod()) && UNAUTHENTICATED_POST_PATHS.contains(path)) {
+        return true;
+      }
+      throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid token");
+    }
+    request.setAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE, user);
+    return true;
+  }
+}
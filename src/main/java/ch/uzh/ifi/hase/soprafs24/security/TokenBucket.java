@@ -0,0 +1,40 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token Bucket
+ * Holds up to {@code capacity} tokens and earns one token per interval. The
+ * bucket is a single timestamp (the time at which it is full again), so taking
+ * a token is one compare-and-set and needs no lock.
+ */
+final class TokenBucket {
+
+  private final long intervalMillis;
+  private final long capacityMillis;
+  // when the bucket holds all its tokens again (epoch millis)
+  private final AtomicLong fullAt = new AtomicLong();
+
+  TokenBucket(int capacity, long intervalMillis) {
+    this.intervalMillis = intervalMillis;
+    this.capacityMillis = capacity * intervalMillis;
+  }
+
+  /**
+   * Takes a token. Returns 0 if there was one, otherwise the milliseconds
+   * until the next token is earned.
+   */
+  long tryAcquire(long nowMillis) {
+    while (true) {
+      long current = fullAt.get();
+      long next = Math.max(current, nowMillis) + intervalMillis;
+      long missing = next - nowMillis - capacityMillis;
+      if (missing > 0) {
+        return missing;
+      }
+      if (fullAt.compareAndSet(current, next)) {
+        return 0;
+      }
+    }
+  }
+}
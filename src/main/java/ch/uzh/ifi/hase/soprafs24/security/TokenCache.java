@@ -0,0 +1,110 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserChangeType;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Token Cache
+ * Bounded in-memory index from a user token to the user it belongs to. Entries
+ * expire after a fixed time to live and the least recently used entries are
+ * evicted once the maximum size is reached. Whether the user is logged in is
+ * not cached (see PresenceService), so the entries of a user only have to be
+ * invalidated when the user is updated (e.g. renamed), which they are through
+ * an index from the user to its cached tokens.
+ */
+@Component
+public class TokenCache {
+
+  private final Cache<String, AuthenticatedUser> cache;
+  private final Map<Long, Set<String>> tokensByUser = new ConcurrentHashMap<>();
+
+  public TokenCache(@Value("${auth.token-cache.maximum-size:10000}") long maximumSize,
+      @Value("${auth.token-cache.ttl:10m}") Duration ttl) {
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(ttl)
+        .<String, AuthenticatedUser>removalListener((token, user, cause) -> {
+          if (token != null && user != null) {
+            unindex(user.getId(), token);
+          }
+        })
+        .build();
+  }
+
+  /**
+   * Returns the cached user of the token. On a miss the loader is called and its
+   * result cached, unless it is null (i.e., the token is not valid).
+   */
+  public AuthenticatedUser get(String token, Function<String, AuthenticatedUser> loader) {
+    AuthenticatedUser user = cache.get(token, loader);
+    if (user != null) {
+      index(user.getId(), token);
+    }
+    return user;
+  }
+
+  /**
+   * The cached user of the token, or null. For callers that must not block on
+   * the lookup (see ReactiveUserService), together with {@link #put}.
+   */
+  public AuthenticatedUser getIfPresent(String token) {
+    return cache.getIfPresent(token);
+  }
+
+  public void put(String token, AuthenticatedUser user) {
+    cache.put(token, user);
+    index(user.getId(), token);
+  }
+
+  /**
+   * Removes all tokens of the user, e.g., after it has been renamed on this or
+   * another instance.
+   */
+  public void invalidateUser(Long userId) {
+    Set<String> tokens = tokensByUser.remove(userId);
+    if (tokens != null) {
+      cache.invalidateAll(tokens);
+    }
+  }
+
+  // after the commit, so a concurrent lookup cannot cache the user from before the update
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onUserChanged(UserChangedEvent event) {
+    if (event.getChange().getType() == UserChangeType.UPDATED) {
+      invalidateUser(event.getChange().getId());
+    }
+  }
+
+  // indexed after the entry is cached, so a concurrent removal of an earlier entry cannot drop it from the index
+  private void index(Long userId, String token) {
+    Set<String> tokens = tokensByUser.get(userId);
+    if (tokens == null || !tokens.contains(token)) {
+      tokensByUser.compute(userId, (id, indexed) -> {
+        Set<String> userTokens = indexed == null ? ConcurrentHashMap.newKeySet() : indexed;
+        userTokens.add(token);
+        return userTokens;
+      });
+    }
+  }
+
+  private void unindex(Long userId, String token) {
+    tokensByUser.computeIfPresent(userId, (id, tokens) -> {
+      // the token may have been cached again in the meantime
+      if (!cache.asMap().containsKey(token)) {
+        tokens.remove(token);
+      }
+      return tokens.isEmpty() ? null : tokens;
+    });
+  }
+}
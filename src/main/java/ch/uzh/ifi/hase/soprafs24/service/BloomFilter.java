@@ -0,0 +1,99 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom Filter
+ * Set of strings that answers "certainly not contained" or "maybe contained",
+ * in a fixed number of bits. A value sets {@code hashCount} bits, derived from
+ * two 64-bit hashes (Kirsch and Mitzenmacher); bits are set with atomic ORs,
+ * so values can be added concurrently with lookups and without a lock. Values
+ * cannot be removed.
+ */
+final class BloomFilter {
+
+  private static final double LN_2 = Math.log(2);
+  // at most 2^31 words of 64 bits
+  private static final long MAX_BITS = (long) Integer.MAX_VALUE * Long.SIZE;
+
+  private final AtomicLongArray words;
+  private final long bitCount;
+  private final int hashCount;
+  private final AtomicLong bitsSet = new AtomicLong();
+
+  /**
+   * Sized to hold the expected number of values at the given false positive
+   * rate, e.g. 9.6 bits (and 7 hashes) per value for 1%.
+   */
+  BloomFilter(long expectedInsertions, double falsePositiveRate) {
+    if (expectedInsertions < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+      throw new IllegalArgumentException("expected insertions must be positive, the false positive rate in (0, 1)");
+    }
+    long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (LN_2 * LN_2));
+    int wordCount = (int) Math.min(Integer.MAX_VALUE, (Math.min(bits, MAX_BITS) + Long.SIZE - 1) / Long.SIZE);
+    this.words = new AtomicLongArray(wordCount);
+    this.bitCount = (long) wordCount * Long.SIZE;
+    this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * LN_2));
+  }
+
+  void put(String value) {
+    long hash1 = hash(value);
+    long hash2 = mix(hash1 + 0x9E3779B97F4A7C15L);
+    for (int i = 0; i < hashCount; i++) {
+      long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+      long mask = 1L << bit;
+      long previous = words.getAndAccumulate((int) (bit >>> 6), mask, (word, m) -> word | m);
+      if ((previous & mask) == 0) {
+        bitsSet.incrementAndGet();
+      }
+    }
+  }
+
+  boolean mightContain(String value) {
+    long hash1 = hash(value);
+    long hash2 = mix(hash1 + 0x9E3779B97F4A7C15L);
+    for (int i = 0; i < hashCount; i++) {
+      long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+      if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The false positive rate at the current fill, i.e., the probability that
+   * all bits of a value that was not added are set.
+   */
+  double expectedFalsePositiveRate() {
+    return Math.pow((double) bitsSet.get() / bitCount, hashCount);
+  }
+
+  long bitCount() {
+    return bitCount;
+  }
+
+  int hashCount() {
+    return hashCount;
+  }
+
+  // FNV-1a over the chars, finished with the MurmurHash3 mix
+  private static long hash(String value) {
+    long hash = 0xCBF29CE484222325L;
+    for (int i = 0; i < value.length(); i++) {
+      hash ^= value.charAt(i);
+      hash *= 0x100000001B3L;
+    }
+    return mix(hash);
+  }
+
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xFF51AFD7ED558CCDL;
+    hash ^= hash >>> 33;
+    hash *= 0xC4CEB9FE1A85EC53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
@@ -0,0 +1,269 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Password Hashing Service
+ * Hashes and verifies passwords on a dedicated pool of worker threads, so that
+ * the CPU-bound BCrypt work cannot occupy all request threads. The pool has
+ * one thread per core and a bounded queue; if the queue is full, the task is
+ * rejected right away with a {@link RejectedExecutionException}, which is
+ * answered with 503 and a Retry-After header (see GlobalExceptionAdvice).
+ * A verification that is known to fail (the user does not exist) is not
+ * computed, a task that waits as long as a verification takes on average
+ * takes its place in the pool. It queues and is rejected like a verification,
+ * so neither the response time nor a 503 tell whether a user exists.
+ */
+@Service
+public class PasswordHashingService {
+
+  private final Logger log = LoggerFactory.getLogger(PasswordHashingService.class);
+
+  private final PasswordEncoder passwordEncoder;
+  private final int poolSize;
+  private final ThreadPoolExecutor executor;
+
+  private final Timer encodeTimer;
+  private final Timer verifyTimer;
+  private final Counter rejectedCounter;
+  private final Counter skippedCounter;
+
+  // moving average of the duration of a verification
+  private final AtomicLong averageVerifyNanos = new AtomicLong();
+  // hash of an empty password, only verified until the first duration has been measured
+  private volatile String placeholderHash;
+
+  public PasswordHashingService(PasswordEncoder passwordEncoder, @Value("${hashing.threads:0}") int threads,
+      @Value("${hashing.queue-capacity:64}") int queueCapacity, MeterRegistry meterRegistry) {
+    this.poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    this.passwordEncoder = passwordEncoder;
+    this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("password-hashing-"),
+        new ThreadPoolExecutor.AbortPolicy());
+
+    this.encodeTimer = Timer.builder("hashing.duration").tag("operation", "encode")
+        .publishPercentileHistogram().register(meterRegistry);
+    this.verifyTimer = Timer.builder("hashing.duration").tag("operation", "verify")
+        .publishPercentileHistogram().register(meterRegistry);
+    this.rejectedCounter = meterRegistry.counter("hashing.rejected");
+    this.skippedCounter = meterRegistry.counter("hashing.skipped");
+    Gauge.builder("hashing.queue.size", executor, e -> e.getQueue().size()).register(meterRegistry);
+    Gauge.builder("hashing.active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+  }
+
+  public String encode(String rawPassword) {
+    return await(submit(() -> encodeTimer.recordCallable(() -> passwordEncoder.encode(rawPassword))));
+  }
+
+  public boolean matches(String rawPassword, String encodedPassword) {
+    return await(submit(() -> verify(rawPassword, encodedPassword)));
+  }
+
+  /**
+   * Non-blocking variants of {@link #encode} and {@link #matches}: the future
+   * completes on the hashing thread. If the pool is saturated, the future
+   * fails with a {@link RejectedExecutionException}.
+   */
+  public CompletableFuture<String> encodeAsync(String rawPassword) {
+    return supplyAsync(() -> encodeTimer.record(() -> passwordEncoder.encode(rawPassword)));
+  }
+
+  public CompletableFuture<Boolean> matchesAsync(String rawPassword, String encodedPassword) {
+    return supplyAsync(() -> verify(rawPassword, encodedPassword));
+  }
+
+  /**
+   * Takes the place of a verification that would fail anyway: runs on the
+   * pool like a verification and returns once it would have returned, without
+   * hashing. Fails with a {@link RejectedExecutionException} if the pool is
+   * saturated.
+   */
+  public void awaitVerificationTime() {
+    await(submit(this::waitForVerificationTime));
+  }
+
+  /**
+   * Non-blocking variant of {@link #awaitVerificationTime}: the future
+   * completes once the verification would have completed.
+   */
+  public CompletableFuture<Void> verificationTimeAsync() {
+    return supplyAsync(this::waitForVerificationTime).thenApply(matched -> null);
+  }
+
+  /**
+   * Hashes many passwords at once, spread over all threads of the pool. The
+   * hashes are returned in the order of the passwords. Unlike the single
+   * operations, a part that the saturated pool rejects is hashed by the
+   * calling thread, so a bulk operation is slowed down but never aborted.
+   */
+  public List<String> encodeAll(List<String> rawPasswords) {
+    int parts = Math.max(1, Math.min(poolSize, rawPasswords.size()));
+    int partSize = (rawPasswords.size() + parts - 1) / parts;
+
+    List<Future<List<String>>> futures = new ArrayList<>(parts);
+    for (int from = 0; from < rawPasswords.size(); from += partSize) {
+      List<String> part = rawPasswords.subList(from, Math.min(from + partSize, rawPasswords.size()));
+      Callable<List<String>> task = () -> {
+        List<String> hashes = new ArrayList<>(part.size());
+        for (String rawPassword : part) {
+          hashes.add(encodeTimer.record(() -> passwordEncoder.encode(rawPassword)));
+        }
+        return hashes;
+      };
+      try {
+        futures.add(executor.submit(task));
+      } catch (RejectedExecutionException e) {
+        rejectedCounter.increment();
+        futures.add(CompletableFuture.completedFuture(callInCaller(task)));
+      }
+    }
+
+    List<String> hashes = new ArrayList<>(rawPasswords.size());
+    for (Future<List<String>> future : futures) {
+      hashes.addAll(await(future));
+    }
+    return hashes;
+  }
+
+  /**
+   * Whether the hash was created with weaker settings than the current ones
+   * and should be re-hashed.
+   */
+  public boolean upgradeEncoding(String encodedPassword) {
+    return passwordEncoder.upgradeEncoding(encodedPassword);
+  }
+
+  /**
+   * Hashes the password in the background and hands the hash to the callback
+   * (on the hashing thread). This is best effort: if the pool is saturated the
+   * task is dropped.
+   */
+  public void encodeInBackground(String rawPassword, Consumer<String> callback) {
+    try {
+      executor.execute(() -> {
+        try {
+          callback.accept(encodeTimer.record(() -> passwordEncoder.encode(rawPassword)));
+        } catch (RuntimeException e) {
+          log.warn("Background password hashing failed", e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      rejectedCounter.increment();
+      log.debug("Skipped background password hashing, the hashing pool is saturated");
+    }
+  }
+
+  @PreDestroy
+  void shutdown() {
+    executor.shutdown();
+  }
+
+  private boolean verify(String rawPassword, String encodedPassword) {
+    long start = System.nanoTime();
+    try {
+      return passwordEncoder.matches(rawPassword, encodedPassword);
+    } finally {
+      long duration = System.nanoTime() - start;
+      verifyTimer.record(duration, TimeUnit.NANOSECONDS);
+      averageVerifyNanos.accumulateAndGet(duration, (average, sample) ->
+          average == 0 ? sample : average + (sample - average) / 8);
+    }
+  }
+
+  // on a hashing thread, until the first duration has been measured a verification is computed
+  private boolean waitForVerificationTime() {
+    long nanos = averageVerifyNanos.get();
+    if (nanos == 0) {
+      return verify("", placeholderHash());
+    }
+    skippedCounter.increment();
+    try {
+      TimeUnit.NANOSECONDS.sleep(nanos);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  // only called on the hashing threads
+  private String placeholderHash() {
+    String hash = placeholderHash;
+    if (hash == null) {
+      hash = encodeTimer.record(() -> passwordEncoder.encode(""));
+      placeholderHash = hash;
+    }
+    return hash;
+  }
+
+  private <T> Future<T> submit(Callable<T> task) {
+    try {
+      return executor.submit(task);
+    } catch (RejectedExecutionException e) {
+      rejectedCounter.increment();
+      throw e;
+    }
+  }
+
+  private <T> CompletableFuture<T> supplyAsync(Supplier<T> task) {
+    try {
+      return CompletableFuture.supplyAsync(task, executor);
+    } catch (RejectedExecutionException e) {
+      rejectedCounter.increment();
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  private static <T> T callInCaller(Callable<T> task) {
+    try {
+      return task.call();
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Hashing failed", e);
+    }
+  }
+
+  private static <T> T await(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while hashing", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Hashing failed", e.getCause());
+    }
+  }
+}
@@ -0,0 +1,260 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Presence Service
+ * Keeps track of which users are online, in memory. A user is online from
+ * login (or registration) until logout, or until no heartbeat has been
+ * received for the configured time to live. Status changes are not written
+ * to the database right away but collected and flushed in batches, where
+ * only the last change per user counts. The live state always takes
+ * precedence over the status stored in the database. Every transition
+ * between online and offline is published as a UserChangedEvent.
+ */
+@Service
+public class PresenceService {
+
+  private final Logger log = LoggerFactory.getLogger(PresenceService.class);
+
+  private final UserRepository userRepository;
+  private final ApplicationEventPublisher eventPublisher;
+  private final Clock clock;
+  private final long ttlMillis;
+  private final int flushBatchSize;
+
+  // online users -> time of the last sign of life (epoch millis)
+  private final ConcurrentHashMap<Long, Long> lastSeen = new ConcurrentHashMap<>();
+  // status changes that have not been written to the database yet
+  private final ConcurrentHashMap<Long, UserStatus> pendingWrites = new ConcurrentHashMap<>();
+  // users with a heartbeat since they were last drained, only recorded for the cluster (see ClusterEventRelay)
+  private volatile Set<Long> heartbeats;
+  // counts the transitions between online and offline, the epoch tells restarts apart
+  private final AtomicLong revision = new AtomicLong();
+  private final String epoch;
+
+  @Autowired
+  public PresenceService(UserRepository userRepository, ApplicationEventPublisher eventPublisher,
+      @Value("${presence.ttl:5m}") Duration ttl, @Value("${presence.flush-batch-size:500}") int flushBatchSize,
+      MeterRegistry meterRegistry) {
+    this(userRepository, eventPublisher, ttl, flushBatchSize, meterRegistry, Clock.systemUTC());
+  }
+
+  PresenceService(UserRepository userRepository, ApplicationEventPublisher eventPublisher, Duration ttl,
+      int flushBatchSize, MeterRegistry meterRegistry, Clock clock) {
+    this.userRepository = userRepository;
+    this.eventPublisher = eventPublisher;
+    this.ttlMillis = ttl.toMillis();
+    this.flushBatchSize = flushBatchSize;
+    this.clock = clock;
+    this.epoch = Long.toString(clock.millis(), Character.MAX_RADIX);
+    Gauge.builder("presence.online", lastSeen, Map::size).register(meterRegistry);
+    Gauge.builder("presence.pending.writes", pendingWrites, Map::size).register(meterRegistry);
+  }
+
+  /**
+   * Users that are stored as ONLINE (e.g., before a restart) are tracked from
+   * now on, so they go OFFLINE like everybody else unless they show a sign of
+   * life.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void adoptPersistedOnlineUsers() {
+    long now = clock.millis();
+    for (Long userId : userRepository.findIdsByStatus(UserStatus.ONLINE)) {
+      lastSeen.putIfAbsent(userId, now);
+    }
+    revision.incrementAndGet();
+  }
+
+  /**
+   * Tracks a user who is already stored as ONLINE, without writing anything.
+   */
+  public void track(Long userId) {
+    lastSeen.put(userId, clock.millis());
+  }
+
+  public void markOnline(Long userId) {
+    Long previous = lastSeen.put(userId, clock.millis());
+    pendingWrites.put(userId, UserStatus.ONLINE);
+    if (previous == null) {
+      revision.incrementAndGet();
+      eventPublisher.publishEvent(UserChangedEvent.presence(userId, UserStatus.ONLINE));
+    }
+  }
+
+  public void markOffline(Long userId) {
+    Long previous = lastSeen.remove(userId);
+    pendingWrites.put(userId, UserStatus.OFFLINE);
+    if (previous != null) {
+      revision.incrementAndGet();
+      eventPublisher.publishEvent(UserChangedEvent.presence(userId, UserStatus.OFFLINE));
+    }
+  }
+
+  /**
+   * Refreshes the last seen time of an online user. Returns false if the user
+   * is not online (anymore), in which case nothing changes.
+   */
+  public boolean heartbeat(Long userId) {
+    long now = clock.millis();
+    boolean online = lastSeen.computeIfPresent(userId, (id, seen) -> now) != null;
+    Set<Long> recorded = heartbeats;
+    if (online && recorded != null) {
+      recorded.add(userId);
+    }
+    return online;
+  }
+
+  /**
+   * Starts recording the users with a heartbeat, see {@link #drainHeartbeats}.
+   */
+  public synchronized void recordHeartbeats() {
+    if (heartbeats == null) {
+      heartbeats = ConcurrentHashMap.newKeySet();
+    }
+  }
+
+  /**
+   * The users with a heartbeat since the last call that are still online.
+   */
+  public List<Long> drainHeartbeats() {
+    List<Long> drained = new ArrayList<>();
+    Set<Long> recorded = heartbeats;
+    if (recorded != null) {
+      for (Iterator<Long> iterator = recorded.iterator(); iterator.hasNext(); ) {
+        Long userId = iterator.next();
+        iterator.remove();
+        if (lastSeen.containsKey(userId)) {
+          drained.add(userId);
+        }
+      }
+    }
+    return drained;
+  }
+
+  /**
+   * Applies a login, logout or heartbeat of another instance. Only the live
+   * state changes, the status is written by the other instance.
+   */
+  public void applyRemote(Long userId, UserStatus status) {
+    boolean changed;
+    if (status == UserStatus.ONLINE) {
+      changed = lastSeen.put(userId, clock.millis()) == null;
+    } else {
+      changed = lastSeen.remove(userId) != null;
+    }
+    if (changed) {
+      revision.incrementAndGet();
+      eventPublisher.publishEvent(UserChangedEvent.presence(userId, status).localOnly());
+    }
+  }
+
+  public boolean isOnline(Long userId) {
+    Long seen = lastSeen.get(userId);
+    return seen != null && clock.millis() - seen <= ttlMillis;
+  }
+
+  /**
+   * A value that changes whenever any user goes online or offline.
+   */
+  public String getRevision() {
+    return epoch + "." + revision.get();
+  }
+
+  /**
+   * The live status of the user, or the given stored status if presence has
+   * no information about the user.
+   */
+  public UserStatus statusOf(Long userId, UserStatus storedStatus) {
+    if (userId == null) {
+      return storedStatus;
+    }
+    if (isOnline(userId)) {
+      return UserStatus.ONLINE;
+    }
+    if (lastSeen.containsKey(userId)) {
+      return UserStatus.OFFLINE;
+    }
+    return pendingWrites.getOrDefault(userId, storedStatus);
+  }
+
+  /**
+   * Replaces the stored status of the DTO with the live status.
+   */
+  public void applyTo(UserGetDTO userGetDTO) {
+    userGetDTO.setStatus(statusOf(userGetDTO.getId(), userGetDTO.getStatus()));
+  }
+
+  /**
+   * Sets users OFFLINE whose last sign of life is older than the time to live.
+   */
+  @Scheduled(fixedDelayString = "${presence.sweep-interval-ms:10000}")
+  public void expireInactiveUsers() {
+    long oldestAllowed = clock.millis() - ttlMillis;
+    lastSeen.forEach((userId, seen) -> {
+      // only remove the entry if there was no heartbeat in the meantime
+      if (seen < oldestAllowed && lastSeen.remove(userId, seen)) {
+        pendingWrites.put(userId, UserStatus.OFFLINE);
+        revision.incrementAndGet();
+        // every instance expires the users on its own
+        eventPublisher.publishEvent(UserChangedEvent.presence(userId, UserStatus.OFFLINE).localOnly());
+      }
+    });
+  }
+
+  /**
+   * Writes the collected status changes to the database in batches of users
+   * per status. Each batch is loaded through the second-level cache and only
+   * the users whose status changed are written, with batched updates (see
+   * CacheAwareUserRepositoryImpl).
+   */
+  @Scheduled(fixedDelayString = "${presence.flush-interval-ms:1000}")
+  @PreDestroy
+  public void flush() {
+    Map<UserStatus, List<Long>> usersByStatus = new EnumMap<>(UserStatus.class);
+    for (Long userId : pendingWrites.keySet()) {
+      UserStatus status = pendingWrites.remove(userId);
+      if (status != null) {
+        usersByStatus.computeIfAbsent(status, s -> new ArrayList<>()).add(userId);
+      }
+    }
+
+    usersByStatus.forEach((status, userIds) -> {
+      for (int from = 0; from < userIds.size(); from += flushBatchSize) {
+        List<Long> batch = userIds.subList(from, Math.min(from + flushBatchSize, userIds.size()));
+        try {
+          userRepository.updateStatus(batch, status);
+        } catch (RuntimeException e) {
+          log.warn("Could not write the status of {} users, retrying with the next flush", batch.size(), e);
+          batch.forEach(userId -> pendingWrites.putIfAbsent(userId, status));
+        }
+      }
+    });
+  }
+}
@@ -0,0 +1,299 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserChangeType;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Profile Write Buffer
+ * Write-behind for profile updates (users.write-behind.enabled): an update is
+ * acknowledged once it is buffered, and the buffered updates are written in
+ * batches, one transaction per batch, on a schedule or as soon as a batch is
+ * full. Several updates of the same user are merged, the last value of each
+ * field wins. Until an update is written it is overlaid on what is read from
+ * the database (see {@link #applyTo}), and a buffered username is reserved so
+ * that nobody else can take it. The buffer is written out on shutdown.
+ */
+@Service
+public class ProfileWriteBuffer {
+
+  private final Logger log = LoggerFactory.getLogger(ProfileWriteBuffer.class);
+
+  private final UserRepository userRepository;
+  private final PresenceService presenceService;
+  private final ApplicationEventPublisher eventPublisher;
+  private final TransactionTemplate transactionTemplate;
+  private final boolean enabled;
+  private final int batchSize;
+  private final ExecutorService flushExecutor;
+  private final Counter droppedCounter;
+
+  private final ConcurrentHashMap<Long, PendingUpdate> pending = new ConcurrentHashMap<>();
+  // buffered usernames -> the user they are reserved for
+  private final ConcurrentHashMap<String, Long> reservedUsernames = new ConcurrentHashMap<>();
+  // counts the buffered updates, so that the version of a user changes with every update
+  private final AtomicLong revision = new AtomicLong();
+  private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+  public ProfileWriteBuffer(@Qualifier("userRepository") UserRepository userRepository,
+      PresenceService presenceService, ApplicationEventPublisher eventPublisher,
+      PlatformTransactionManager transactionManager,
+      @Value("${users.write-behind.enabled:false}") boolean enabled,
+      @Value("${users.write-behind.batch-size:500}") int batchSize, MeterRegistry meterRegistry) {
+    this.userRepository = userRepository;
+    this.presenceService = presenceService;
+    this.eventPublisher = eventPublisher;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    // also when a buffered update is written from within the transaction of another update
+    this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.enabled = enabled;
+    this.batchSize = batchSize;
+    this.flushExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("profile-write-behind-"));
+    this.droppedCounter = meterRegistry.counter("users.write-behind.dropped");
+    Gauge.builder("users.write-behind.pending", pending, Map::size).register(meterRegistry);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Buffers an update of the user; null fields are left as they are. Fails
+   * with 409 if the username is reserved for another user by a buffered
+   * update. Whether the username is taken by a stored user has to be checked
+   * by the caller.
+   */
+  public void submit(Long userId, String username, LocalDate birthDate) {
+    if (username != null) {
+      Long owner = reservedUsernames.putIfAbsent(username, userId);
+      if (owner != null && !owner.equals(userId)) {
+        throw UserValidation.usernameNotUnique();
+      }
+    }
+    PendingUpdate update = new PendingUpdate(username, birthDate, revision.incrementAndGet());
+    pending.compute(userId, (id, current) -> {
+      if (current == null) {
+        return update;
+      }
+      if (username != null && current.username != null && !current.username.equals(username)) {
+        reservedUsernames.remove(current.username, userId);
+      }
+      return current.overriddenBy(update);
+    });
+    if (pending.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+      try {
+        flushExecutor.execute(() -> {
+          flushRequested.set(false);
+          flush();
+        });
+      } catch (RejectedExecutionException e) {
+        // shutting down, the buffer is flushed one last time anyway
+        flushRequested.set(false);
+      }
+    }
+  }
+
+  /**
+   * The user a buffered update reserves the username for.
+   */
+  public Optional<Long> userIdOfReservedUsername(String username) {
+    return username == null ? Optional.empty() : Optional.ofNullable(reservedUsernames.get(username));
+  }
+
+  /**
+   * The username of a buffered update of the user, or null.
+   */
+  public String pendingUsernameOf(Long userId) {
+    PendingUpdate update = pending.get(userId);
+    return update == null ? null : update.username;
+  }
+
+  /**
+   * The revision of the last buffered update of the user, empty if the user
+   * has no buffered update.
+   */
+  public Optional<Long> pendingRevisionOf(Long userId) {
+    PendingUpdate update = pending.get(userId);
+    return update == null ? Optional.empty() : Optional.of(update.revision);
+  }
+
+  /**
+   * A value that changes with every buffered update of any user.
+   */
+  public long getRevision() {
+    return revision.get();
+  }
+
+  /**
+   * Overlays the buffered update of the user on the DTO.
+   */
+  public void applyTo(UserGetDTO userGetDTO) {
+    if (pending.isEmpty() || userGetDTO.getId() == null) {
+      return;
+    }
+    PendingUpdate update = pending.get(userGetDTO.getId());
+    if (update != null) {
+      if (update.username != null) {
+        userGetDTO.setUsername(update.username);
+      }
+      if (update.birthDate != null) {
+        // yyyy-MM-dd, as mapped by DTOMapper
+        userGetDTO.setBirthDate(update.birthDate.toString());
+      }
+    }
+  }
+
+  /**
+   * Writes the buffered updates to the database. An update stays in the buffer
+   * (and overlaid on reads) until it has been committed. Flushes never run
+   * concurrently, so an update cannot overtake an older one of the same user.
+   */
+  @Scheduled(fixedDelayString = "${users.write-behind.flush-interval-ms:200}")
+  public synchronized void flush() {
+    List<Long> userIds = new ArrayList<>(pending.keySet());
+    for (int from = 0; from < userIds.size(); from += batchSize) {
+      Map<Long, PendingUpdate> batch = new LinkedHashMap<>();
+      for (Long userId : userIds.subList(from, Math.min(from + batchSize, userIds.size()))) {
+        PendingUpdate update = pending.get(userId);
+        if (update != null) {
+          batch.put(userId, update);
+        }
+      }
+      if (batch.isEmpty()) {
+        continue;
+      }
+      try {
+        write(batch);
+      } catch (RuntimeException e) {
+        log.debug("Could not write a batch of {} profile updates, writing them one by one", batch.size(), e);
+        batch.forEach((userId, update) -> {
+          try {
+            writeSingle(userId, update);
+          } catch (RuntimeException singleFailure) {
+            log.warn("Could not write the buffered profile update of user {}, retrying with the next flush",
+                userId, singleFailure);
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * Writes the buffered update of the user (if any) right away, e.g., before
+   * the user is updated synchronously. Fails if it cannot be written.
+   */
+  public synchronized void flush(Long userId) {
+    PendingUpdate update = pending.get(userId);
+    if (update != null) {
+      writeSingle(userId, update);
+    }
+  }
+
+  @PreDestroy
+  void shutdown() {
+    flushExecutor.shutdown();
+    flush();
+    if (!pending.isEmpty()) {
+      log.warn("{} buffered profile updates could not be written on shutdown", pending.size());
+    }
+  }
+
+  private void writeSingle(Long userId, PendingUpdate update) {
+    try {
+      write(Map.of(userId, update));
+    } catch (DataIntegrityViolationException e) {
+      // e.g., the username has been taken in the meantime, this update can never be written
+      droppedCounter.increment();
+      pending.remove(userId, update);
+      releaseReservation(userId, update);
+      log.warn("Dropped the buffered profile update of user {}", userId, e);
+    }
+  }
+
+  private void write(Map<Long, PendingUpdate> batch) {
+    transactionTemplate.executeWithoutResult(status -> {
+      List<User> users = new ArrayList<>(userRepository.findAllById(batch.keySet()));
+      for (User user : users) {
+        batch.get(user.getId()).applyTo(user);
+      }
+      userRepository.saveAll(users);
+      userRepository.flush();
+      // delivered after the commit
+      for (User user : users) {
+        UserChangedEvent event = UserChangedEvent.of(UserChangeType.UPDATED, user,
+            presenceService.statusOf(user.getId(), user.getStatus()));
+        eventPublisher.publishEvent(event);
+      }
+    });
+    // unless a newer update has been buffered in the meantime, which is written with the next flush
+    batch.forEach((userId, update) -> {
+      if (pending.remove(userId, update)) {
+        releaseReservation(userId, update);
+      }
+    });
+  }
+
+  private void releaseReservation(Long userId, PendingUpdate update) {
+    if (update.username != null && !update.username.equals(pendingUsernameOf(userId))) {
+      reservedUsernames.remove(update.username, userId);
+    }
+  }
+
+  private static final class PendingUpdate {
+
+    private final String username;
+    private final LocalDate birthDate;
+    private final long revision;
+
+    private PendingUpdate(String username, LocalDate birthDate, long revision) {
+      this.username = username;
+      this.birthDate = birthDate;
+      this.revision = revision;
+    }
+
+    private PendingUpdate overriddenBy(PendingUpdate newer) {
+      return new PendingUpdate(newer.username != null ? newer.username : username,
+          newer.birthDate != null ? newer.birthDate : birthDate, Math.max(revision, newer.revision));
+    }
+
+    private void applyTo(User user) {
+      if (username != null) {
+        user.setUsername(username);
+      }
+      if (birthDate != null) {
+        user.setBirthDate(birthDate);
+      }
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserChangeType;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.ReactiveUserRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserSummary;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs24.security.AuthenticatedUser;
+import ch.uzh.ifi.hase.soprafs24.security.TokenCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive User Service
+ * The non-blocking counterpart of UserService for the reactive profile, with
+ * the same rules (see UserValidation). Database access is non-blocking
+ * (ReactiveUserRepository) and password hashing runs on the bounded hashing
+ * pool, so no request thread waits for either. Presence and change events are
+ * shared with the blocking implementation.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveUserService {
+
+  private final Logger log = LoggerFactory.getLogger(ReactiveUserService.class);
+
+  private final ReactiveUserRepository userRepository;
+  private final PasswordHashingService passwordHashingService;
+  private final PresenceService presenceService;
+  private final TokenCache tokenCache;
+  private final ApplicationEventPublisher eventPublisher;
+
+  public ReactiveUserService(ReactiveUserRepository userRepository, PasswordHashingService passwordHashingService,
+      PresenceService presenceService, TokenCache tokenCache, ApplicationEventPublisher eventPublisher) {
+    this.userRepository = userRepository;
+    this.passwordHashingService = passwordHashingService;
+    this.presenceService = presenceService;
+    this.tokenCache = tokenCache;
+    this.eventPublisher = eventPublisher;
+  }
+
+  public Flux<UserSummary> getUsers() {
+    return userRepository.findAllSummaries();
+  }
+
+  public Mono<User> getUserById(Long userId) {
+    return userRepository.findById(userId)
+        .switchIfEmpty(Mono.error(UserValidation::userNotFound));
+  }
+
+  public Mono<User> createUser(User newUser) {
+    return Mono.fromRunnable(() -> {
+      UserValidation.checkNewUser(newUser);
+      UserValidation.initializeNewUser(newUser);
+    })
+        .then(Mono.defer(() -> userRepository.existsByUsername(newUser.getUsername())))
+        .flatMap(exists -> exists ? Mono.error(UserValidation.usernameNotUnique())
+            : Mono.fromFuture(passwordHashingService.encodeAsync(newUser.getPassword())))
+        .flatMap(hashedPassword -> {
+          newUser.setPassword(hashedPassword);
+          return userRepository.insert(newUser);
+        })
+        // a concurrent registration with the same username
+        .onErrorMap(DataIntegrityViolationException.class, e -> UserValidation.usernameNotUnique())
+        .doOnNext(user -> {
+          presenceService.track(user.getId());
+          publishChange(UserChangeType.CREATED, user);
+          log.debug("Created Information for User: {}", user);
+        });
+  }
+
+  public Mono<User> loginUser(String username, String password) {
+    return userRepository.findByUsername(username)
+        // as slow as a wrong password and through the same pool, but without the hashing
+        .switchIfEmpty(Mono.fromFuture(passwordHashingService::verificationTimeAsync).then(Mono.empty()))
+        .filterWhen(user -> Mono.fromFuture(() -> passwordHashingService.matchesAsync(password, user.getPassword())))
+        .switchIfEmpty(Mono.error(UserValidation::invalidCredentials))
+        .doOnNext(user -> {
+          upgradePasswordHashIfOutdated(user, password);
+          presenceService.markOnline(user.getId());
+        });
+  }
+
+  private void upgradePasswordHashIfOutdated(User user, String rawPassword) {
+    String storedPassword = user.getPassword();
+    if (!passwordHashingService.upgradeEncoding(storedPassword)) {
+      return;
+    }
+    Long userId = user.getId();
+    passwordHashingService.encodeInBackground(rawPassword, upgradedPassword ->
+        userRepository.updatePassword(userId, upgradedPassword, storedPassword)
+            .subscribe(null, e -> log.warn("Could not store the upgraded password hash", e)));
+  }
+
+  public Mono<Void> logoutUser(Long userId) {
+    return Mono.fromSupplier(() -> presenceService.isOnline(userId))
+        .flatMap(online -> online ? Mono.just(true) : userRepository.existsById(userId))
+        .flatMap(exists -> exists ? Mono.fromRunnable(() -> presenceService.markOffline(userId))
+            : Mono.error(UserValidation.userNotFound()));
+  }
+
+  public Mono<Void> heartbeat(Long userId) {
+    return Mono.fromRunnable(() -> {
+      if (!presenceService.heartbeat(userId)) {
+        throw UserValidation.notLoggedIn();
+      }
+    });
+  }
+
+  /**
+   * Updates the profile; fails with 409 if the username is taken or the user
+   * was changed concurrently.
+   */
+  public Mono<Void> updateUser(Long userId, UserPutDTO userPutDTO) {
+    return getUserById(userId)
+        .flatMap(user -> {
+          UserValidation.applyUpdate(user, userPutDTO);
+          return userRepository.updateProfile(user)
+              .flatMap(updated -> updated == 0
+                  ? Mono.error(new ResponseStatusException(HttpStatus.CONFLICT,
+                      "The user has been changed in the meantime, please reload it"))
+                  : Mono.fromRunnable(() -> publishChange(UserChangeType.UPDATED, user)));
+        })
+        // a rename to a username that is taken
+        .onErrorMap(DataIntegrityViolationException.class, e -> UserValidation.usernameNotUnique())
+        .then();
+  }
+
+  /**
+   * Resolves a token to the logged in user it belongs to, empty if there is
+   * no such user (see UserService#authenticate).
+   */
+  public Mono<AuthenticatedUser> authenticate(String token) {
+    AuthenticatedUser cached = tokenCache.getIfPresent(token);
+    Mono<AuthenticatedUser> user = cached != null ? Mono.just(cached)
+        : userRepository.findByToken(token)
+            .map(found -> new AuthenticatedUser(found.getId(), found.getUsername()))
+            .doOnNext(found -> tokenCache.put(token, found));
+    return user.filter(found -> presenceService.isOnline(found.getId()));
+  }
+
+  private void publishChange(UserChangeType type, User user) {
+    UserStatus status = presenceService.statusOf(user.getId(), user.getStatus());
+    eventPublisher.publishEvent(UserChangedEvent.of(type, user, status));
+  }
+}
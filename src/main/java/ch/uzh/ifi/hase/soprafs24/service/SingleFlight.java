@@ -0,0 +1,69 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Single Flight
+ * Merges concurrent calls for the same key: the first caller runs the call,
+ * the callers that arrive while it is running wait for it and get its result
+ * (or its exception). Nothing is cached, a call that starts after the running
+ * one has finished runs again. The values are shared, so they must not be
+ * changed by the callers.
+ */
+final class SingleFlight<K, V> {
+
+  private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+  private final Counter executedCounter;
+  private final Counter coalescedCounter;
+
+  SingleFlight(String name, MeterRegistry meterRegistry) {
+    // coalescing ratio: coalesced / (executed + coalesced)
+    this.executedCounter = meterRegistry.counter("single-flight.calls", "name", name, "result", "executed");
+    this.coalescedCounter = meterRegistry.counter("single-flight.calls", "name", name, "result", "coalesced");
+    Gauge.builder("single-flight.in-flight", inFlight, Map::size).tag("name", name).register(meterRegistry);
+  }
+
+  V execute(K key, Function<K, V> call) {
+    CompletableFuture<V> flight = new CompletableFuture<>();
+    CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+    if (running != null) {
+      coalescedCounter.increment();
+      return await(running);
+    }
+    executedCounter.increment();
+    V value;
+    try {
+      value = call.apply(key);
+    } catch (RuntimeException | Error e) {
+      inFlight.remove(key, flight);
+      flight.completeExceptionally(e);
+      throw e;
+    }
+    // removed first, so no one joins a call that has already read its value
+    inFlight.remove(key, flight);
+    flight.complete(value);
+    return value;
+  }
+
+  private static <V> V await(CompletableFuture<V> flight) {
+    try {
+      return flight.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw e;
+    }
+  }
+}
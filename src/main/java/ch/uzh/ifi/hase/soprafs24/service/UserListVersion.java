@@ -0,0 +1,50 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * User List Version
+ * A version of all users that changes whenever a user is created or updated,
+ * on this or another instance (see UserChangedEvent), without a query per
+ * request. It is seeded once the application is ready with the number of
+ * users and the sum of their versions, and counts the changes from then on.
+ * The counts start over with every start and differ between instances, so
+ * the version also carries a random epoch of this process; a version of one
+ * process never matches one of another.
+ */
+@Component
+public class UserListVersion {
+
+  private final UserRepository userRepository;
+  private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+  private final AtomicLong changes = new AtomicLong();
+  private volatile String seed = "0";
+
+  public UserListVersion(@Qualifier("userRepository") UserRepository userRepository) {
+    this.userRepository = userRepository;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void seed() {
+    seed = userRepository.findUsersVersion();
+  }
+
+  // after the commit, so the new version is not handed out with the old users
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onUserChanged(UserChangedEvent event) {
+    changes.incrementAndGet();
+  }
+
+  public String get() {
+    return epoch + "." + seed + "." + changes.get();
+  }
+}
@@ -0,0 +1,28 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+
+/**
+ * User Profile
+ * A user as returned by the API, without the live status, and the version
+ * of the user as returned by the API (see UserService#getUserProfile), so
+ * both come from the same read.
+ */
+public final class UserProfile {
+
+  private final UserGetDTO user;
+  private final String version;
+
+  public UserProfile(UserGetDTO user, String version) {
+    this.user = user;
+    this.version = version;
+  }
+
+  public UserGetDTO getUser() {
+    return user;
+  }
+
+  public String getVersion() {
+    return version;
+  }
+}
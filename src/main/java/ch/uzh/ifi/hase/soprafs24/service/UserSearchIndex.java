@@ -0,0 +1,263 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserEventDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserSearchResultDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * User Search Index
+ * In-memory index over username and name for the search box (GET
+ * /users/search), so that a search never scans the USER table. It is built
+ * from the database once the application is ready and then kept up to date
+ * with the created and updated users (UserChangedEvent).
+ * Matches are ranked: the username itself, usernames starting with the query,
+ * names with a word starting with the query (all from sorted term maps), and
+ * finally users containing enough of the trigrams of the query, which finds
+ * substrings and tolerates typos.
+ */
+@Component
+public class UserSearchIndex {
+
+  private static final char TERM_SEPARATOR = '\u0000';
+  private static final int TRIGRAM_LENGTH = 3;
+  private static final Comparator<String> SHORTEST_FIRST =
+      Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder());
+
+  private final Logger log = LoggerFactory.getLogger(UserSearchIndex.class);
+
+  private final UserService userService;
+  private final double minSimilarity;
+
+  private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+  // "term\0id", so that a term can belong to several users and a prefix is a range of keys
+  private final ConcurrentSkipListMap<String, Long> usernames = new ConcurrentSkipListMap<>();
+  private final ConcurrentSkipListMap<String, Long> nameWords = new ConcurrentSkipListMap<>();
+  private final Map<String, Set<Long>> trigrams = new ConcurrentHashMap<>();
+
+  public UserSearchIndex(UserService userService,
+      @Value("${users.search.min-similarity:0.5}") double minSimilarity) {
+    this.userService = userService;
+    this.minSimilarity = minSimilarity;
+  }
+
+  /**
+   * Indexes all users stored in the database. Users that are already indexed
+   * are kept, since they have been indexed from a change that is at least as
+   * recent as what is read here.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuild() {
+    long start = System.nanoTime();
+    userService.forEachUser(user -> index(user.getId(), user.getUsername(), user.getName(), false));
+    log.info("Indexed {} users for search in {} ms", entries.size(), (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /**
+   * Only committed changes are indexed (see UserEventBroadcaster).
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onUserChanged(UserChangedEvent event) {
+    UserEventDTO change = event.getChange();
+    // presence changes carry neither username nor name
+    if (change.getUsername() != null) {
+      index(change.getId(), change.getUsername(), change.getName(), true);
+    }
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the users matching the query, best matches first, skipping the
+   * first {@code offset} matches and returning at most {@code limit}. Answered
+   * from the index alone.
+   */
+  public List<UserSearchResultDTO> search(String query, int offset, int limit) {
+    String normalized = normalize(query);
+    if (normalized.isEmpty() || limit <= 0) {
+      return new ArrayList<>();
+    }
+    int wanted = offset + limit;
+    Set<Long> matches = new LinkedHashSet<>();
+
+    // the sorted maps yield the exact match first and shorter terms before longer ones
+    collectPrefixMatches(usernames, normalized, matches, wanted);
+    collectPrefixMatches(nameWords, normalized, matches, wanted);
+    if (matches.size() < wanted) {
+      collectSimilarMatches(normalized, matches, wanted);
+    }
+
+    List<UserSearchResultDTO> page = new ArrayList<>(limit);
+    int position = 0;
+    for (Long id : matches) {
+      Entry entry = entries.get(id);
+      if (position++ >= offset && entry != null) {
+        page.add(new UserSearchResultDTO(id, entry.displayUsername, entry.displayName));
+      }
+    }
+    return page;
+  }
+
+  private void index(Long id, String username, String name, boolean replace) {
+    // one change at a time per user, so that terms of the old values cannot stay behind
+    entries.compute(id, (key, previous) -> {
+      if (previous != null && !replace) {
+        return previous;
+      }
+      Entry entry = new Entry(username, name);
+      if (previous != null) {
+        if (previous.displayUsername.equals(entry.displayUsername)
+            && Objects.equals(previous.displayName, entry.displayName)) {
+          return previous;
+        }
+        removeTerms(id, previous);
+      }
+      addTerms(id, entry);
+      return entry;
+    });
+  }
+
+  private void addTerms(Long id, Entry entry) {
+    usernames.put(term(entry.username, id), id);
+    for (String word : entry.nameWords()) {
+      nameWords.put(term(word, id), id);
+    }
+    for (String trigram : entry.trigrams) {
+      trigrams.computeIfAbsent(trigram, key -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+  }
+
+  private void removeTerms(Long id, Entry entry) {
+    usernames.remove(term(entry.username, id));
+    for (String word : entry.nameWords()) {
+      nameWords.remove(term(word, id));
+    }
+    for (String trigram : entry.trigrams) {
+      trigrams.computeIfPresent(trigram, (key, ids) -> {
+        ids.remove(id);
+        return ids.isEmpty() ? null : ids;
+      });
+    }
+  }
+
+  private static void collectPrefixMatches(ConcurrentSkipListMap<String, Long> terms, String prefix,
+      Set<Long> matches, int wanted) {
+    ConcurrentNavigableMap<String, Long> range = terms.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+    for (Long id : range.values()) {
+      if (matches.size() >= wanted) {
+        return;
+      }
+      matches.add(id);
+    }
+  }
+
+  /**
+   * Users containing at least the minimum share of the trigrams of the query,
+   * the ones containing the most first. A query of less than three characters
+   * has no trigrams and only matches by prefix.
+   * A user missing more than the allowed number of trigrams cannot match, so
+   * the candidates only need to be taken from the posting lists of the rarest
+   * trigrams: one more than the number that may be missing.
+   */
+  private void collectSimilarMatches(String query, Set<Long> matches, int wanted) {
+    Set<String> queryTrigrams = trigramsOf(query, false);
+    if (queryTrigrams.isEmpty()) {
+      return;
+    }
+    int required = Math.max(1, (int) Math.ceil(minSimilarity * queryTrigrams.size()));
+    List<Set<Long>> postings = new ArrayList<>(queryTrigrams.size());
+    for (String trigram : queryTrigrams) {
+      postings.add(trigrams.getOrDefault(trigram, Collections.emptySet()));
+    }
+    postings.sort(Comparator.comparingInt(Set::size));
+
+    Map<Long, Double> similarities = new HashMap<>();
+    Set<Long> checked = new HashSet<>();
+    for (Set<Long> ids : postings.subList(0, queryTrigrams.size() - required + 1)) {
+      for (Long id : ids) {
+        Entry entry = entries.get(id);
+        if (entry == null || matches.contains(id) || !checked.add(id)) {
+          continue;
+        }
+        int shared = 0;
+        for (String trigram : queryTrigrams) {
+          if (entry.trigrams.contains(trigram)) {
+            shared++;
+          }
+        }
+        if (shared >= required) {
+          similarities.put(id, (double) shared / queryTrigrams.size());
+        }
+      }
+    }
+    similarities.entrySet().stream()
+        .sorted(Map.Entry.<Long, Double>comparingByValue(Comparator.reverseOrder())
+            .thenComparing(candidate -> entries.get(candidate.getKey()).username, SHORTEST_FIRST))
+        .limit(wanted - (long) matches.size())
+        .forEach(candidate -> matches.add(candidate.getKey()));
+  }
+
+  private static String term(String value, Long id) {
+    return value + TERM_SEPARATOR + id;
+  }
+
+  private static String normalize(String value) {
+    return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+  }
+
+  // values are padded with a space, so that the start and the end of a word count as well
+  private static Set<String> trigramsOf(String value, boolean padded) {
+    Set<String> result = new LinkedHashSet<>();
+    String text = padded ? " " + value + " " : value;
+    for (int i = 0; i + TRIGRAM_LENGTH <= text.length(); i++) {
+      result.add(text.substring(i, i + TRIGRAM_LENGTH));
+    }
+    return result;
+  }
+
+  private static final class Entry {
+
+    private final String displayUsername;
+    private final String displayName;
+    // normalized
+    private final String username;
+    private final String name;
+    private final Set<String> trigrams;
+
+    private Entry(String username, String name) {
+      this.displayUsername = username;
+      this.displayName = name;
+      this.username = normalize(username);
+      this.name = normalize(name);
+      this.trigrams = trigramsOf(this.username, true);
+      this.trigrams.addAll(trigramsOf(this.name, true));
+    }
+
+    private String[] nameWords() {
+      return name.isEmpty() ? new String[0] : name.split("\\s+");
+    }
+  }
+}
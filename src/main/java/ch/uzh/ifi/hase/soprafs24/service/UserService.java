@@ -1,23 +1,46 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
+import ch.uzh.ifi.hase.soprafs24.constant.AuditEventType;
+import ch.uzh.ifi.hase.soprafs24.constant.ImportStatus;
+import ch.uzh.ifi.hase.soprafs24.constant.UserChangeType;
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.journal.AuditJournal;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserSummary;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserImportResultDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.security.AuthenticatedUser;
+import ch.uzh.ifi.hase.soprafs24.security.TokenCache;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.persistence.EntityManager;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * User Service
@@ -25,50 +48,195 @@ import java.util.UUID;
  * the user
  * (e.g., it creates, modifies, deletes, finds). The result will be passed back
  * to the caller.
+ * Operations that hash or verify a password do not run in a transaction: the
+ * password is hashed first and only then is a transaction started, so no
+ * connection is held while a request waits for the hashing pool.
  */
 @Service
-@Transactional
 public class UserService {
 
   private final Logger log = LoggerFactory.getLogger(UserService.class);
 
   private final UserRepository userRepository;
-  private final BCryptPasswordEncoder passwordEncoder;
+  private final EntityManager entityManager;
+  private final TransactionTemplate transactionTemplate;
+  private final TokenCache tokenCache;
+  private final PasswordHashingService passwordHashingService;
+  private final PresenceService presenceService;
+  private final ApplicationEventPublisher eventPublisher;
+  private final ProfileWriteBuffer profileWriteBuffer;
+  private final AuditJournal auditJournal;
+  private final UsernameFilter usernameFilter;
+  private final UserListVersion userListVersion;
+  // concurrent reads of the same user load and map it once
+  private final SingleFlight<Long, LoadedProfile> profileReads;
+
+  // the mapped user and its entity version, shared by the callers of a read
+  private static final class LoadedProfile {
+    private final UserGetDTO user;
+    private final Long version;
+
+    private LoadedProfile(User user) {
+      this.user = DTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
+      this.version = user.getVersion();
+    }
+  }
 
   @Autowired
-  public UserService(@Qualifier("userRepository") UserRepository userRepository) {
+  public UserService(@Qualifier("userRepository") UserRepository userRepository, EntityManager entityManager,
+      PlatformTransactionManager transactionManager, TokenCache tokenCache, PasswordHashingService passwordHashingService, PresenceService presenceService,
+      ApplicationEventPublisher eventPublisher, ProfileWriteBuffer profileWriteBuffer, AuditJournal auditJournal,
+      UsernameFilter usernameFilter, UserListVersion userListVersion, MeterRegistry meterRegistry) {
     this.userRepository = userRepository;
-    this.passwordEncoder = new BCryptPasswordEncoder();
+    this.entityManager = entityManager;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.tokenCache = tokenCache;
+    this.passwordHashingService = passwordHashingService;
+    this.presenceService = presenceService;
+    this.eventPublisher = eventPublisher;
+    this.profileWriteBuffer = profileWriteBuffer;
+    this.auditJournal = auditJournal;
+    this.usernameFilter = usernameFilter;
+    this.userListVersion = userListVersion;
+    this.profileReads = new SingleFlight<>("users.profile", meterRegistry);
+  }
 
+  /**
+   * All users, ordered by id. Only the columns returned by the API are read
+   * (see UserSummary).
+   */
+  @Transactional(readOnly = true)
+  public List<UserSummary> getUsers() {
+    return this.userRepository.findAllSummaries();
+  }
+
+  /**
+   * Returns at most {@code limit} users with an id greater than {@code cursor},
+   * ordered by id. Passing the id of the last user of a page as the cursor
+   * yields the next page.
+   */
+  @Transactional(readOnly = true)
+  public List<UserSummary> getUsersAfter(Long cursor, int limit) {
+    long after = cursor == null ? Long.MIN_VALUE : cursor;
+    return this.userRepository.findSummariesByIdGreaterThan(after, PageRequest.of(0, limit));
   }
 
-  public List<User> getUsers() {
-    return this.userRepository.findAll();
+  /**
+   * Hands every user, ordered by id, to the given consumer. The summaries are
+   * not managed, so the persistence context does not grow with the number of
+   * users.
+   */
+  @Transactional(readOnly = true)
+  public void forEachUser(Consumer<UserSummary> consumer) {
+    try (Stream<UserSummary> users = this.userRepository.streamAllSummaries()) {
+      users.forEach(consumer);
+    }
   }
 
+  /**
+   * Creates a user. A username that is taken in the meantime fails on commit
+   * (unique constraint), which is answered with 409 as well.
+   */
   public User createUser(User newUser) {
 
     // validating not empty
-    if (newUser.getUsername() == null || newUser.getUsername().trim().isEmpty() ||
-        newUser.getPassword() == null || newUser.getPassword().trim().isEmpty()) {
-      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Username und Passwort dürfen nicht leer sein");
+    UserValidation.checkNewUser(newUser);
+    UserValidation.initializeNewUser(newUser);
+
+    checkIfUserExists(newUser);
+
+    newUser.setPassword(passwordHashingService.encode(newUser.getPassword()));
+    usernameFilter.add(newUser.getUsername());
+    User createdUser = transactionTemplate.execute(status -> {
+      // saves the given entity but data is only persisted in the database once
+      // flush() is called
+      User user = userRepository.save(newUser);
+      userRepository.flush();
+      presenceService.track(user.getId());
+      publishChange(UserChangeType.CREATED, user);
+      auditJournal.record(AuditEventType.CREATED, user.getId(), user.getUsername());
+      return user;
+    });
+
+    log.debug("Created Information for User: {}", createdUser);
+    return createdUser;
+  }
+
+  /**
+   * Creates a batch of users in one transaction and reports the result of each
+   * of them, in the order of the input. Invalid users and users whose username
+   * is taken (by an existing user or an earlier user of the batch) are
+   * skipped. Uniqueness is checked with a single query, the passwords are
+   * hashed in parallel and only then are the users inserted, with JDBC
+   * batching.
+   * Imported users are OFFLINE until they log in.
+   */
+  public List<UserImportResultDTO> importUsers(List<User> newUsers) {
+    List<UserImportResultDTO> results = new ArrayList<>(newUsers.size());
+    Set<String> usernames = new HashSet<>();
+    for (User newUser : newUsers) {
+      UserImportResultDTO result = new UserImportResultDTO();
+      result.setUsername(newUser.getUsername());
+      String error = UserValidation.validateNewUser(newUser);
+      if (error != null) {
+        result.setStatus(ImportStatus.INVALID);
+        result.setMessage(error);
+      } else if (!usernames.add(newUser.getUsername())) {
+        result.setStatus(ImportStatus.CONFLICT);
+        result.setMessage("The username occurs more than once in the import");
+      }
+      results.add(result);
     }
 
-    newUser.setName(newUser.getUsername());
-    newUser.setToken(UUID.randomUUID().toString());
-    newUser.setStatus(UserStatus.ONLINE);
-    newUser.setCreationDate(LocalDate.now());
+    // only the usernames that may be taken are queried
+    usernames.removeIf(username -> !usernameFilter.mightExist(username));
+    Set<String> existingUsernames = usernames.isEmpty() ? Set.of()
+        : new HashSet<>(userRepository.findExistingUsernames(usernames));
 
-    checkIfUserExists(newUser);
+    List<User> usersToCreate = new ArrayList<>();
+    List<UserImportResultDTO> resultsToCreate = new ArrayList<>();
+    for (int i = 0; i < newUsers.size(); i++) {
+      UserImportResultDTO result = results.get(i);
+      if (result.getStatus() != null) {
+        continue;
+      }
+      if (existingUsernames.contains(result.getUsername())) {
+        result.setStatus(ImportStatus.CONFLICT);
+        result.setMessage("The username is not unique");
+        continue;
+      }
+      usersToCreate.add(newUsers.get(i));
+      resultsToCreate.add(result);
+    }
+
+    List<String> rawPasswords = new ArrayList<>(usersToCreate.size());
+    usersToCreate.forEach(user -> rawPasswords.add(user.getPassword()));
+    List<String> hashedPasswords = passwordHashingService.encodeAll(rawPasswords);
 
-    newUser.setPassword(passwordEncoder.encode(newUser.getPassword()));
-    // saves the given entity but data is only persisted in the database once
-    // flush() is called
-    newUser = userRepository.save(newUser);
-    userRepository.flush();
+    for (int i = 0; i < usersToCreate.size(); i++) {
+      User newUser = usersToCreate.get(i);
+      UserValidation.initializeNewUser(newUser);
+      newUser.setStatus(UserStatus.OFFLINE);
+      newUser.setPassword(hashedPasswords.get(i));
+    }
+    usersToCreate.forEach(user -> usernameFilter.add(user.getUsername()));
+    List<User> createdUsers = transactionTemplate.execute(status -> {
+      List<User> users = userRepository.saveAll(usersToCreate);
+      userRepository.flush();
+      users.forEach(user -> {
+        publishChange(UserChangeType.CREATED, user);
+        auditJournal.record(AuditEventType.CREATED, user.getId(), user.getUsername());
+      });
+      entityManager.clear();
+      return users;
+    });
 
-    log.debug("Created Information for User: {}", newUser);
-    return newUser;
+    for (int i = 0; i < createdUsers.size(); i++) {
+      resultsToCreate.get(i).setStatus(ImportStatus.CREATED);
+      resultsToCreate.get(i).setId(createdUsers.get(i).getId());
+    }
+    log.debug("Imported {} of {} users", createdUsers.size(), newUsers.size());
+    return results;
   }
 
   /**
@@ -82,64 +250,228 @@ public class UserService {
    * @see User
    */
   private void checkIfUserExists(User userToBeCreated) {
-    User userByUsername = userRepository.findByUsername(userToBeCreated.getUsername());
+    if (!isUsernameAvailable(userToBeCreated.getUsername())) {
+      throw UserValidation.usernameNotUnique();
+    }
+  }
 
-    String baseErrorMessage = "The %s provided %s not unique. Therefore, the user could not be created!";
-    if (userByUsername != null) {
-      throw new ResponseStatusException(HttpStatus.CONFLICT,
-          String.format(baseErrorMessage, "username and the name", "are"));
-    } 
+  /**
+   * Whether the username is neither taken nor reserved by a buffered update.
+   * Usernames that are certainly free are answered without a query (see
+   * UsernameFilter). The transaction is only joined.
+   */
+  @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+  public boolean isUsernameAvailable(String username) {
+    return profileWriteBuffer.userIdOfReservedUsername(username).isEmpty()
+        && !usernameFilter.exists(username, name -> userRepository.findByUsername(name) != null);
   }
 
+  /**
+   * The lookup and the verification run without a transaction, each query in
+   * its own.
+   */
   public User loginUser(String username, String password) {
+    User user = findUserByUsername(username);
+    if (user == null) {
+      // as slow as a wrong password and through the same pool, but without the hashing
+      passwordHashingService.awaitVerificationTime();
+      throw UserValidation.invalidCredentials();
+    }
+    if (checkPassword(password, user.getPassword())) {
+      upgradePasswordHashIfOutdated(user, password);
+      // the status is written asynchronously, the live status is overlaid when mapping
+      presenceService.markOnline(user.getId());
+      auditJournal.record(AuditEventType.LOGIN, user.getId(), username);
+      return user;
+    }
+    throw UserValidation.invalidCredentials();
+  }
+
+  // takes the usernames of buffered updates into account (see ProfileWriteBuffer)
+  private User findUserByUsername(String username) {
+    Optional<Long> reservedFor = profileWriteBuffer.userIdOfReservedUsername(username);
+    if (reservedFor.isPresent()) {
+      return userRepository.findById(reservedFor.get()).orElse(null);
+    }
     User user = userRepository.findByUsername(username);
-    if (user != null && checkPassword(password, user.getPassword())) {
-      user.setStatus(UserStatus.ONLINE);
-      return userRepository.save(user);
+    // the user is being renamed
+    return user == null || profileWriteBuffer.pendingUsernameOf(user.getId()) == null ? user : null;
+  }
+
+  /**
+   * Re-hashes the (just verified) password in the background if its stored hash
+   * was created with a lower strength than the configured one.
+   */
+  private void upgradePasswordHashIfOutdated(User user, String rawPassword) {
+    String storedPassword = user.getPassword();
+    if (!passwordHashingService.upgradeEncoding(storedPassword)) {
+      return;
     }
-    throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid credentials");
+    Long userId = user.getId();
+    passwordHashingService.encodeInBackground(rawPassword,
+        upgradedPassword -> userRepository.updatePassword(userId, upgradedPassword, storedPassword));
   }
 
+  @Transactional
   public void logoutUser(Long userId) {
-    User user = userRepository.findById(userId)
-        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
-    user.setStatus(UserStatus.OFFLINE);
-    userRepository.save(user);
+    if (!presenceService.isOnline(userId) && !userRepository.existsById(userId)) {
+      throw UserValidation.userNotFound();
+    }
+    presenceService.markOffline(userId);
+    auditJournal.record(AuditEventType.LOGOUT, userId, null);
+  }
+
+  /**
+   * Keeps a logged in user online. Fails with 401 if the user is not online
+   * anymore (logged out or expired), i.e., has to log in again.
+   */
+  public void heartbeat(Long userId) {
+    if (!presenceService.heartbeat(userId)) {
+      throw UserValidation.notLoggedIn();
+    }
+  }
+
+  /**
+   * Resolves a token to the logged in user it belongs to, or null if there is
+   * no such user. Tokens are resolved through the token cache and whether the
+   * user is logged in comes from the presence state; the transaction is only
+   * joined (and not started) so that a cache hit does not touch the database
+   * at all.
+   */
+  @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+  public AuthenticatedUser authenticate(String token) {
+    if (token == null || token.isEmpty()) {
+      return null;
+    }
+    AuthenticatedUser user = tokenCache.get(token, this::loadAuthenticatedUser);
+    return user != null && presenceService.isOnline(user.getId()) ? user : null;
+  }
+
+  private AuthenticatedUser loadAuthenticatedUser(String token) {
+    User user = userRepository.findByToken(token);
+    return user == null ? null : new AuthenticatedUser(user.getId(), user.getUsername());
+  }
+
+  private static String formatVersion(Long version, UserStatus status, Optional<Long> pendingRevision) {
+    return version + "." + status + pendingRevision.map(revision -> "." + revision).orElse("");
   }
 
+  /**
+   * A version of all users as returned by the API, which changes whenever a
+   * user is created, updated or goes online or offline. Kept in memory (see
+   * UserListVersion), so it does not cost a query; the counters are only
+   * meaningful within this process, which the epoch of UserListVersion tells.
+   */
+  public String getUsersVersion() {
+    return userListVersion.get() + "." + presenceService.getRevision() + "." + profileWriteBuffer.getRevision();
+  }
+
+  @Transactional
   public User getUserById(Long userId) {
     return userRepository.findById(userId)
-        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
+        .orElseThrow(UserValidation::userNotFound);
   }
 
+  /**
+   * The user as returned by the API, without the live status, and its
+   * version, i.e., including the live status and a buffered update.
+   * Concurrent calls for the same user share one lookup and mapping (see
+   * SingleFlight), each caller gets its own copy. The user is usually read
+   * from the second-level cache, so conditional requests do not cost a query
+   * either. The transaction is only joined, so callers waiting for the lookup
+   * of another one do not hold a connection.
+   */
+  @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+  public UserProfile getUserProfile(Long userId) {
+    LoadedProfile profile = profileReads.execute(userId, id -> new LoadedProfile(getUserById(id)));
+    String version = formatVersion(profile.version, presenceService.statusOf(userId, profile.user.getStatus()),
+        profileWriteBuffer.pendingRevisionOf(userId));
+    return new UserProfile(DTOMapper.INSTANCE.copyUserGetDTO(profile.user), version);
+  }
+
+  @Transactional
   public void updateUserBirthDate(Long userId, LocalDate birthDate) {
+    if (birthDate != null && profileWriteBuffer.isEnabled()) {
+      getUserById(userId);
+      profileWriteBuffer.submit(userId, null, birthDate);
+      auditJournal.record(AuditEventType.UPDATED, userId, null);
+      return;
+    }
+    profileWriteBuffer.flush(userId);
     User user = getUserById(userId);
     if (birthDate != null) {
       user.setBirthDate(birthDate);
       userRepository.save(user);
+      publishChange(UserChangeType.UPDATED, user);
+      auditJournal.record(AuditEventType.UPDATED, userId, user.getUsername());
     } else {
       throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Birth date cannot be null");
     }
   }
 
+  /**
+   * Updates the profile. If an expected version is given (If-Match), the
+   * update fails with 412 unless the user is still at that version; an update
+   * that runs concurrently with another one fails with 409 on commit.
+   * With write-behind, unconditional updates are only buffered (see
+   * ProfileWriteBuffer). A conditional update writes the buffered update of
+   * the user first, so it fails with 412 if it was based on the buffered one.
+   */
   @Transactional
-  public void updateUser(Long userId, UserPutDTO userPutDTO) {
+  public void updateUser(Long userId, UserPutDTO userPutDTO, Long expectedVersion) {
+    if (profileWriteBuffer.isEnabled() && expectedVersion == null) {
+      submitUpdate(userId, userPutDTO);
+      return;
+    }
+    profileWriteBuffer.flush(userId);
     User user = getUserById(userId);
-
-    if (userPutDTO.getUsername() != null && !userPutDTO.getUsername().isEmpty()) {
-      user.setUsername(userPutDTO.getUsername());
+    if (expectedVersion != null && !Objects.equals(expectedVersion, user.getVersion())) {
+      throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "The user has been changed in the meantime");
     }
-
-    if (userPutDTO.getBirthDate() != null) {
-      user.setBirthDate(userPutDTO.getBirthDate());
+    // reserved by a buffered update of another user, which is not in the database yet
+    if (profileWriteBuffer.userIdOfReservedUsername(userPutDTO.getUsername()).filter(id -> !id.equals(userId))
+        .isPresent()) {
+      throw UserValidation.usernameNotUnique();
     }
 
+    UserValidation.applyUpdate(user, userPutDTO);
+    usernameFilter.add(user.getUsername());
+
     userRepository.save(user);
+    publishChange(UserChangeType.UPDATED, user);
+    auditJournal.record(AuditEventType.UPDATED, userId, user.getUsername());
+  }
+
+  private void submitUpdate(Long userId, UserPutDTO userPutDTO) {
+    User user = getUserById(userId);
+    String username = userPutDTO.getUsername() == null || userPutDTO.getUsername().isEmpty() ? null
+        : userPutDTO.getUsername();
+    if (username != null && !username.equals(user.getUsername())) {
+      // the buffer only knows about the buffered usernames
+      User userByUsername = userRepository.findByUsername(username);
+      if (userByUsername != null && !userByUsername.getId().equals(userId)) {
+        throw UserValidation.usernameNotUnique();
+      }
+    }
+    if (username != null) {
+      usernameFilter.add(username);
+    }
+    profileWriteBuffer.submit(userId, username, userPutDTO.getBirthDate());
+    auditJournal.record(AuditEventType.UPDATED, userId, username != null ? username : user.getUsername());
+  }
+
+  /**
+   * Publishes the change to the listeners (e.g., the subscribers of
+   * /users/events); inside a transaction it is delivered after the commit.
+   */
+  private void publishChange(UserChangeType type, User user) {
+    UserStatus status = presenceService.statusOf(user.getId(), user.getStatus());
+    eventPublisher.publishEvent(UserChangedEvent.of(type, user, status));
   }
 
   // helper method to check hashed passwords
   private boolean checkPassword(String inputPassword, String storedPassword) {
-    return passwordEncoder.matches(inputPassword, storedPassword);
+    return passwordHashingService.matches(inputPassword, storedPassword);
   }
 
 }
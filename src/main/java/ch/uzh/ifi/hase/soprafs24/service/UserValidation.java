@@ -0,0 +1,78 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * User Validation
+ * The rules for creating and updating users and the errors of the user API,
+ * shared by the blocking (UserService) and the reactive (ReactiveUserService)
+ * implementation.
+ */
+final class UserValidation {
+
+  private UserValidation() {
+  }
+
+  static void checkNewUser(User newUser) {
+    String error = validateNewUser(newUser);
+    if (error != null) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, error);
+    }
+  }
+
+  /**
+   * Why the new user is invalid, or null if it is valid.
+   */
+  static String validateNewUser(User newUser) {
+    if (newUser.getUsername() == null || newUser.getUsername().trim().isEmpty() ||
+        newUser.getPassword() == null || newUser.getPassword().trim().isEmpty()) {
+      return "Username und Passwort dürfen nicht leer sein";
+    }
+    return null;
+  }
+
+  /**
+   * Sets the fields that are not given by the client. A new user is logged in.
+   */
+  static void initializeNewUser(User newUser) {
+    newUser.setName(newUser.getUsername());
+    newUser.setToken(UUID.randomUUID().toString());
+    newUser.setStatus(UserStatus.ONLINE);
+    newUser.setCreationDate(LocalDate.now());
+  }
+
+  static void applyUpdate(User user, UserPutDTO userPutDTO) {
+    if (userPutDTO.getUsername() != null && !userPutDTO.getUsername().isEmpty()) {
+      user.setUsername(userPutDTO.getUsername());
+    }
+
+    if (userPutDTO.getBirthDate() != null) {
+      user.setBirthDate(userPutDTO.getBirthDate());
+    }
+  }
+
+  static ResponseStatusException usernameNotUnique() {
+    String baseErrorMessage = "The %s provided %s not unique. Therefore, the user could not be created!";
+    return new ResponseStatusException(HttpStatus.CONFLICT,
+        String.format(baseErrorMessage, "username and the name", "are"));
+  }
+
+  static ResponseStatusException invalidCredentials() {
+    return new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid credentials");
+  }
+
+  static ResponseStatusException notLoggedIn() {
+    return new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User is not logged in");
+  }
+
+  static ResponseStatusException userNotFound() {
+    return new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
+  }
+}
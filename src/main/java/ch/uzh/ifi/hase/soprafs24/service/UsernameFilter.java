@@ -0,0 +1,125 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Username Filter
+ * Bloom filter of all usernames, so that a username that is free (the common
+ * case when registering or checking availability while typing) is usually
+ * known to be free without a query. It is built from the database once the
+ * application is ready; until then every username may exist. New usernames
+ * are added before they are committed (see UserService) and those of other
+ * instances with their UserChangedEvent. A username that is renamed away stays
+ * in the filter and costs a query until the next start, which shows in the
+ * measured false positive rate.
+ */
+@Component
+public class UsernameFilter {
+
+  private final Logger log = LoggerFactory.getLogger(UsernameFilter.class);
+
+  private final UserRepository userRepository;
+  private final BloomFilter filter;
+  private final long expectedUsernames;
+  private volatile boolean ready;
+
+  private final Counter absentCounter;
+  private final Counter presentCounter;
+  private final Counter falsePositiveCounter;
+
+  public UsernameFilter(@Qualifier("userRepository") UserRepository userRepository,
+      @Value("${users.username-filter.expected-usernames:1000000}") long expectedUsernames,
+      @Value("${users.username-filter.false-positive-rate:0.01}") double falsePositiveRate,
+      MeterRegistry meterRegistry) {
+    this.userRepository = userRepository;
+    this.filter = new BloomFilter(expectedUsernames, falsePositiveRate);
+    this.expectedUsernames = expectedUsernames;
+    // measured false positive rate: false-positive / (absent + false-positive)
+    this.absentCounter = meterRegistry.counter("users.username-filter.checks", "result", "absent");
+    this.presentCounter = meterRegistry.counter("users.username-filter.checks", "result", "present");
+    this.falsePositiveCounter = meterRegistry.counter("users.username-filter.checks", "result", "false-positive");
+    Gauge.builder("users.username-filter.expected-false-positive-rate", filter,
+        BloomFilter::expectedFalsePositiveRate).register(meterRegistry);
+  }
+
+  /**
+   * Adds all usernames stored in the database. Usernames added in the meantime
+   * are kept, the filter is only read once this has completed.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  @Transactional(readOnly = true)
+  public void rebuild() {
+    long start = System.nanoTime();
+    AtomicLong count = new AtomicLong();
+    try (Stream<String> usernames = userRepository.streamAllUsernames()) {
+      usernames.forEach(username -> {
+        filter.put(username);
+        count.incrementAndGet();
+      });
+    }
+    ready = true;
+    log.info("Added {} usernames to the username filter ({} bits, {} hashes) in {} ms", count.get(),
+        filter.bitCount(), filter.hashCount(), (System.nanoTime() - start) / 1_000_000);
+    if (count.get() > expectedUsernames) {
+      log.warn("There are more usernames than users.username-filter.expected-usernames ({}), the filter answers "
+          + "fewer lookups on its own", expectedUsernames);
+    }
+  }
+
+  /**
+   * Usernames created or renamed by other instances (see ClusterEventRelay);
+   * those of this instance have already been added.
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onUserChanged(UserChangedEvent event) {
+    String username = event.getChange().getUsername();
+    // presence changes carry no username
+    if (username != null) {
+      filter.put(username);
+    }
+  }
+
+  public void add(String username) {
+    filter.put(username);
+  }
+
+  /**
+   * False if the username certainly does not exist, otherwise the result of
+   * the lookup (e.g. a query).
+   */
+  public boolean exists(String username, Predicate<String> lookup) {
+    if (ready && !filter.mightContain(username)) {
+      absentCounter.increment();
+      return false;
+    }
+    boolean exists = lookup.test(username);
+    if (ready) {
+      (exists ? presentCounter : falsePositiveCounter).increment();
+    }
+    return exists;
+  }
+
+  /**
+   * False if the username certainly does not exist (without a lookup).
+   */
+  public boolean mightExist(String username) {
+    return !ready || filter.mightContain(username);
+  }
+}
@@ -0,0 +1,124 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warmup Service
+ * Runs once at startup, before the application is ready (readiness state
+ * ACCEPTING_TRAFFIC, App Engine warmup request): loads the users that are
+ * online into the second-level cache and runs the hot paths of a request (the
+ * repository queries, DTOMapper, Jackson, password hashing) often enough for
+ * the JIT compiler to pick them up. Disabled by default (users.warmup.enabled).
+ */
+@Service
+public class WarmupService implements ApplicationRunner {
+
+  private static final String WARMUP_TOKEN = "warmup";
+
+  private final Logger log = LoggerFactory.getLogger(WarmupService.class);
+
+  private final UserRepository userRepository;
+  private final PasswordHashingService passwordHashingService;
+  private final ObjectMapper objectMapper;
+  private final boolean enabled;
+  private final int preloadSize;
+  private final int iterations;
+  private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+  public WarmupService(@Qualifier("userRepository") UserRepository userRepository,
+      PasswordHashingService passwordHashingService, ObjectMapper objectMapper,
+      @Value("${users.warmup.enabled:false}") boolean enabled,
+      @Value("${users.warmup.preload-size:10000}") int preloadSize,
+      @Value("${users.warmup.iterations:500}") int iterations) {
+    this.userRepository = userRepository;
+    this.passwordHashingService = passwordHashingService;
+    this.objectMapper = objectMapper;
+    this.enabled = enabled;
+    this.preloadSize = preloadSize;
+    this.iterations = iterations;
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    if (!enabled) {
+      completion.complete(null);
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      List<User> hotUsers = preloadOnlineUsers();
+      primeRequestPaths(hotUsers);
+      log.info("Warm-up done in {} ms ({} users preloaded)",
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), hotUsers.size());
+    } catch (RuntimeException | JsonProcessingException e) {
+      // a failed warm-up only costs latency, the application works without it
+      log.warn("Warm-up failed", e);
+    } finally {
+      completion.complete(null);
+    }
+  }
+
+  /**
+   * Completes as soon as the warm-up has finished (at once if it is disabled).
+   */
+  public CompletableFuture<Void> whenCompleted() {
+    return completion.copy();
+  }
+
+  // the users that are online are the ones that will be requested first
+  private List<User> preloadOnlineUsers() {
+    List<Long> onlineUserIds = userRepository.findIdsByStatus(UserStatus.ONLINE);
+    if (onlineUserIds.isEmpty()) {
+      return Collections.emptyList();
+    }
+    return userRepository.findAllById(onlineUserIds.subList(0, Math.min(preloadSize, onlineUserIds.size())));
+  }
+
+  private void primeRequestPaths(List<User> hotUsers) throws JsonProcessingException {
+    User sample = hotUsers.isEmpty() ? sampleUser() : hotUsers.get(0);
+    String userPostJson = "{\"username\":\"warmup\",\"password\":\"warmup\"}";
+    for (int i = 0; i < iterations; i++) {
+      userRepository.findByToken(WARMUP_TOKEN);
+      userRepository.findByUsername(sample.getUsername());
+      userRepository.findById(sample.getId() == null ? -1L : sample.getId());
+      userRepository.findSummariesByIdGreaterThan(0L, PageRequest.of(0, 1));
+
+      UserGetDTO userGetDTO = DTOMapper.INSTANCE.convertEntityToUserGetDTO(sample);
+      objectMapper.writeValueAsBytes(userGetDTO);
+      UserPostDTO userPostDTO = objectMapper.readValue(userPostJson, UserPostDTO.class);
+      DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO);
+    }
+    // BCrypt's loops get compiled within a single hash
+    passwordHashingService.matches(WARMUP_TOKEN, passwordHashingService.encode(WARMUP_TOKEN));
+  }
+
+  private static User sampleUser() {
+    User user = new User();
+    user.setName(WARMUP_TOKEN);
+    user.setUsername(WARMUP_TOKEN);
+    user.setStatus(UserStatus.OFFLINE);
+    user.setCreationDate(LocalDate.now());
+    return user;
+  }
+}
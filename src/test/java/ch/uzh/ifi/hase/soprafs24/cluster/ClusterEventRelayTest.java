@@ -0,0 +1,239 @@
+package ch.uzh.ifi.hase.soprafs24.cluster;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserChangeType;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserEventDTO;
+import ch.uzh.ifi.hase.soprafs24.security.AuthenticatedUser;
+import ch.uzh.ifi.hase.soprafs24.security.TokenCache;
+import ch.uzh.ifi.hase.soprafs24.service.PresenceService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Two instances that are connected by loopback buses, each with its own
+ * presence state and token cache.
+ */
+class ClusterEventRelayTest {
+
+  private Instance first;
+  private Instance second;
+
+  private static class Instance {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<UserChangedEvent> published = new ArrayList<>();
+    private final LoopbackClusterBus bus = new LoopbackClusterBus();
+    private final TokenCache tokenCache = new TokenCache(100, Duration.ofMinutes(10));
+    private final Cache cache = mock(Cache.class);
+    private final org.hibernate.Cache hibernateCache = mock(org.hibernate.Cache.class);
+    private final PresenceService presenceService;
+    private final ClusterEventRelay relay;
+
+    private Instance(String nodeId) {
+      EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+      SessionFactory sessionFactory = mock(SessionFactory.class);
+      when(entityManagerFactory.getCache()).thenReturn(cache);
+      when(entityManagerFactory.unwrap(SessionFactory.class)).thenReturn(sessionFactory);
+      when(sessionFactory.getCache()).thenReturn(hibernateCache);
+
+      // the events of this instance go to its relay, like the application events of a context
+      List<ClusterEventRelay> relayOfInstance = new ArrayList<>();
+      presenceService = new PresenceService(mock(UserRepository.class), event -> {
+        published.add((UserChangedEvent) event);
+        relayOfInstance.forEach(relay -> relay.onUserChanged((UserChangedEvent) event));
+      }, Duration.ofMinutes(5), 500, meterRegistry);
+      relay = new ClusterEventRelay(bus, presenceService, entityManagerFactory, event -> {
+        published.add((UserChangedEvent) event);
+        tokenCache.onUserChanged((UserChangedEvent) event);
+      }, nodeId, 2, meterRegistry, Clock.systemUTC());
+      relayOfInstance.add(relay);
+    }
+
+    private double count(String meter) {
+      return meterRegistry.counter(meter).count();
+    }
+  }
+
+  @BeforeEach
+  void setup() {
+    first = new Instance("first");
+    second = new Instance("second");
+  }
+
+  @AfterEach
+  void tearDown() {
+    first.bus.close();
+    second.bus.close();
+  }
+
+  private static UserChangedEvent change(UserChangeType type, Long userId, String username) {
+    UserEventDTO change = new UserEventDTO();
+    change.setType(type);
+    change.setId(userId);
+    change.setUsername(username);
+    return new UserChangedEvent(change);
+  }
+
+  @Test
+  void loginAndLogout_reachTheOtherInstance() {
+    // Act & Assert
+    first.presenceService.markOnline(1L);
+    first.relay.flush();
+    assertTrue(second.presenceService.isOnline(1L));
+
+    first.presenceService.markOffline(1L);
+    first.relay.flush();
+    assertFalse(second.presenceService.isOnline(1L));
+
+    // applied changes are published on the other instance, but not relayed back
+    assertEquals(2, second.published.size());
+    assertTrue(second.published.stream().allMatch(UserChangedEvent::isLocalOnly));
+    second.relay.flush();
+    assertEquals(0, second.count("cluster.messages.sent"));
+    assertEquals(2, second.count("cluster.messages.received"));
+    assertEquals(2, second.meterRegistry.timer("cluster.propagation.lag").count());
+  }
+
+  @Test
+  void heartbeat_keepsTheUserOnlineOnTheOtherInstance() {
+    // Arrange
+    first.presenceService.markOnline(1L);
+    first.relay.flush();
+    second.presenceService.applyRemote(1L, UserStatus.OFFLINE);
+
+    // Act
+    first.presenceService.heartbeat(1L);
+    first.relay.flush();
+
+    // Assert
+    assertTrue(second.presenceService.isOnline(1L));
+  }
+
+  @Test
+  void changesOfOneUser_areCoalesced() {
+    // Arrange
+    first.relay.onUserChanged(change(UserChangeType.CREATED, 5L, "created"));
+    first.relay.onUserChanged(change(UserChangeType.UPDATED, 5L, "renamed"));
+    first.relay.onUserChanged(change(UserChangeType.UPDATED, 5L, "renamed again"));
+
+    // Act
+    first.relay.flush();
+
+    // Assert
+    assertEquals(1, second.published.size());
+    UserEventDTO received = second.published.get(0).getChange();
+    assertEquals(UserChangeType.CREATED, received.getType());
+    assertEquals("renamed again", received.getUsername());
+    assertEquals(2, first.count("cluster.changes.coalesced"));
+    assertEquals(1, first.count("cluster.changes.sent"));
+  }
+
+  @Test
+  void update_invalidatesTheCachesOfTheUserOnTheOtherInstance() {
+    // Arrange
+    second.tokenCache.put("token-7", new AuthenticatedUser(7L, "before"));
+    second.tokenCache.put("token-8", new AuthenticatedUser(8L, "other"));
+
+    // Act
+    first.relay.onUserChanged(change(UserChangeType.UPDATED, 7L, "after"));
+    first.relay.flush();
+
+    // Assert
+    assertNull(second.tokenCache.getIfPresent("token-7"));
+    assertNotNull(second.tokenCache.getIfPresent("token-8"));
+    verify(second.cache).evict(User.class, 7L);
+    verify(second.hibernateCache).evictNaturalIdData(User.class);
+  }
+
+  @Test
+  void flush_manyChanges_sendsBoundedMessages() {
+    // Arrange
+    for (long userId = 1; userId <= 5; userId++) {
+      first.relay.onUserChanged(change(UserChangeType.UPDATED, userId, "user-" + userId));
+    }
+
+    // Act
+    first.relay.flush();
+
+    // Assert
+    assertEquals(3, first.count("cluster.messages.sent"));
+    assertEquals(5, first.count("cluster.changes.sent"));
+    assertEquals(List.of(1L, 2L, 3L, 4L, 5L), second.published.stream()
+        .map(event -> event.getChange().getId()).sorted().collect(Collectors.toList()));
+  }
+
+  private static ClusterMessage message(long started, long sequence, UserChangeType type, Long userId) {
+    ClusterMessage message = new ClusterMessage();
+    message.setOrigin("third");
+    message.setStarted(started);
+    message.setSequence(sequence);
+    message.setSince(System.currentTimeMillis());
+    message.getChanges().add(change(type, userId, "user").getChange());
+    return message;
+  }
+
+  @Test
+  void receive_staleOnlineAfterOffline_isIgnored() {
+    // Arrange
+    ClusterMessage online = message(1000L, 1, UserChangeType.ONLINE, 1L);
+    second.relay.receive(online);
+    second.relay.receive(message(1000L, 2, UserChangeType.OFFLINE, 1L));
+
+    // Act
+    second.relay.receive(online);
+
+    // Assert
+    assertFalse(second.presenceService.isOnline(1L));
+    assertEquals(1, second.count("cluster.messages.rejected"));
+  }
+
+  @Test
+  void receive_afterRestartOfTheSender_startsANewSequence() {
+    // Arrange
+    second.relay.receive(message(1000L, 1, UserChangeType.ONLINE, 1L));
+    second.relay.receive(message(1000L, 2, UserChangeType.OFFLINE, 1L));
+
+    // Act & Assert
+    second.relay.receive(message(2000L, 1, UserChangeType.ONLINE, 1L));
+    assertTrue(second.presenceService.isOnline(1L));
+
+    // a message of the process before the restart is replayed
+    second.relay.receive(message(1000L, 3, UserChangeType.OFFLINE, 1L));
+    assertTrue(second.presenceService.isOnline(1L));
+    assertEquals(1, second.count("cluster.messages.rejected"));
+    assertEquals(0, second.count("cluster.messages.lost"));
+  }
+
+  @Test
+  void receive_gapInTheSequence_countsLostMessages() {
+    // Arrange
+    ClusterMessage message = new ClusterMessage();
+    message.setOrigin("third");
+    message.setSince(System.currentTimeMillis());
+
+    // Act
+    message.setSequence(1);
+    second.relay.receive(message);
+    message.setSequence(4);
+    second.relay.receive(message);
+
+    // Assert
+    assertEquals(2, second.count("cluster.messages.lost"));
+  }
+}
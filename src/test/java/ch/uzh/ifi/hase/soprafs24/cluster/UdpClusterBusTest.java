@@ -0,0 +1,114 @@
+package ch.uzh.ifi.hase.soprafs24.cluster;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserChangeType;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserEventDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UdpClusterBusTest {
+
+  private static final byte[] SECRET = "cluster-secret".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  void send_deliversTheMessageToThePeers() throws InterruptedException {
+    // Arrange
+    ObjectMapper objectMapper = new ObjectMapper();
+    List<InetSocketAddress> peersOfFirst = new ArrayList<>();
+    BlockingQueue<ClusterMessage> receivedByFirst = new LinkedBlockingQueue<>();
+    BlockingQueue<ClusterMessage> receivedBySecond = new LinkedBlockingQueue<>();
+    try (UdpClusterBus first = new UdpClusterBus(new InetSocketAddress("127.0.0.1", 0), peersOfFirst, SECRET,
+        objectMapper);
+        UdpClusterBus second = new UdpClusterBus(new InetSocketAddress("127.0.0.1", 0),
+            List.of(new InetSocketAddress("127.0.0.1", first.getLocalPort())), SECRET, objectMapper)) {
+      peersOfFirst.add(new InetSocketAddress("127.0.0.1", second.getLocalPort()));
+      first.start(receivedByFirst::add);
+      second.start(receivedBySecond::add);
+
+      UserEventDTO change = new UserEventDTO();
+      change.setType(UserChangeType.UPDATED);
+      change.setId(7L);
+      change.setUsername("renamed");
+      ClusterMessage message = new ClusterMessage();
+      message.setOrigin("first");
+      message.setStarted(1000L);
+      message.setSequence(3);
+      message.setSince(1_700_000_000_000L);
+      message.getChanges().add(change);
+      message.getHeartbeats().add(9L);
+
+      // Act
+      first.send(message);
+      ClusterMessage received = receivedBySecond.poll(5, TimeUnit.SECONDS);
+
+      // Assert
+      assertNotNull(received);
+      assertEquals("first", received.getOrigin());
+      assertEquals(1000L, received.getStarted());
+      assertEquals(3, received.getSequence());
+      assertEquals(1_700_000_000_000L, received.getSince());
+      assertEquals(UserChangeType.UPDATED, received.getChanges().get(0).getType());
+      assertEquals("renamed", received.getChanges().get(0).getUsername());
+      assertEquals(List.of(9L), received.getHeartbeats());
+      assertTrue(receivedByFirst.isEmpty());
+    }
+  }
+
+  @Test
+  void receive_datagramsNotSignedByAPeer_areIgnored() throws IOException, InterruptedException {
+    // Arrange
+    ObjectMapper objectMapper = new ObjectMapper();
+    BlockingQueue<ClusterMessage> received = new LinkedBlockingQueue<>();
+    try (DatagramChannel peer = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        DatagramChannel stranger = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        UdpClusterBus bus = new UdpClusterBus(new InetSocketAddress("127.0.0.1", 0),
+            List.of((InetSocketAddress) peer.getLocalAddress()), SECRET, objectMapper);
+        UdpClusterBus otherCluster = new UdpClusterBus(new InetSocketAddress("127.0.0.1", 0), List.of(),
+            "other-secret".getBytes(StandardCharsets.UTF_8), objectMapper)) {
+      bus.start(received::add);
+      InetSocketAddress busAddress = new InetSocketAddress("127.0.0.1", bus.getLocalPort());
+
+      // Act: a signed message from a stranger, an unsigned and a wrongly signed one from the peer, then a valid one
+      stranger.send(ByteBuffer.wrap(bus.encode(message(1))), busAddress);
+      peer.send(ByteBuffer.wrap(objectMapper.writeValueAsBytes(message(2))), busAddress);
+      peer.send(ByteBuffer.wrap(otherCluster.encode(message(3))), busAddress);
+      peer.send(ByteBuffer.wrap(bus.encode(message(4))), busAddress);
+
+      // Assert
+      ClusterMessage first = received.poll(5, TimeUnit.SECONDS);
+      assertNotNull(first);
+      assertEquals(4, first.getSequence());
+      assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+  }
+
+  @Test
+  void parsePeers_hostsAndPorts() {
+    // Act
+    List<InetSocketAddress> peers = ClusterConfig.parsePeers(List.of("10.0.0.1:7600", " 10.0.0.2:7601 ", ""));
+
+    // Assert
+    assertEquals(2, peers.size());
+    assertEquals(7601, peers.get(1).getPort());
+    assertThrows(IllegalArgumentException.class, () -> ClusterConfig.parsePeers(List.of("10.0.0.1")));
+  }
+
+  private static ClusterMessage message(long sequence) {
+    ClusterMessage message = new ClusterMessage();
+    message.setOrigin("peer");
+    message.setSequence(sequence);
+    return message;
+  }
+}
@@ -0,0 +1,34 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordEncoderConfigTest {
+
+  private final PasswordEncoderConfig config = new PasswordEncoderConfig();
+
+  @Test
+  void passwordEncoder_configuredStrength_isUsedForNewHashes() {
+    // Act
+    PasswordEncoder encoder = config.passwordEncoder("11", Duration.ofMillis(50));
+
+    // Assert
+    assertTrue(encoder.encode("secret").startsWith("$2a$11$"));
+  }
+
+  @Test
+  void calibrateStrength_tinyBudget_fallsBackToMinimumStrength() {
+    // Act & Assert
+    assertEquals(PasswordEncoderConfig.MIN_STRENGTH, PasswordEncoderConfig.calibrateStrength(Duration.ofNanos(1)));
+  }
+
+  @Test
+  void calibrateStrength_hugeBudget_isCappedAtMaximumStrength() {
+    // Act & Assert
+    assertEquals(PasswordEncoderConfig.MAX_STRENGTH, PasswordEncoderConfig.calibrateStrength(Duration.ofDays(1)));
+  }
+}
@@ -0,0 +1,220 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoublePredicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyFilterTest {
+
+  private SimpleMeterRegistry meterRegistry;
+  private IdempotencyFilter filter;
+  private AtomicInteger executions;
+  private FilterChain createUser;
+
+  @BeforeEach
+  void setup() {
+    meterRegistry = new SimpleMeterRegistry();
+    filter = new IdempotencyFilter(DataSize.ofMegabytes(1), Duration.ofHours(1), Duration.ofSeconds(5),
+        DataSize.ofKilobytes(64), meterRegistry);
+    executions = new AtomicInteger();
+    // reads the body and answers with a new user each time
+    createUser = (request, response) -> {
+      String body = StreamUtils.copyToString(request.getInputStream(), StandardCharsets.UTF_8);
+      HttpServletResponse httpResponse = (HttpServletResponse) response;
+      httpResponse.setStatus(201);
+      httpResponse.setContentType("application/json");
+      httpResponse.setHeader("Location", "/users/" + executions.incrementAndGet());
+      httpResponse.getWriter().write("{\"id\":" + executions.get() + ",\"request\":" + body + "}");
+    };
+  }
+
+  @Test
+  void retry_sameKeyAndBody_replaysFirstResponse() throws Exception {
+    // Act
+    MockHttpServletResponse first = post("key-1", "{\"username\":\"anna\"}", createUser);
+    MockHttpServletResponse retry = post("key-1", "{\"username\":\"anna\"}", createUser);
+
+    // Assert
+    assertEquals(1, executions.get());
+    assertEquals(201, retry.getStatus());
+    assertEquals(first.getContentAsString(), retry.getContentAsString());
+    assertEquals("application/json", retry.getContentType());
+    assertEquals("/users/1", retry.getHeader("Location"));
+    assertEquals("true", retry.getHeader(IdempotencyFilter.REPLAYED));
+    assertNull(first.getHeader(IdempotencyFilter.REPLAYED));
+    assertEquals(1, meterRegistry.get("idempotency.requests").tag("result", "replayed").counter().count());
+  }
+
+  @Test
+  void retry_sameKeyDifferentBody_returns422() throws Exception {
+    // Arrange
+    post("key-2", "{\"username\":\"anna\"}", createUser);
+
+    // Act
+    MockHttpServletResponse retry = post("key-2", "{\"username\":\"bob\"}", createUser);
+
+    // Assert
+    assertEquals(422, retry.getStatus());
+    assertEquals(1, executions.get());
+  }
+
+  @Test
+  void retry_afterServerError_runsAgain() throws Exception {
+    // Arrange
+    post("key-3", "{}", (request, response) -> {
+      executions.incrementAndGet();
+      ((HttpServletResponse) response).sendError(503);
+    });
+
+    // Act
+    MockHttpServletResponse retry = post("key-3", "{}", createUser);
+
+    // Assert
+    assertEquals(201, retry.getStatus());
+    assertEquals(2, executions.get());
+  }
+
+  @Test
+  void retry_whileFirstRuns_waitsForItsResponse() throws Exception {
+    // Arrange
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    FilterChain slowCreateUser = (request, response) -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      createUser.doFilter(request, response);
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    try {
+      // Act
+      Future<MockHttpServletResponse> first = executor.submit(() -> post("key-4", "{}", slowCreateUser));
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+      Future<MockHttpServletResponse> retry = executor.submit(() -> post("key-4", "{}", slowCreateUser));
+      Thread.sleep(50);
+      release.countDown();
+
+      // Assert
+      assertEquals(201, first.get(5, TimeUnit.SECONDS).getStatus());
+      MockHttpServletResponse retryResponse = retry.get(5, TimeUnit.SECONDS);
+      assertEquals(201, retryResponse.getStatus());
+      assertEquals("true", retryResponse.getHeader(IdempotencyFilter.REPLAYED));
+      assertEquals(1, executions.get());
+    } finally {
+      release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void retry_firstStillRunningAfterWaitTimeout_returns409() throws Exception {
+    // Arrange
+    filter = new IdempotencyFilter(DataSize.ofMegabytes(1), Duration.ofHours(1), Duration.ofMillis(20),
+        DataSize.ofKilobytes(64), meterRegistry);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    try {
+      executor.submit(() -> post("key-5", "{}", (request, response) -> {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }));
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+
+      // Act
+      MockHttpServletResponse retry = post("key-5", "{}", createUser);
+
+      // Assert
+      assertEquals(409, retry.getStatus());
+      assertEquals(0, executions.get());
+    } finally {
+      release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void store_largeResponses_boundedBySizeOfResponses() throws Exception {
+    // Arrange
+    meterRegistry = new SimpleMeterRegistry();
+    filter = new IdempotencyFilter(DataSize.ofKilobytes(16), Duration.ofHours(1), Duration.ofSeconds(5),
+        DataSize.ofKilobytes(64), meterRegistry);
+    String body = "\"" + "a".repeat(2000) + "\"";
+
+    // Act: a kept response is weighed with its body
+    post("key-0", body, createUser);
+
+    // Assert
+    assertTrue(awaitStoreSize(size -> size >= 2000), "store size " + storeSize());
+
+    // Act: far more responses than fit into the store
+    for (int i = 1; i <= 20; i++) {
+      post("key-" + i, body, createUser);
+    }
+
+    // Assert
+    assertTrue(awaitStoreSize(size -> size <= 16 * 1024), "store size " + storeSize());
+  }
+
+  @Test
+  void request_withoutKey_isNotKept() throws Exception {
+    // Act
+    post(null, "{}", createUser);
+    post(null, "{}", createUser);
+
+    // Assert
+    assertEquals(2, executions.get());
+  }
+
+  // the store is maintained in the background
+  private boolean awaitStoreSize(DoublePredicate condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.test(storeSize()) && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    return condition.test(storeSize());
+  }
+
+  private double storeSize() {
+    return meterRegistry.get("idempotency.store.size").gauge().value();
+  }
+
+  private MockHttpServletResponse post(String key, String body, FilterChain chain) throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", "/users");
+    if (key != null) {
+      request.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY, key);
+    }
+    request.setContentType("application/json");
+    request.setContent(body.getBytes(StandardCharsets.UTF_8));
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    filter.doFilter(request, response, chain);
+    return response;
+  }
+}
@@ -0,0 +1,151 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the reactive profile end to end (WebFlux, R2DBC and the JPA schema) on a
+ * database of its own.
+ */
+@ActiveProfiles("reactive")
+@SpringBootTest(properties = {
+    "spring.main.web-application-type=reactive",
+    "spring.datasource.url=jdbc:h2:mem:reactivetestdb",
+    "users.reactive.r2dbc-url=r2dbc:pool:h2:mem:///reactivetestdb?options=DB_CLOSE_DELAY=-1"})
+@AutoConfigureWebTestClient
+class ReactiveUserControllerIntegrationTest {
+
+  @Autowired
+  private WebTestClient webTestClient;
+
+  private UserGetDTO createUser(String username) {
+    UserPostDTO userPostDTO = new UserPostDTO();
+    userPostDTO.setUsername(username);
+    userPostDTO.setPassword("securePassword123");
+
+    return webTestClient.post().uri("/users").bodyValue(userPostDTO)
+        .exchange()
+        .expectStatus().isCreated()
+        .expectBody(UserGetDTO.class).returnResult().getResponseBody();
+  }
+
+  @Test
+  void createUser_validInput_userListedAndFound() {
+    // Act
+    UserGetDTO createdUser = createUser("reactive-create");
+
+    // Assert
+    assertNotNull(createdUser.getId());
+    assertEquals(UserStatus.ONLINE, createdUser.getStatus());
+
+    List<UserGetDTO> users = webTestClient.get().uri("/users")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBodyList(UserGetDTO.class).returnResult().getResponseBody();
+    assertTrue(users.stream().anyMatch(user -> user.getId().equals(createdUser.getId())));
+    assertTrue(users.stream().allMatch(user -> user.getToken() == null));
+
+    webTestClient.get().uri("/users/{userId}", createdUser.getId())
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.username").isEqualTo("reactive-create");
+  }
+
+  @Test
+  void createUser_duplicateUsername_returnsConflict() {
+    // Arrange
+    createUser("reactive-duplicate");
+    UserPostDTO userPostDTO = new UserPostDTO();
+    userPostDTO.setUsername("reactive-duplicate");
+    userPostDTO.setPassword("securePassword123");
+
+    // Act & Assert
+    webTestClient.post().uri("/users").bodyValue(userPostDTO)
+        .exchange()
+        .expectStatus().isEqualTo(409);
+  }
+
+  @Test
+  void loginUser_wrongPassword_returnsUnauthorized() {
+    // Arrange
+    createUser("reactive-login");
+    UserPostDTO userPostDTO = new UserPostDTO();
+    userPostDTO.setUsername("reactive-login");
+    userPostDTO.setPassword("wrongPassword");
+
+    // Act & Assert
+    webTestClient.post().uri("/users/login").bodyValue(userPostDTO)
+        .exchange()
+        .expectStatus().isUnauthorized();
+  }
+
+  @Test
+  void updateUser_authenticated_updatesProfile() {
+    // Arrange
+    UserGetDTO createdUser = createUser("reactive-update");
+    UserPutDTO userPutDTO = new UserPutDTO();
+    userPutDTO.setUsername("reactive-updated");
+    userPutDTO.setBirthDate(LocalDate.of(1990, 1, 1));
+
+    // Act
+    webTestClient.put().uri("/users/{userId}", createdUser.getId())
+        .header(HttpHeaders.AUTHORIZATION, "Bearer " + createdUser.getToken())
+        .bodyValue(userPutDTO)
+        .exchange()
+        .expectStatus().isNoContent();
+
+    // Assert
+    webTestClient.get().uri("/users/{userId}", createdUser.getId())
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.username").isEqualTo("reactive-updated")
+        .jsonPath("$.birthDate").isEqualTo("1990-01-01");
+  }
+
+  @Test
+  void updateUser_takenUsername_returnsConflict() {
+    // Arrange
+    createUser("reactive-taken");
+    UserGetDTO createdUser = createUser("reactive-rename");
+    UserPutDTO userPutDTO = new UserPutDTO();
+    userPutDTO.setUsername("reactive-taken");
+
+    // Act & Assert
+    webTestClient.put().uri("/users/{userId}", createdUser.getId())
+        .header(HttpHeaders.AUTHORIZATION, "Bearer " + createdUser.getToken())
+        .bodyValue(userPutDTO)
+        .exchange()
+        .expectStatus().isEqualTo(409);
+  }
+
+  @Test
+  void updateUser_invalidToken_returnsUnauthorized() {
+    // Arrange
+    UserGetDTO createdUser = createUser("reactive-token");
+    UserPutDTO userPutDTO = new UserPutDTO();
+    userPutDTO.setUsername("reactive-token-updated");
+
+    // Act & Assert
+    webTestClient.put().uri("/users/{userId}", createdUser.getId())
+        .header(HttpHeaders.AUTHORIZATION, "Bearer invalid-token")
+        .bodyValue(userPutDTO)
+        .exchange()
+        .expectStatus().isUnauthorized();
+  }
+}
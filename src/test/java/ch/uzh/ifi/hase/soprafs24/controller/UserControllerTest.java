@@ -1,36 +1,70 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
+import ch.uzh.ifi.hase.soprafs24.constant.ImportStatus;
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.UserEventBroadcaster;
+import ch.uzh.ifi.hase.soprafs24.exceptions.TooManyRequestsException;
+import ch.uzh.ifi.hase.soprafs24.repository.UserSummary;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserImportResultDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserSearchResultDTO;
+import ch.uzh.ifi.hase.soprafs24.security.AuthenticatedUser;
+import ch.uzh.ifi.hase.soprafs24.security.LoginThrottle;
+import ch.uzh.ifi.hase.soprafs24.service.PresenceService;
+import ch.uzh.ifi.hase.soprafs24.service.ProfileWriteBuffer;
+import ch.uzh.ifi.hase.soprafs24.service.UserSearchIndex;
+import ch.uzh.ifi.hase.soprafs24.service.UserProfile;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 
@@ -40,24 +74,41 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
  * request without actually sending them over the network.
  * This tests if the UserController works.
  */
-@WebMvcTest(UserController.class)
+@WebMvcTest(controllers = UserController.class, properties = "users.import.batch-size=2")
+@Import(SimpleMeterRegistry.class)
 public class UserControllerTest {
 
   @Autowired
   private MockMvc mockMvc;
 
+  @Autowired
+  private MeterRegistry meterRegistry;
+
   @MockBean
   private UserService userService;
 
+  @MockBean
+  private PresenceService presenceService;
+
+  @MockBean
+  private ProfileWriteBuffer profileWriteBuffer;
+
+  @MockBean
+  private UserEventBroadcaster userEventBroadcaster;
+
+  @MockBean
+  private UserSearchIndex userSearchIndex;
+
+  @MockBean
+  private LoginThrottle loginThrottle;
+
   @Test
   public void givenUsers_whenGetUsers_thenReturnJsonArray() throws Exception {
     // given
-    User user = new User();
-    user.setName("Firstname Lastname");
-    user.setUsername("firstname@lastname");
-    user.setStatus(UserStatus.OFFLINE);
+    UserSummary user = new UserSummary(1L, "Firstname Lastname", "firstname@lastname", UserStatus.OFFLINE,
+        LocalDate.of(2024, 1, 1), null);
 
-    List<User> allUsers = Collections.singletonList(user);
+    List<UserSummary> allUsers = Collections.singletonList(user);
 
     // this mocks the UserService -> we define above what the userService should
     // return when getUsers() is called
@@ -74,6 +125,160 @@ public class UserControllerTest {
         .andExpect(jsonPath("$[0].status", is(user.getStatus().toString())));
   }
 
+  @Test
+  void getUsers_recordsListMappingTime() throws Exception {
+    // Arrange
+    given(userService.getUsers()).willReturn(Collections.singletonList(summary(1L, "first")));
+    long mappings = meterRegistry.get("users.mapping").tag("kind", "list").timer().count();
+
+    // Act
+    mockMvc.perform(get("/users")).andExpect(status().isOk());
+
+    // Assert
+    assertEquals(mappings + 1, meterRegistry.get("users.mapping").tag("kind", "list").timer().count());
+  }
+
+  @Test
+  public void getUsers_withLimit_returnsPageAndNextCursor() throws Exception {
+    // given
+    UserSummary first = summary(4L, "first");
+    UserSummary second = summary(7L, "second");
+
+    given(userService.getUsersAfter(3L, 2)).willReturn(Arrays.asList(first, second));
+
+    // then
+    mockMvc.perform(get("/users").param("after", "3").param("limit", "2"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(2)))
+        .andExpect(jsonPath("$[0].id", is(4)))
+        .andExpect(jsonPath("$[1].id", is(7)))
+        .andExpect(header().string("X-Next-Cursor", "7"));
+  }
+
+  @Test
+  public void getUsers_lastPage_hasNoNextCursor() throws Exception {
+    // given
+    UserSummary user = summary(9L, "last");
+
+    given(userService.getUsersAfter(7L, 2)).willReturn(Collections.singletonList(user));
+
+    // then
+    mockMvc.perform(get("/users").param("after", "7").param("limit", "2"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(header().doesNotExist("X-Next-Cursor"));
+  }
+
+  @Test
+  public void getUsers_invalidLimit_returnsBadRequest() throws Exception {
+    mockMvc.perform(get("/users").param("limit", "0"))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void getUsers_withoutFields_omitsTokens() throws Exception {
+    // given
+    given(userService.getUsers()).willReturn(Collections.singletonList(summary(1L, "first")));
+
+    // then
+    mockMvc.perform(get("/users"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].username", is("first")))
+        .andExpect(jsonPath("$[0].creationDate", is("2024-01-01")))
+        .andExpect(jsonPath("$[0].token").doesNotExist());
+  }
+
+  @Test
+  void getUsers_withFields_returnsRequestedFieldsOnly() throws Exception {
+    // given
+    given(userService.getUsersAfter(null, 2)).willReturn(Collections.singletonList(summary(4L, "first")));
+
+    // then
+    mockMvc.perform(get("/users").param("limit", "2").param("fields", "id,username"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].id", is(4)))
+        .andExpect(jsonPath("$[0].username", is("first")))
+        .andExpect(jsonPath("$[0].name").doesNotExist())
+        .andExpect(jsonPath("$[0].status").doesNotExist())
+        .andExpect(jsonPath("$[0].creationDate").doesNotExist());
+  }
+
+  @Test
+  void getUsers_unknownFieldOrToken_returnsBadRequest() throws Exception {
+    mockMvc.perform(get("/users").param("fields", "id,password"))
+        .andExpect(status().isBadRequest());
+    mockMvc.perform(get("/users").param("fields", "id,token"))
+        .andExpect(status().isBadRequest());
+    verify(userService, never()).getUsers();
+  }
+
+  @Test
+  void getUsers_acceptCbor_returnsCbor() throws Exception {
+    // given
+    given(userService.getUsers()).willReturn(Collections.singletonList(summary(1L, "first")));
+
+    // when
+    MvcResult result = mockMvc.perform(get("/users").param("fields", "username")
+            .accept(MediaType.APPLICATION_CBOR))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+        .andExpect(header().stringValues("Vary", hasItem("Accept")))
+        .andReturn();
+
+    // then
+    JsonNode users = new CBORMapper().readTree(result.getResponse().getContentAsByteArray());
+    assertEquals(1, users.size());
+    assertEquals("first", users.get(0).get("username").asText());
+    assertEquals(1, users.get(0).size());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void getUsers_streamMode_writesJsonArray() throws Exception {
+    // given
+    UserSummary first = summary(1L, "first");
+    UserSummary second = summary(2L, "second");
+
+    doAnswer(invocation -> {
+      Consumer<UserSummary> consumer = invocation.getArgument(0);
+      consumer.accept(first);
+      consumer.accept(second);
+      return null;
+    }).when(userService).forEachUser(any());
+
+    // when
+    MvcResult result = mockMvc.perform(get("/users").param("stream", "true"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    // then
+    mockMvc.perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(2)))
+        .andExpect(jsonPath("$[0].username", is("first")))
+        .andExpect(jsonPath("$[1].username", is("second")));
+  }
+
+  @Test
+  void subscribeToUserEvents_streamsServerSentEvents() throws Exception {
+    // given
+    SseEmitter emitter = new SseEmitter();
+    given(userEventBroadcaster.subscribe()).willReturn(emitter);
+
+    MvcResult result = mockMvc.perform(get("/users/events").accept(MediaType.TEXT_EVENT_STREAM))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    // when
+    emitter.send(SseEmitter.event().name("OFFLINE").data("{\"id\":1}"));
+    emitter.complete();
+
+    // then
+    mockMvc.perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().string(containsString("event:OFFLINE")));
+  }
+
   @Test
   public void createUser_validInput_userCreated() throws Exception {
     // given
@@ -103,6 +308,79 @@ public class UserControllerTest {
         .andExpect(jsonPath("$.token", is(user.getToken())));
   }
 
+  @Test
+  void getUsernameAvailability_freeUsername_returnsAvailable() throws Exception {
+    // Arrange
+    when(userService.isUsernameAvailable("newUser")).thenReturn(true);
+
+    // Act & Assert
+    mockMvc.perform(get("/users/availability").param("username", "newUser"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.username", is("newUser")))
+        .andExpect(jsonPath("$.available", is(true)));
+  }
+
+  @Test
+  void getUsernameAvailability_blankUsername_returns400() throws Exception {
+    // Act & Assert
+    mockMvc.perform(get("/users/availability").param("username", " "))
+        .andExpect(status().isBadRequest());
+    verify(userService, never()).isUsernameAvailable(any());
+  }
+
+  @Test
+  void createUser_retriedWithIdempotencyKey_createsUserOnce() throws Exception {
+    // Arrange
+    User user = new User();
+    user.setId(1L);
+    user.setUsername("retryUser");
+    user.setStatus(UserStatus.ONLINE);
+    given(userService.createUser(Mockito.any())).willReturn(user);
+    UserPostDTO userPostDTO = new UserPostDTO();
+    userPostDTO.setUsername("retryUser");
+    userPostDTO.setPassword("password");
+
+    // Act
+    for (int attempt = 0; attempt < 2; attempt++) {
+      mockMvc.perform(post("/users")
+          .header(IdempotencyFilter.IDEMPOTENCY_KEY, "create-retryUser")
+          .contentType(MediaType.APPLICATION_JSON)
+          .content(asJsonString(userPostDTO)))
+          .andExpect(status().isCreated())
+          .andExpect(jsonPath("$.username", is("retryUser")));
+    }
+
+    // Assert
+    verify(userService, Mockito.times(1)).createUser(Mockito.any());
+  }
+
+  @Test
+  void createUser_conflictRetriedWithIdempotencyKey_replaysConflict() throws Exception {
+    // Arrange
+    given(userService.createUser(any()))
+        .willThrow(new ResponseStatusException(HttpStatus.CONFLICT, "Username exists"));
+    UserPostDTO userPostDTO = new UserPostDTO();
+    userPostDTO.setUsername("existingUser");
+    userPostDTO.setPassword("password123");
+
+    // Act
+    mockMvc.perform(post("/users")
+        .header(IdempotencyFilter.IDEMPOTENCY_KEY, "create-existingUser")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(asJsonString(userPostDTO)))
+        .andExpect(status().isConflict());
+    mockMvc.perform(post("/users")
+        .header(IdempotencyFilter.IDEMPOTENCY_KEY, "create-existingUser")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(asJsonString(userPostDTO)))
+        .andExpect(status().isConflict())
+        .andExpect(status().reason("Username exists"))
+        .andExpect(header().string(IdempotencyFilter.REPLAYED, "true"));
+
+    // Assert
+    verify(userService, Mockito.times(1)).createUser(Mockito.any());
+  }
+
   /**
    * Helper Method to convert userPostDTO into a JSON string such that the input
    * can be processed
@@ -119,6 +397,77 @@ public class UserControllerTest {
     }
   }
 
+  private static UserSummary summary(Long id, String username) {
+    return new UserSummary(id, "Test User", username, UserStatus.OFFLINE, LocalDate.of(2024, 1, 1), null);
+  }
+
+  @Test
+  public void importUsers_ndjsonBody_reportsResultPerLine() throws Exception {
+    // given
+    given(userService.importUsers(any())).willAnswer(invocation -> {
+      List<User> users = invocation.getArgument(0);
+      return users.stream().map(user -> {
+        UserImportResultDTO result = new UserImportResultDTO();
+        result.setUsername(user.getUsername());
+        result.setStatus(ImportStatus.CREATED);
+        return result;
+      }).collect(Collectors.toList());
+    });
+
+    String body = "{\"username\": \"first\", \"password\": \"pw\"}\n"
+        + "not json\n"
+        + "\n"
+        + "{\"username\": \"second\", \"password\": \"pw\"}\n";
+
+    // then
+    mockMvc.perform(post("/users/import")
+        .contentType(MediaType.APPLICATION_NDJSON)
+        .content(body))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(3)))
+        .andExpect(jsonPath("$[0].line", is(1)))
+        .andExpect(jsonPath("$[0].username", is("first")))
+        .andExpect(jsonPath("$[0].status", is("CREATED")))
+        .andExpect(jsonPath("$[1].line", is(2)))
+        .andExpect(jsonPath("$[1].status", is("INVALID")))
+        .andExpect(jsonPath("$[2].line", is(4)))
+        .andExpect(jsonPath("$[2].username", is("second")));
+  }
+
+  @Test
+  void importUsers_batchFails_reportsEarlierBatchesAndFailedLines() throws Exception {
+    // given
+    given(userService.importUsers(any())).willAnswer(invocation -> {
+      List<User> users = invocation.getArgument(0);
+      return users.stream().map(user -> {
+        UserImportResultDTO result = new UserImportResultDTO();
+        result.setUsername(user.getUsername());
+        result.setStatus(ImportStatus.CREATED);
+        return result;
+      }).collect(Collectors.toList());
+    }).willThrow(new IllegalStateException("connection lost"));
+
+    String body = "{\"username\": \"first\", \"password\": \"pw\"}\n"
+        + "{\"username\": \"second\", \"password\": \"pw\"}\n"
+        + "{\"username\": \"third\", \"password\": \"pw\"}\n"
+        + "{\"username\": \"fourth\", \"password\": \"pw\"}\n"
+        + "{\"username\": \"fifth\", \"password\": \"pw\"}\n";
+
+    // then
+    mockMvc.perform(post("/users/import")
+        .contentType(MediaType.APPLICATION_NDJSON)
+        .content(body))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(4)))
+        .andExpect(jsonPath("$[1].username", is("second")))
+        .andExpect(jsonPath("$[1].status", is("CREATED")))
+        .andExpect(jsonPath("$[2].line", is(3)))
+        .andExpect(jsonPath("$[2].username", is("third")))
+        .andExpect(jsonPath("$[2].status", is("FAILED")))
+        .andExpect(jsonPath("$[3].status", is("FAILED")));
+    verify(userService, Mockito.times(2)).importUsers(any());
+  }
+
   @Test
   public void createUser_duplicateUsername_throwsException() throws Exception {
     // Given
@@ -170,13 +519,90 @@ public class UserControllerTest {
         .andExpect(jsonPath("$.creationDate").exists());
   }
 
+  @Test
+  void loginUser_staleBearerToken_logsIn() throws Exception {
+    // Given
+    User user = new User();
+    user.setId(1L);
+    user.setUsername("testUser");
+    user.setToken("new-token");
+    user.setStatus(UserStatus.ONLINE);
+    UserPostDTO userPostDTO = new UserPostDTO();
+    userPostDTO.setUsername("testUser");
+    userPostDTO.setPassword("password123");
+
+    given(userService.authenticate("stale-token")).willReturn(null);
+    given(userService.loginUser("testUser", "password123")).willReturn(user);
+
+    // When/Then
+    mockMvc.perform(post("/users/login")
+        .header("Authorization", "Bearer stale-token")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(asJsonString(userPostDTO)))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.token", is("new-token")));
+  }
+
+  @Test
+  void loginUser_hashingPoolSaturated_returns503WithRetryAfter() throws Exception {
+    // Given
+    UserPostDTO userPostDTO = new UserPostDTO();
+    userPostDTO.setUsername("testUser");
+    userPostDTO.setPassword("password123");
+
+    given(userService.loginUser("testUser", "password123")).willThrow(new RejectedExecutionException());
+
+    // When/Then
+    mockMvc.perform(post("/users/login")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(asJsonString(userPostDTO)))
+        .andExpect(status().isServiceUnavailable())
+        .andExpect(header().exists("Retry-After"));
+  }
+
+  @Test
+  void loginUser_throttled_returns429WithRetryAfterWithoutLogin() throws Exception {
+    // Given
+    UserPostDTO userPostDTO = new UserPostDTO();
+    userPostDTO.setUsername("testUser");
+    userPostDTO.setPassword("password123");
+
+    doThrow(new TooManyRequestsException("Too many login attempts", 5))
+        .when(loginThrottle).acquire(any(), eq("testUser"));
+
+    // When/Then
+    mockMvc.perform(post("/users/login")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(asJsonString(userPostDTO)))
+        .andExpect(status().isTooManyRequests())
+        .andExpect(header().string("Retry-After", "5"));
+    verify(userService, never()).loginUser(any(), any());
+  }
+
+  @Test
+  void heartbeat_loggedOutUser_returns401() throws Exception {
+    // Arrange
+    doThrow(new ResponseStatusException(HttpStatus.UNAUTHORIZED)).when(userService).heartbeat(1L);
+
+    // Act & Assert
+    mockMvc.perform(post("/users/1/heartbeat"))
+        .andExpect(status().isUnauthorized());
+  }
+
+  @Test
+  void heartbeat_onlineUser_returns204() throws Exception {
+    // Act & Assert
+    mockMvc.perform(post("/users/1/heartbeat"))
+        .andExpect(status().isNoContent());
+  }
+
   @Test
   void getUser_validId_returnsUser() throws Exception {
     // Arrange
-    User user = new User();
+    UserGetDTO user = new UserGetDTO();
     user.setId(1L);
     user.setUsername("testuser");
-    when(userService.getUserById(1L)).thenReturn(user);
+    when(userService.getUserProfile(1L)).thenReturn(new UserProfile(user, "3.ONLINE"));
 
     // Act & Assert
     mockMvc.perform(get("/users/1")
@@ -186,10 +612,37 @@ public class UserControllerTest {
         .andExpect(jsonPath("$.username").value("testuser"));
   }
 
+  @Test
+  void getUser_validBearerToken_returnsUser() throws Exception {
+    // Arrange
+    UserGetDTO user = new UserGetDTO();
+    user.setId(1L);
+    user.setUsername("testuser");
+    when(userService.authenticate("valid-token")).thenReturn(new AuthenticatedUser(1L, "testuser"));
+    when(userService.getUserProfile(1L)).thenReturn(new UserProfile(user, "3.ONLINE"));
+
+    // Act & Assert
+    mockMvc.perform(get("/users/1")
+        .header("Authorization", "Bearer valid-token"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.id").value(1));
+  }
+
+  @Test
+  void getUser_invalidBearerToken_returns401() throws Exception {
+    // Arrange
+    when(userService.authenticate("invalid-token")).thenReturn(null);
+
+    // Act & Assert
+    mockMvc.perform(get("/users/1")
+        .header("Authorization", "Bearer invalid-token"))
+        .andExpect(status().isUnauthorized());
+  }
+
   @Test
   void getUser_invalidId_returns404() throws Exception {
     // Arrange
-    when(userService.getUserById(999L))
+    when(userService.getUserProfile(999L))
         .thenThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
 
     // Act & Assert
@@ -201,7 +654,7 @@ public class UserControllerTest {
   void updateUser_nonExistingUser_returns404() throws Exception {
     // Arrange
     doThrow(new ResponseStatusException(HttpStatus.NOT_FOUND))
-        .when(userService).updateUser(eq(999L), any());
+        .when(userService).updateUser(eq(999L), any(), any());
 
     // Act & Assert
     mockMvc.perform(put("/users/999")
@@ -210,4 +663,80 @@ public class UserControllerTest {
         .andExpect(status().isNotFound());
   }
 
-}
\ No newline at end of file
+  @Test
+  void getUser_matchingIfNoneMatch_returns304WithoutBody() throws Exception {
+    // Arrange
+    UserGetDTO user = new UserGetDTO();
+    user.setId(1L);
+    user.setUsername("testuser");
+    when(userService.getUserProfile(1L)).thenReturn(new UserProfile(user, "3.ONLINE"));
+
+    // Act & Assert
+    mockMvc.perform(get("/users/1").header("If-None-Match", "\"3.ONLINE\""))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string("ETag", "\"3.ONLINE\""))
+        .andExpect(header().stringValues("Vary", hasItem("Accept")))
+        .andExpect(content().string(""));
+    verify(userService, Mockito.times(1)).getUserProfile(1L);
+  }
+
+  @Test
+  void getUser_staleIfNoneMatch_returnsUserWithETag() throws Exception {
+    // Arrange
+    UserGetDTO user = new UserGetDTO();
+    user.setId(1L);
+    user.setUsername("testuser");
+    when(userService.getUserProfile(1L)).thenReturn(new UserProfile(user, "4.ONLINE"));
+
+    // Act & Assert
+    mockMvc.perform(get("/users/1").header("If-None-Match", "\"3.ONLINE\""))
+        .andExpect(status().isOk())
+        .andExpect(header().string("ETag", "\"4.ONLINE\""))
+        .andExpect(header().stringValues("Vary", hasItem("Accept")))
+        .andExpect(jsonPath("$.username", is("testuser")));
+  }
+
+  @Test
+  void getAllUsers_unchangedList_returns304() throws Exception {
+    // Arrange
+    when(userService.getUsersVersion()).thenReturn("2.5.abc.7");
+
+    // Act & Assert
+    mockMvc.perform(get("/users").header("If-None-Match", "\"2.5.abc.7\""))
+        .andExpect(status().isNotModified())
+        .andExpect(header().stringValues("Vary", hasItem("Accept")));
+    verify(userService, never()).getUsers();
+  }
+
+  @Test
+  void updateUser_ifMatch_passesExpectedVersion() throws Exception {
+    // Act & Assert
+    mockMvc.perform(put("/users/1")
+        .header("If-Match", "\"3.ONLINE\"")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{}"))
+        .andExpect(status().isNoContent());
+    verify(userService).updateUser(eq(1L), any(), eq(3L));
+  }
+
+  @Test
+  void searchUsers_returnsPageOfMatches() throws Exception {
+    // Arrange
+    given(userSearchIndex.search("ann", 10, 5))
+        .willReturn(Collections.singletonList(new UserSearchResultDTO(3L, "anna", "Anna Muster")));
+
+    // Act & Assert
+    mockMvc.perform(get("/users/search").param("q", "ann").param("offset", "10").param("limit", "5"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].id", is(3)))
+        .andExpect(jsonPath("$[0].username", is("anna")))
+        .andExpect(jsonPath("$[0].name", is("Anna Muster")));
+  }
+
+  @Test
+  void searchUsers_pageBeyondMaxResults_returnsBadRequest() throws Exception {
+    mockMvc.perform(get("/users/search").param("q", "ann").param("offset", "995").param("limit", "10"))
+        .andExpect(status().isBadRequest());
+  }
+}
@@ -0,0 +1,73 @@
+package ch.uzh.ifi.hase.soprafs24.event;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserEventBroadcasterTest {
+
+  private MeterRegistry meterRegistry;
+
+  @BeforeEach
+  void setup() {
+    meterRegistry = new SimpleMeterRegistry();
+  }
+
+  @Test
+  void onUserChanged_subscriberKeepsUp_staysSubscribed() {
+    // Arrange: events are sent right away
+    UserEventBroadcaster broadcaster = new UserEventBroadcaster(Runnable::run, 2, 10, Duration.ofMinutes(1),
+        meterRegistry);
+    broadcaster.subscribe();
+
+    // Act
+    for (long id = 0; id < 10; id++) {
+      broadcaster.onUserChanged(UserChangedEvent.presence(id, UserStatus.ONLINE));
+    }
+
+    // Assert
+    assertEquals(1, broadcaster.getSubscriberCount());
+    assertEquals(0, meterRegistry.counter("users.events.dropped").count());
+  }
+
+  @Test
+  void onUserChanged_bufferFull_dropsSubscriber() {
+    // Arrange: the sender never runs, so the buffer fills up
+    List<Runnable> pendingSends = new ArrayList<>();
+    UserEventBroadcaster broadcaster = new UserEventBroadcaster(pendingSends::add, 2, 10, Duration.ofMinutes(1),
+        meterRegistry);
+    broadcaster.subscribe();
+
+    // Act
+    broadcaster.onUserChanged(UserChangedEvent.presence(1L, UserStatus.ONLINE));
+    broadcaster.onUserChanged(UserChangedEvent.presence(2L, UserStatus.ONLINE));
+    broadcaster.onUserChanged(UserChangedEvent.presence(3L, UserStatus.ONLINE));
+
+    // Assert
+    assertEquals(1, pendingSends.size());
+    assertEquals(0, broadcaster.getSubscriberCount());
+    assertEquals(1, meterRegistry.counter("users.events.dropped").count());
+  }
+
+  @Test
+  void subscribe_tooManySubscribers_throwsServiceUnavailable() {
+    // Arrange
+    UserEventBroadcaster broadcaster = new UserEventBroadcaster(Runnable::run, 2, 1, Duration.ofMinutes(1),
+        meterRegistry);
+    broadcaster.subscribe();
+
+    // Act & Assert
+    ResponseStatusException exception = assertThrows(ResponseStatusException.class, broadcaster::subscribe);
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getStatus());
+  }
+}
@@ -0,0 +1,93 @@
+package ch.uzh.ifi.hase.soprafs24.journal;
+
+import ch.uzh.ifi.hase.soprafs24.constant.AuditEventType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditJournalTest {
+
+  @TempDir
+  Path directory;
+
+  private AuditJournal openJournal() {
+    return new AuditJournal(true, directory.toString(), DataSize.ofKilobytes(64), 1024, Duration.ofMillis(10),
+        new SimpleMeterRegistry());
+  }
+
+  @Test
+  void record_isWrittenAndReplayedAfterClose() {
+    // Arrange
+    AuditJournal journal = openJournal();
+
+    // Act
+    journal.record(AuditEventType.CREATED, 1L, "anna");
+    journal.record(AuditEventType.LOGIN, 1L, "anna");
+    journal.record(AuditEventType.LOGOUT, 1L, null);
+    journal.close();
+
+    // Assert
+    List<AuditRecord> records = new ArrayList<>();
+    assertEquals(3, openJournal().replay(1, records::add));
+    assertEquals(List.of(AuditEventType.CREATED, AuditEventType.LOGIN, AuditEventType.LOGOUT),
+        List.of(records.get(0).getType(), records.get(1).getType(), records.get(2).getType()));
+    assertNull(records.get(2).getUsername());
+  }
+
+  @Test
+  void record_toIdleWriter_wakesItUp() throws Exception {
+    // Arrange: the writer would otherwise only wake up for the next force
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    AuditJournal journal = new AuditJournal(true, directory.toString(), DataSize.ofKilobytes(64), 1024,
+        Duration.ofMinutes(1), meterRegistry);
+    Thread.sleep(50);
+
+    try {
+      // Act
+      journal.record(AuditEventType.LOGIN, 1L, "anna");
+
+      // Assert
+      long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+      while (meterRegistry.get("journal.records.written").counter().count() < 1 && System.nanoTime() < deadline) {
+        Thread.sleep(1);
+      }
+      assertEquals(1, meterRegistry.get("journal.records.written").counter().count());
+    } finally {
+      journal.close();
+    }
+  }
+
+  @Test
+  void record_withinTransaction_waitsForTheCommit() {
+    // Arrange
+    AuditJournal journal = openJournal();
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      // Act
+      journal.record(AuditEventType.UPDATED, 2L, "bob");
+      journal.record(AuditEventType.UPDATED, 3L, "carla");
+      List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+      // the first transaction commits, the second one rolls back
+      synchronizations.get(0).afterCommit();
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    journal.close();
+
+    // Assert
+    List<AuditRecord> records = new ArrayList<>();
+    journal.replay(1, records::add);
+    assertEquals(1, records.size());
+    assertEquals(2L, records.get(0).getUserId());
+  }
+}
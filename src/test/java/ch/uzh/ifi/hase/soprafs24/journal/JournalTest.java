@@ -0,0 +1,120 @@
+package ch.uzh.ifi.hase.soprafs24.journal;
+
+import ch.uzh.ifi.hase.soprafs24.constant.AuditEventType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalTest {
+
+  // room for a few dozen records per segment
+  private static final int SEGMENT_SIZE = 2048;
+
+  @TempDir
+  Path directory;
+
+  private static AuditRecord record(long userId) {
+    return new AuditRecord(0, 1_700_000_000_000L + userId, AuditEventType.LOGIN, userId, "user-" + userId);
+  }
+
+  private List<AuditRecord> replay(long fromSequence) throws IOException {
+    List<AuditRecord> records = new ArrayList<>();
+    new JournalReader(directory).replay(fromSequence, records::add);
+    return records;
+  }
+
+  @Test
+  void append_manyRecords_rollsOverSegmentsAndReplaysInOrder() throws IOException {
+    // Arrange & Act
+    try (JournalWriter writer = new JournalWriter(directory, SEGMENT_SIZE)) {
+      for (long userId = 1; userId <= 200; userId++) {
+        assertEquals(userId, writer.append(record(userId)));
+      }
+    }
+
+    // Assert
+    assertTrue(new JournalReader(directory).segments().size() > 1);
+    List<AuditRecord> records = replay(1);
+    assertEquals(200, records.size());
+    for (int i = 0; i < records.size(); i++) {
+      AuditRecord record = records.get(i);
+      assertEquals(i + 1, record.getSequence());
+      assertEquals(i + 1, record.getUserId());
+      assertEquals(AuditEventType.LOGIN, record.getType());
+      assertEquals("user-" + (i + 1), record.getUsername());
+      assertEquals(1_700_000_000_000L + i + 1, record.getTimestamp());
+    }
+  }
+
+  @Test
+  void replay_fromSequence_skipsEarlierRecords() throws IOException {
+    // Arrange
+    try (JournalWriter writer = new JournalWriter(directory, SEGMENT_SIZE)) {
+      for (long userId = 1; userId <= 200; userId++) {
+        writer.append(record(userId));
+      }
+    }
+
+    // Act
+    List<AuditRecord> records = replay(150);
+
+    // Assert
+    assertEquals(51, records.size());
+    assertEquals(150, records.get(0).getSequence());
+    assertEquals(200, new JournalReader(directory).lastSequence());
+  }
+
+  @Test
+  void newWriter_continuesAfterTheLastRecord() throws IOException {
+    // Arrange
+    try (JournalWriter writer = new JournalWriter(directory, SEGMENT_SIZE)) {
+      writer.append(record(1));
+      writer.append(record(2));
+    }
+
+    // Act
+    try (JournalWriter writer = new JournalWriter(directory, SEGMENT_SIZE)) {
+      assertEquals(3, writer.append(record(3)));
+    }
+
+    // Assert
+    List<AuditRecord> records = replay(1);
+    assertEquals(3, records.size());
+    assertEquals(3, records.get(2).getUserId());
+  }
+
+  @Test
+  void replay_corruptRecord_endsItsSegmentOnly() throws IOException {
+    // Arrange
+    try (JournalWriter writer = new JournalWriter(directory, SEGMENT_SIZE)) {
+      for (long userId = 1; userId <= 200; userId++) {
+        writer.append(record(userId));
+      }
+    }
+    Path firstSegment = new JournalReader(directory).segments().get(0);
+    Path secondSegment = new JournalReader(directory).segments().get(1);
+    try (FileChannel channel = FileChannel.open(firstSegment, StandardOpenOption.WRITE)) {
+      // a byte in the username of the third record
+      int offset = JournalFormat.SEGMENT_HEADER_SIZE + 2 * JournalFormat.recordSize("user-1".getBytes()) + 40;
+      channel.write(ByteBuffer.wrap(new byte[] { 'X' }), offset);
+    }
+
+    // Act
+    List<AuditRecord> records = replay(1);
+
+    // Assert
+    assertEquals(1, records.get(0).getSequence());
+    assertEquals(2, records.get(1).getSequence());
+    assertEquals(JournalFormat.firstSequenceOf(secondSegment), records.get(2).getSequence());
+    assertEquals(200, records.get(records.size() - 1).getSequence());
+  }
+}
@@ -0,0 +1,83 @@
+package ch.uzh.ifi.hase.soprafs24.journal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MpscRingBufferTest {
+
+  @Test
+  void offer_full_returnsFalseUntilPolled() {
+    // Arrange
+    MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(buffer.offer(i));
+    }
+
+    // Act & Assert
+    assertFalse(buffer.offer(4));
+    assertEquals(0, buffer.poll());
+    assertTrue(buffer.offer(4));
+    assertEquals(List.of(1, 2, 3, 4), List.of(buffer.poll(), buffer.poll(), buffer.poll(), buffer.poll()));
+    assertNull(buffer.poll());
+  }
+
+  @Test
+  void offer_concurrentProducers_everyElementIsPolledOnce() throws InterruptedException {
+    // Arrange
+    MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(1024);
+    int producers = 4;
+    int perProducer = 50_000;
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      int first = p * perProducer;
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int i = first; i < first + perProducer; i++) {
+          while (!buffer.offer(i)) {
+            Thread.onSpinWait();
+          }
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    // Act
+    start.countDown();
+    Set<Integer> polled = new HashSet<>();
+    int[] lastOfProducer = new int[producers];
+    Arrays.fill(lastOfProducer, -1);
+    while (polled.size() < producers * perProducer) {
+      Integer element = buffer.poll();
+      if (element == null) {
+        Thread.onSpinWait();
+        continue;
+      }
+      assertTrue(polled.add(element), "polled twice: " + element);
+      // the elements of one producer keep their order
+      int producer = element / perProducer;
+      assertTrue(element > lastOfProducer[producer]);
+      lastOfProducer[producer] = element;
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    // Assert
+    assertNull(buffer.poll());
+    assertEquals(0, buffer.size());
+  }
+}
@@ -2,12 +2,15 @@ package ch.uzh.ifi.hase.soprafs24.repository;
 
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.hibernate.Session;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
 
 import java.time.LocalDate;
+import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -107,4 +110,61 @@ public class UserRepositoryIntegrationTest {
     assertNotNull(saved.getToken());
     assertEquals(LocalDate.now(), saved.getCreationDate());
   }
+
+  @Test
+  public void findSummariesByIdGreaterThan_returnsNextPageOrderedById() {
+    // Arrange
+    User first = createValidUser();
+    first.setUsername("first");
+    User second = createValidUser();
+    second.setUsername("second");
+    User third = createValidUser();
+    third.setUsername("third");
+    entityManager.persist(first);
+    entityManager.persist(second);
+    entityManager.persist(third);
+    entityManager.flush();
+
+    // Act
+    List<UserSummary> page = userRepository.findSummariesByIdGreaterThan(first.getId(), PageRequest.of(0, 1));
+
+    // Assert
+    assertEquals(1, page.size());
+    assertEquals("second", page.get(0).getUsername());
+  }
+
+  @Test
+  public void findExistingUsernames_returnsOnlyTakenUsernames() {
+    // Arrange
+    User user = createValidUser();
+    user.setUsername("taken");
+    entityManager.persistAndFlush(user);
+
+    // Act
+    List<String> existing = userRepository.findExistingUsernames(List.of("taken", "free"));
+
+    // Assert
+    assertEquals(List.of("taken"), existing);
+  }
+
+  @Test
+  public void findAllSummaries_returnsApiColumnsWithoutManagedEntities() {
+    // Arrange
+    User user = createValidUser();
+    user.setBirthDate(LocalDate.of(2000, 5, 15));
+    entityManager.persistAndFlush(user);
+    entityManager.clear();
+
+    // Act
+    List<UserSummary> summaries = userRepository.findAllSummaries();
+
+    // Assert
+    assertEquals(1, summaries.size());
+    UserSummary summary = summaries.get(0);
+    assertEquals(user.getId(), summary.getId());
+    assertEquals("testuser", summary.getUsername());
+    assertEquals(user.getName(), summary.getName());
+    assertEquals(LocalDate.of(2000, 5, 15), summary.getBirthDate());
+    assertEquals(0, entityManager.getEntityManager().unwrap(Session.class).getStatistics().getEntityCount());
+  }
 }
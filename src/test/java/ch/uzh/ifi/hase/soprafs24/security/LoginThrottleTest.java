@@ -0,0 +1,77 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.exceptions.TooManyRequestsException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LoginThrottleTest {
+
+  private Clock clock;
+  private SimpleMeterRegistry meterRegistry;
+
+  private LoginThrottle loginThrottle;
+
+  @BeforeEach
+  void setup() {
+    clock = mock(Clock.class);
+    when(clock.millis()).thenReturn(0L);
+    meterRegistry = new SimpleMeterRegistry();
+    // 3 attempts per address (one more per second), 2 per username (one more per 10 seconds)
+    loginThrottle = new LoginThrottle(3, Duration.ofSeconds(1), 2, Duration.ofSeconds(10), 100, meterRegistry,
+        clock);
+  }
+
+  @Test
+  void acquire_addressExhausted_throwsTooManyRequestsWithRetryAfter() {
+    // Arrange
+    loginThrottle.acquire("10.0.0.1", "anna");
+    loginThrottle.acquire("10.0.0.1", "bob");
+    loginThrottle.acquire("10.0.0.1", "carla");
+
+    // Act & Assert
+    TooManyRequestsException exception = assertThrows(TooManyRequestsException.class,
+        () -> loginThrottle.acquire("10.0.0.1", "dave"));
+    assertEquals(1, exception.getRetryAfterSeconds());
+    assertEquals("1", exception.getResponseHeaders().getFirst("Retry-After"));
+    assertEquals(1.0, meterRegistry.counter("auth.login.throttled", "key", "address").count());
+    // another address is not affected
+    assertDoesNotThrow(() -> loginThrottle.acquire("10.0.0.2", "dave"));
+  }
+
+  @Test
+  void acquire_usernameExhausted_isRejectedFromAnyAddress() {
+    // Arrange
+    loginThrottle.acquire("10.0.0.1", "anna");
+    loginThrottle.acquire("10.0.0.2", "Anna");
+
+    // Act & Assert
+    TooManyRequestsException exception = assertThrows(TooManyRequestsException.class,
+        () -> loginThrottle.acquire("10.0.0.3", "anna"));
+    assertEquals(10, exception.getRetryAfterSeconds());
+    assertEquals(1.0, meterRegistry.counter("auth.login.throttled", "key", "username").count());
+  }
+
+  @Test
+  void acquire_afterRefillInterval_earnsAnAttemptBack() {
+    // Arrange
+    for (int i = 0; i < 3; i++) {
+      loginThrottle.acquire("10.0.0.1", null);
+    }
+    assertThrows(TooManyRequestsException.class, () -> loginThrottle.acquire("10.0.0.1", null));
+
+    // Act
+    when(clock.millis()).thenReturn(1000L);
+
+    // Assert
+    assertDoesNotThrow(() -> loginThrottle.acquire("10.0.0.1", null));
+    assertThrows(TooManyRequestsException.class, () -> loginThrottle.acquire("10.0.0.1", null));
+  }
+}
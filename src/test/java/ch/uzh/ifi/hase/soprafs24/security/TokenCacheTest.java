@@ -0,0 +1,57 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserChangeType;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserEventDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenCacheTest {
+
+  private TokenCache tokenCache;
+
+  @BeforeEach
+  void setup() {
+    tokenCache = new TokenCache(100, Duration.ofMinutes(10));
+  }
+
+  @Test
+  void onUserChanged_renamed_invalidatesTheTokensOfTheUserOnly() {
+    // Arrange
+    tokenCache.get("token-7a", token -> new AuthenticatedUser(7L, "before"));
+    tokenCache.put("token-7b", new AuthenticatedUser(7L, "before"));
+    tokenCache.put("token-8", new AuthenticatedUser(8L, "other"));
+
+    // Act
+    tokenCache.onUserChanged(change(UserChangeType.UPDATED, 7L));
+
+    // Assert
+    assertNull(tokenCache.getIfPresent("token-7a"));
+    assertNull(tokenCache.getIfPresent("token-7b"));
+    assertNotNull(tokenCache.getIfPresent("token-8"));
+    assertEquals("after", tokenCache.get("token-7a", token -> new AuthenticatedUser(7L, "after")).getUsername());
+  }
+
+  @Test
+  void onUserChanged_presence_keepsTheTokens() {
+    // Arrange
+    tokenCache.put("token-7", new AuthenticatedUser(7L, "name"));
+
+    // Act
+    tokenCache.onUserChanged(change(UserChangeType.OFFLINE, 7L));
+
+    // Assert
+    assertNotNull(tokenCache.getIfPresent("token-7"));
+  }
+
+  private static UserChangedEvent change(UserChangeType type, Long userId) {
+    UserEventDTO change = new UserEventDTO();
+    change.setType(type);
+    change.setId(userId);
+    return new UserChangedEvent(change);
+  }
+}
@@ -0,0 +1,82 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+  @Test
+  void mightContain_addedValues_neverFalseNegative() {
+    // Arrange
+    BloomFilter filter = new BloomFilter(100_000, 0.01);
+
+    // Act
+    for (int i = 0; i < 100_000; i++) {
+      filter.put("user-" + i);
+    }
+
+    // Assert
+    for (int i = 0; i < 100_000; i++) {
+      assertTrue(filter.mightContain("user-" + i));
+    }
+  }
+
+  @Test
+  void mightContain_otherValues_falsePositiveRateAsSized() {
+    // Arrange
+    BloomFilter filter = new BloomFilter(100_000, 0.01);
+    for (int i = 0; i < 100_000; i++) {
+      filter.put("user-" + i);
+    }
+
+    // Act
+    int falsePositives = 0;
+    for (int i = 0; i < 100_000; i++) {
+      if (filter.mightContain("other-" + i)) {
+        falsePositives++;
+      }
+    }
+
+    // Assert
+    double measured = falsePositives / 100_000.0;
+    assertTrue(measured < 0.0125, "measured false positive rate " + measured);
+    assertEquals(0.01, filter.expectedFalsePositiveRate(), 0.002);
+    assertEquals(7, filter.hashCount());
+  }
+
+  @Test
+  void put_concurrently_keepsAllValues() throws Exception {
+    // Arrange
+    BloomFilter filter = new BloomFilter(80_000, 0.01);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    // Act
+    List<Future<?>> writers = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      int thread = t;
+      writers.add(executor.submit(() -> {
+        for (int i = 0; i < 20_000; i++) {
+          filter.put("user-" + thread + "-" + i);
+        }
+      }));
+    }
+    for (Future<?> writer : writers) {
+      writer.get();
+    }
+    executor.shutdown();
+
+    // Assert
+    for (int t = 0; t < 4; t++) {
+      for (int i = 0; i < 20_000; i++) {
+        assertTrue(filter.mightContain("user-" + t + "-" + i));
+      }
+    }
+  }
+}
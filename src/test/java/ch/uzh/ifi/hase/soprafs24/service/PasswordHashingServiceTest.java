@@ -0,0 +1,125 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHashingServiceTest {
+
+  private MeterRegistry meterRegistry;
+
+  private PasswordHashingService passwordHashingService;
+
+  @BeforeEach
+  void setup() {
+    meterRegistry = new SimpleMeterRegistry();
+    passwordHashingService = new PasswordHashingService(new BCryptPasswordEncoder(4), 2, 4, meterRegistry);
+  }
+
+  @AfterEach
+  void tearDown() {
+    passwordHashingService.shutdown();
+  }
+
+  @Test
+  void encode_thenMatches_verifiesOnlyTheOriginalPassword() {
+    // Act
+    String hash = passwordHashingService.encode("secret");
+
+    // Assert
+    assertNotEquals("secret", hash);
+    assertTrue(passwordHashingService.matches("secret", hash));
+    assertFalse(passwordHashingService.matches("other", hash));
+  }
+
+  @Test
+  void encodeAndMatches_recordHashingLatency() {
+    // Act
+    String hash = passwordHashingService.encode("secret");
+    passwordHashingService.matches("secret", hash);
+
+    // Assert
+    assertEquals(1, meterRegistry.get("hashing.duration").tag("operation", "encode").timer().count());
+    assertEquals(1, meterRegistry.get("hashing.duration").tag("operation", "verify").timer().count());
+    assertEquals(0.0, meterRegistry.get("hashing.queue.size").gauge().value());
+  }
+
+  @Test
+  void upgradeEncoding_weakerHash_needsUpgrade() {
+    // Arrange
+    String weakHash = new BCryptPasswordEncoder(4).encode("secret");
+    PasswordHashingService strongerService = new PasswordHashingService(new BCryptPasswordEncoder(5), 1, 1,
+        meterRegistry);
+
+    // Act & Assert
+    assertTrue(strongerService.upgradeEncoding(weakHash));
+    assertFalse(passwordHashingService.upgradeEncoding(weakHash));
+    strongerService.shutdown();
+  }
+
+  @Test
+  void encodeInBackground_passesHashToCallback() throws Exception {
+    // Arrange
+    CompletableFuture<String> hash = new CompletableFuture<>();
+
+    // Act
+    passwordHashingService.encodeInBackground("secret", hash::complete);
+
+    // Assert
+    assertTrue(passwordHashingService.matches("secret", hash.get(5, TimeUnit.SECONDS)));
+  }
+
+  @Test
+  void encodeAll_returnsHashesInOrderOfPasswords() {
+    // Act
+    List<String> hashes = passwordHashingService.encodeAll(List.of("first", "second", "third"));
+
+    // Assert
+    assertEquals(3, hashes.size());
+    assertTrue(passwordHashingService.matches("first", hashes.get(0)));
+    assertTrue(passwordHashingService.matches("second", hashes.get(1)));
+    assertTrue(passwordHashingService.matches("third", hashes.get(2)));
+  }
+
+  @Test
+  void awaitVerificationTime_poolSaturated_isRejectedLikeVerification() {
+    // Arrange: one thread, busy with a hash, and a queue of one, taken by another
+    CountDownLatch release = new CountDownLatch(1);
+    PasswordEncoder blockingEncoder = new BCryptPasswordEncoder(4) {
+      @Override
+      public String encode(CharSequence rawPassword) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return super.encode(rawPassword);
+      }
+    };
+    PasswordHashingService saturatedService = new PasswordHashingService(blockingEncoder, 1, 1, meterRegistry);
+    saturatedService.encodeAsync("first");
+    saturatedService.encodeAsync("second");
+
+    try {
+      // Act & Assert: an unknown user gets the same 503 as a known one
+      assertThrows(RejectedExecutionException.class, () -> saturatedService.matches("secret", "hash"));
+      assertThrows(RejectedExecutionException.class, saturatedService::awaitVerificationTime);
+      assertTrue(saturatedService.verificationTimeAsync().isCompletedExceptionally());
+    } finally {
+      release.countDown();
+      saturatedService.shutdown();
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PresenceServiceTest {
+
+  private UserRepository userRepository;
+  private ApplicationEventPublisher eventPublisher;
+  private Clock clock;
+
+  private PresenceService presenceService;
+
+  @BeforeEach
+  void setup() {
+    userRepository = mock(UserRepository.class);
+    eventPublisher = mock(ApplicationEventPublisher.class);
+    clock = mock(Clock.class);
+    when(clock.millis()).thenReturn(0L);
+    presenceService = new PresenceService(userRepository, eventPublisher, Duration.ofSeconds(60), 2,
+        new SimpleMeterRegistry(), clock);
+  }
+
+  @Test
+  void markOnline_thenFlush_writesStatusOnce() {
+    // Arrange
+    presenceService.markOnline(1L);
+    presenceService.markOnline(1L);
+
+    // Act
+    presenceService.flush();
+    presenceService.flush();
+
+    // Assert
+    assertTrue(presenceService.isOnline(1L));
+    verify(userRepository, times(1)).updateStatus(Collections.singletonList(1L), UserStatus.ONLINE);
+  }
+
+  @Test
+  void flush_onlyLastChangePerUserCounts_andBatchesAreBounded() {
+    // Arrange
+    presenceService.markOnline(1L);
+    presenceService.markOffline(1L);
+    presenceService.markOnline(2L);
+    presenceService.markOnline(3L);
+    presenceService.markOnline(4L);
+
+    // Act
+    presenceService.flush();
+
+    // Assert
+    verify(userRepository).updateStatus(Collections.singletonList(1L), UserStatus.OFFLINE);
+    verify(userRepository, times(2)).updateStatus(any(), eq(UserStatus.ONLINE));
+  }
+
+  @Test
+  void flush_failedWrite_isRetried() {
+    // Arrange
+    presenceService.markOnline(1L);
+    when(userRepository.updateStatus(any(), any())).thenThrow(new RuntimeException("database down"))
+        .thenReturn(1);
+
+    // Act
+    presenceService.flush();
+    presenceService.flush();
+
+    // Assert
+    verify(userRepository, times(2)).updateStatus(Collections.singletonList(1L), UserStatus.ONLINE);
+  }
+
+  @Test
+  void expireInactiveUsers_withoutHeartbeat_goesOffline() {
+    // Arrange
+    presenceService.markOnline(1L);
+    presenceService.markOnline(2L);
+    when(clock.millis()).thenReturn(50_000L);
+    presenceService.heartbeat(2L);
+    when(clock.millis()).thenReturn(70_000L);
+
+    // Act
+    presenceService.expireInactiveUsers();
+    presenceService.flush();
+
+    // Assert
+    assertFalse(presenceService.isOnline(1L));
+    assertTrue(presenceService.isOnline(2L));
+    assertFalse(presenceService.heartbeat(1L));
+    verify(userRepository).updateStatus(Collections.singletonList(1L), UserStatus.OFFLINE);
+    verify(eventPublisher, times(3)).publishEvent(any(UserChangedEvent.class));
+  }
+
+  @Test
+  void applyTo_overlaysLiveStatus() {
+    // Arrange
+    presenceService.markOnline(1L);
+    UserGetDTO online = userGetDTO(1L, UserStatus.OFFLINE);
+    UserGetDTO unknown = userGetDTO(2L, UserStatus.OFFLINE);
+
+    // Act
+    presenceService.applyTo(online);
+    presenceService.applyTo(unknown);
+
+    // Assert
+    assertEquals(UserStatus.ONLINE, online.getStatus());
+    assertEquals(UserStatus.OFFLINE, unknown.getStatus());
+  }
+
+  @Test
+  void adoptPersistedOnlineUsers_tracksStoredOnlineUsers() {
+    // Arrange
+    List<Long> storedOnline = Arrays.asList(1L, 2L);
+    when(userRepository.findIdsByStatus(UserStatus.ONLINE)).thenReturn(storedOnline);
+
+    // Act
+    presenceService.adoptPersistedOnlineUsers();
+
+    // Assert
+    assertTrue(presenceService.isOnline(1L));
+    assertTrue(presenceService.heartbeat(2L));
+    assertEquals(UserStatus.ONLINE, presenceService.statusOf(1L, UserStatus.OFFLINE));
+  }
+
+  private static UserGetDTO userGetDTO(Long id, UserStatus status) {
+    UserGetDTO userGetDTO = new UserGetDTO();
+    userGetDTO.setId(id);
+    userGetDTO.setStatus(status);
+    return userGetDTO;
+  }
+}
@@ -0,0 +1,149 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@WebAppConfiguration
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:writebehindtestdb",
+    "users.write-behind.enabled=true",
+    // only flushed by the tests
+    "users.write-behind.flush-interval-ms=3600000"
+})
+class ProfileWriteBufferIntegrationTest {
+
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private ProfileWriteBuffer profileWriteBuffer;
+
+  @BeforeEach
+  void setup() {
+    profileWriteBuffer.flush();
+    userRepository.deleteAll();
+  }
+
+  private User createUser(String username) {
+    User user = new User();
+    user.setUsername(username);
+    user.setPassword("securePassword123");
+    return userService.createUser(user);
+  }
+
+  private static UserPutDTO update(String username, LocalDate birthDate) {
+    UserPutDTO userPutDTO = new UserPutDTO();
+    userPutDTO.setUsername(username);
+    userPutDTO.setBirthDate(birthDate);
+    return userPutDTO;
+  }
+
+  @Test
+  void updateUser_isOverlaidOnReadsUntilFlushed() {
+    // Arrange
+    User user = createUser("buffered");
+    String versionBefore = userService.getUserProfile(user.getId()).getVersion();
+
+    // Act
+    userService.updateUser(user.getId(), update("renamed", LocalDate.of(1990, 5, 17)), null);
+
+    // Assert
+    assertNull(userRepository.findById(user.getId()).orElseThrow().getBirthDate());
+    assertNotEquals(versionBefore, userService.getUserProfile(user.getId()).getVersion());
+    UserGetDTO userGetDTO = new UserGetDTO();
+    userGetDTO.setId(user.getId());
+    profileWriteBuffer.applyTo(userGetDTO);
+    assertEquals("renamed", userGetDTO.getUsername());
+    assertEquals("1990-05-17", userGetDTO.getBirthDate());
+    // the new username logs in, the old one does not
+    assertEquals(user.getId(), userService.loginUser("renamed", "securePassword123").getId());
+    assertThrows(ResponseStatusException.class, () -> userService.loginUser("buffered", "securePassword123"));
+
+    // Act
+    profileWriteBuffer.flush();
+
+    // Assert
+    User stored = userRepository.findById(user.getId()).orElseThrow();
+    assertEquals("renamed", stored.getUsername());
+    assertEquals(LocalDate.of(1990, 5, 17), stored.getBirthDate());
+    assertTrue(profileWriteBuffer.pendingRevisionOf(user.getId()).isEmpty());
+  }
+
+  @Test
+  void updateUser_severalUpdates_lastWriteWinsPerFieldInOneWrite() {
+    // Arrange
+    User user = createUser("coalesced");
+    Long versionBefore = userRepository.findById(user.getId()).orElseThrow().getVersion();
+
+    // Act
+    userService.updateUser(user.getId(), update(null, LocalDate.of(1980, 1, 1)), null);
+    userService.updateUser(user.getId(), update("coalesced-2", null), null);
+    userService.updateUserBirthDate(user.getId(), LocalDate.of(1985, 2, 2));
+    profileWriteBuffer.flush();
+
+    // Assert
+    User stored = userRepository.findById(user.getId()).orElseThrow();
+    assertEquals("coalesced-2", stored.getUsername());
+    assertEquals(LocalDate.of(1985, 2, 2), stored.getBirthDate());
+    assertEquals(versionBefore + 1, stored.getVersion());
+  }
+
+  @Test
+  void updateUser_usernameOfBufferedUpdate_isReserved() {
+    // Arrange
+    User first = createUser("first");
+    User second = createUser("second");
+    userService.updateUser(first.getId(), update("taken", null), null);
+
+    // Act & Assert
+    ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+        () -> userService.updateUser(second.getId(), update("taken", null), null));
+    assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+    assertThrows(ResponseStatusException.class, () -> createUser("taken"));
+  }
+
+  @Test
+  void updateUser_withExpectedVersion_usernameOfBufferedUpdateIsReserved() {
+    // Arrange
+    User first = createUser("first");
+    User second = createUser("second");
+    userService.updateUser(first.getId(), update("taken", null), null);
+    Long version = userRepository.findById(second.getId()).orElseThrow().getVersion();
+
+    // Act & Assert
+    ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+        () -> userService.updateUser(second.getId(), update("taken", null), version));
+    assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+    assertEquals("second", userRepository.findById(second.getId()).orElseThrow().getUsername());
+  }
+
+  @Test
+  void updateUser_withExpectedVersion_writesBufferedUpdateFirst() {
+    // Arrange
+    User user = createUser("conditional");
+    userService.updateUser(user.getId(), update(null, LocalDate.of(1970, 3, 3)), null);
+    Long storedVersion = userRepository.findById(user.getId()).orElseThrow().getVersion();
+
+    // Act & Assert: based on the stored version, which the buffered update replaces
+    ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+        () -> userService.updateUser(user.getId(), update("conditional-2", null), storedVersion));
+    assertEquals(HttpStatus.PRECONDITION_FAILED, exception.getStatus());
+    assertEquals(LocalDate.of(1970, 3, 3), userRepository.findById(user.getId()).orElseThrow().getBirthDate());
+  }
+}
@@ -0,0 +1,123 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+  private SimpleMeterRegistry meterRegistry;
+  private SingleFlight<Long, String> singleFlight;
+
+  @BeforeEach
+  void setup() {
+    meterRegistry = new SimpleMeterRegistry();
+    singleFlight = new SingleFlight<>("test", meterRegistry);
+  }
+
+  @Test
+  void execute_concurrentCallsForSameKey_runOnceAndShareResult() throws Exception {
+    // Arrange
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    // Act
+    List<Future<String>> results = new ArrayList<>();
+    try {
+      for (int i = 0; i < 8; i++) {
+        results.add(executor.submit(() -> singleFlight.execute(1L, key -> {
+          calls.incrementAndGet();
+          await(release);
+          return "user " + key;
+        })));
+      }
+      awaitCount("coalesced", 7);
+      release.countDown();
+
+      // Assert
+      for (Future<String> result : results) {
+        assertEquals("user 1", result.get(5, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, calls.get());
+    assertEquals(1, count("executed"));
+    assertEquals(7, count("coalesced"));
+  }
+
+  @Test
+  void execute_failingCall_sharesExceptionAndRunsAgainAfterwards() throws Exception {
+    // Arrange
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    IllegalStateException failure = new IllegalStateException("not found");
+
+    // Act
+    try {
+      Future<String> first = executor.submit(() -> singleFlight.execute(1L, key -> {
+        await(release);
+        throw failure;
+      }));
+      while (meterRegistry.get("single-flight.in-flight").gauge().value() < 1) {
+        Thread.sleep(1);
+      }
+      Future<String> second = executor.submit(() -> singleFlight.execute(1L, key -> "unexpected"));
+      awaitCount("coalesced", 1);
+      release.countDown();
+
+      // Assert
+      Exception firstFailure = assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS));
+      Exception secondFailure = assertThrows(Exception.class, () -> second.get(5, TimeUnit.SECONDS));
+      assertSame(failure, firstFailure.getCause());
+      assertSame(failure, secondFailure.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    // nothing is cached, not even a failure
+    assertEquals("user 1", singleFlight.execute(1L, key -> "user " + key));
+    assertEquals(0, meterRegistry.get("single-flight.in-flight").gauge().value());
+  }
+
+  @Test
+  void execute_differentKeys_areNotMerged() {
+    // Act
+    String first = singleFlight.execute(1L, key -> singleFlight.execute(2L, other -> "user " + other));
+
+    // Assert
+    assertEquals("user 2", first);
+    assertEquals(2, count("executed"));
+    assertEquals(0, count("coalesced"));
+  }
+
+  private double count(String result) {
+    return meterRegistry.get("single-flight.calls").tag("result", result).counter().count();
+  }
+
+  private void awaitCount(String result, int expected) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (count(result) < expected && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class UserListVersionTest {
+
+  private UserRepository userRepository;
+  private UserListVersion userListVersion;
+
+  @BeforeEach
+  void setup() {
+    userRepository = mock(UserRepository.class);
+    when(userRepository.findUsersVersion()).thenReturn("3.7");
+    userListVersion = new UserListVersion(userRepository);
+    userListVersion.seed();
+  }
+
+  @Test
+  void get_withoutChanges_doesNotQuery() {
+    // Act
+    String first = userListVersion.get();
+    String second = userListVersion.get();
+
+    // Assert
+    assertEquals(first, second);
+    verify(userRepository, times(1)).findUsersVersion();
+  }
+
+  @Test
+  void get_afterChange_differs() {
+    // Arrange
+    String before = userListVersion.get();
+
+    // Act
+    userListVersion.onUserChanged(UserChangedEvent.presence(1L, UserStatus.ONLINE).localOnly());
+
+    // Assert
+    assertNotEquals(before, userListVersion.get());
+  }
+
+  @Test
+  void get_otherProcessWithSameCounts_differs() {
+    // Arrange: e.g. after a restart, or another instance
+    UserListVersion other = new UserListVersion(userRepository);
+    other.seed();
+
+    // Act & Assert
+    assertNotEquals(userListVersion.get(), other.get());
+  }
+}
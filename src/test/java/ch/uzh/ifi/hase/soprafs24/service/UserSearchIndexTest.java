@@ -0,0 +1,112 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserChangeType;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.UserSummary;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserSearchResultDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class UserSearchIndexTest {
+
+  private UserService userService;
+  private UserSearchIndex searchIndex;
+
+  @BeforeEach
+  void setup() {
+    userService = mock(UserService.class);
+    searchIndex = new UserSearchIndex(userService, 0.5);
+    index(1L, "anna", "Anna Muster");
+    index(2L, "annabelle", "Annabelle Meier");
+    index(3L, "bob", "Robert Annen");
+    index(4L, "jonathan", "Jonathan Smith");
+  }
+
+  private void index(Long id, String username, String name) {
+    User user = new User();
+    user.setId(id);
+    user.setUsername(username);
+    user.setName(name);
+    searchIndex.onUserChanged(UserChangedEvent.of(UserChangeType.CREATED, user, UserStatus.OFFLINE));
+  }
+
+  private List<Long> ids(List<UserSearchResultDTO> results) {
+    return results.stream().map(UserSearchResultDTO::getId).collect(Collectors.toList());
+  }
+
+  @Test
+  void search_prefix_ranksUsernamesBeforeNames() {
+    // Act
+    List<UserSearchResultDTO> results = searchIndex.search("Ann", 0, 10);
+
+    // Assert: exact username, longer username, then the name "Annen"
+    assertEquals(List.of(1L, 2L, 3L), ids(results));
+    assertEquals("Anna Muster", results.get(0).getName());
+  }
+
+  @Test
+  void search_paging_skipsOffset() {
+    // Act & Assert
+    assertEquals(List.of(2L), ids(searchIndex.search("ann", 1, 1)));
+    assertEquals(List.of(3L), ids(searchIndex.search("ann", 2, 5)));
+  }
+
+  @Test
+  void search_typoOrSubstring_findsSimilarUsers() {
+    // Act & Assert
+    assertEquals(List.of(4L), ids(searchIndex.search("jonathn", 0, 10)));
+    assertEquals(List.of(4L), ids(searchIndex.search("smit", 0, 10)));
+    assertTrue(searchIndex.search("xyz", 0, 10).isEmpty());
+  }
+
+  @Test
+  void search_typoInMixedCaseUsername_ignoresCase() {
+    // Arrange
+    index(5L, "McAllister", "Mary McAllister");
+
+    // Act & Assert
+    assertEquals(List.of(5L), ids(searchIndex.search("mcalistr", 0, 10)));
+    assertEquals(List.of(5L), ids(searchIndex.search("MCALISTR", 0, 10)));
+  }
+
+  @Test
+  void onUserChanged_rename_replacesOldTerms() {
+    // Act
+    index(3L, "robert", "Robert Annen");
+
+    // Assert
+    assertTrue(ids(searchIndex.search("bob", 0, 10)).isEmpty());
+    assertEquals(List.of(3L), ids(searchIndex.search("rob", 0, 10)));
+    assertEquals(4, searchIndex.size());
+  }
+
+  @Test
+  void rebuild_keepsUsersIndexedFromChanges() {
+    // Arrange: the database still has the old username of user 3
+    doAnswer(invocation -> {
+      Consumer<UserSummary> consumer = invocation.getArgument(0);
+      consumer.accept(new UserSummary(3L, "Robert Annen", "bob", UserStatus.OFFLINE, LocalDate.now(), null));
+      consumer.accept(new UserSummary(5L, "Carla Zed", "carla", UserStatus.OFFLINE, LocalDate.now(), null));
+      return null;
+    }).when(userService).forEachUser(any());
+    index(3L, "robert", "Robert Annen");
+
+    // Act
+    searchIndex.rebuild();
+
+    // Assert
+    assertEquals(List.of(3L), ids(searchIndex.search("robert", 0, 10)));
+    assertEquals(List.of(5L), ids(searchIndex.search("carla", 0, 10)));
+  }
+}
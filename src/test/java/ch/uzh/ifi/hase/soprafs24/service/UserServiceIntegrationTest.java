@@ -1,7 +1,15 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
+import ch.uzh.ifi.hase.soprafs24.constant.ImportStatus;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserImportResultDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,7 +17,10 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.persistence.EntityManagerFactory;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -23,6 +34,12 @@ class UserServiceIntegrationTest {
   @Autowired
   private UserService userService;
 
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
   @BeforeEach
   void setup() {
     userRepository.deleteAll();
@@ -89,4 +106,132 @@ class UserServiceIntegrationTest {
     // Assert
     assertEquals(LocalDate.now(), createdUser.getCreationDate());
   }
+
+  @Test
+  void updateUser_changesVersionOfUserAndOfAllUsers() {
+    // Arrange
+    User user = userService.createUser(createValidUser());
+    String usersVersionBefore = userService.getUsersVersion();
+    UserPutDTO userPutDTO = new UserPutDTO();
+    userPutDTO.setBirthDate(LocalDate.of(2000, 1, 1));
+
+    // Act
+    userService.updateUser(user.getId(), userPutDTO, 0L);
+
+    // Assert
+    assertEquals("1.ONLINE", userService.getUserProfile(user.getId()).getVersion());
+    assertNotEquals(usersVersionBefore, userService.getUsersVersion());
+    assertThrows(ResponseStatusException.class, () -> userService.getUserProfile(-1L));
+  }
+
+  @Test
+  void getUserById_afterFirstLoad_isServedFromSecondLevelCache() {
+    // Arrange
+    User user = userService.createUser(createValidUser());
+    Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    statistics.clear();
+
+    // Act
+    userService.getUserById(user.getId());
+    userService.getUserById(user.getId());
+
+    // Assert
+    assertEquals(0, statistics.getEntityLoadCount());
+    assertEquals(2, statistics.getSecondLevelCacheHitCount());
+  }
+
+  @Test
+  void updateUserAndStatus_areWrittenThroughToTheCache() {
+    // Arrange
+    User user = userService.createUser(createValidUser());
+    UserPutDTO userPutDTO = new UserPutDTO();
+    userPutDTO.setUsername("renamed");
+    Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+    // Act
+    userService.updateUser(user.getId(), userPutDTO, null);
+    userRepository.updateStatus(List.of(user.getId()), UserStatus.OFFLINE);
+    statistics.clear();
+    User cached = userService.getUserById(user.getId());
+
+    // Assert
+    assertEquals(0, statistics.getEntityLoadCount());
+    assertEquals("renamed", cached.getUsername());
+    assertEquals(UserStatus.OFFLINE, cached.getStatus());
+    assertEquals(1L, cached.getVersion());
+    assertEquals(user.getId(), userRepository.findByUsername("renamed").getId());
+    assertNull(userRepository.findByUsername("testuser"));
+  }
+
+  @Test
+  void forEachUser_visitsAllUsersOrderedById() {
+    // Arrange
+    User first = createValidUser();
+    first.setUsername("first");
+    User second = createValidUser();
+    second.setUsername("second");
+    userService.createUser(first);
+    userService.createUser(second);
+
+    // Act
+    List<String> usernames = new ArrayList<>();
+    userService.forEachUser(user -> usernames.add(user.getUsername()));
+
+    // Assert
+    assertEquals(List.of("first", "second"), usernames);
+  }
+
+  @Test
+  void importUsers_reportsResultOfEveryUser() {
+    // Arrange
+    userService.createUser(createValidUser());
+
+    User newUser = createValidUser();
+    newUser.setUsername("imported");
+    User duplicateInImport = createValidUser();
+    duplicateInImport.setUsername("imported");
+    User existingUser = createValidUser();
+    User invalidUser = createValidUser();
+    invalidUser.setUsername("withoutPassword");
+    invalidUser.setPassword(" ");
+
+    // Act
+    List<UserImportResultDTO> results = userService.importUsers(
+        List.of(newUser, duplicateInImport, existingUser, invalidUser));
+
+    // Assert
+    assertEquals(ImportStatus.CREATED, results.get(0).getStatus());
+    assertEquals(ImportStatus.CONFLICT, results.get(1).getStatus());
+    assertEquals(ImportStatus.CONFLICT, results.get(2).getStatus());
+    assertEquals(ImportStatus.INVALID, results.get(3).getStatus());
+
+    User imported = userRepository.findByUsername("imported");
+    assertEquals(results.get(0).getId(), imported.getId());
+    assertEquals(UserStatus.OFFLINE, imported.getStatus());
+    assertTrue(imported.getPassword().startsWith("$2a$10$"));
+    assertEquals(2, userRepository.count());
+  }
+
+  @Test
+  void createUser_duplicateUsername_isRecordedAsConflict() {
+    // Arrange
+    userService.createUser(createValidUser());
+    long conflictsBefore = operationCount("createUser", "CONFLICT");
+    // a username that is certainly free is not looked up (see UsernameFilter), so there may be no meter yet
+    Timer findByUsername = meterRegistry.find("users.repository").tag("query", "findByUsername").timer();
+    double findByUsernameBefore = findByUsername == null ? 0 : findByUsername.count();
+
+    // Act
+    assertThrows(ResponseStatusException.class, () -> userService.createUser(createValidUser()));
+
+    // Assert
+    assertEquals(conflictsBefore + 1, operationCount("createUser", "CONFLICT"));
+    assertEquals(findByUsernameBefore + 1,
+        meterRegistry.get("users.repository").tag("query", "findByUsername").timer().count());
+  }
+
+  private long operationCount(String operation, String outcome) {
+    return meterRegistry.find("users.operation").tags("operation", operation, "outcome", outcome)
+        .timers().stream().mapToLong(timer -> timer.count()).sum();
+  }
 }
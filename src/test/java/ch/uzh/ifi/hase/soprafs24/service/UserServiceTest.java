@@ -1,20 +1,43 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
+import ch.uzh.ifi.hase.soprafs24.constant.AuditEventType;
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.journal.AuditJournal;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs24.security.AuthenticatedUser;
+import ch.uzh.ifi.hase.soprafs24.security.TokenCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class UserServiceTest {
@@ -22,6 +45,35 @@ class UserServiceTest {
   @Mock
   private UserRepository userRepository;
 
+  @Mock
+  private PresenceService presenceService;
+
+  @Mock
+  private ApplicationEventPublisher eventPublisher;
+
+  @Mock
+  private ProfileWriteBuffer profileWriteBuffer;
+
+  @Mock
+  private AuditJournal auditJournal;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  @Spy
+  private TokenCache tokenCache = new TokenCache(100, Duration.ofMinutes(10));
+
+  @Spy
+  private PasswordHashingService passwordHashingService = new PasswordHashingService(new BCryptPasswordEncoder(), 1, 8,
+      new SimpleMeterRegistry());
+
+  @Spy
+  private UsernameFilter usernameFilter = new UsernameFilter(mock(UserRepository.class), 1000, 0.01,
+      new SimpleMeterRegistry());
+
+  @Spy
+  private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
   @InjectMocks
   private UserService userService;
 
@@ -58,6 +110,19 @@ class UserServiceTest {
         () -> assertTrue(new BCryptPasswordEncoder().matches("testPassword", createdUser.getPassword())));
   }
 
+  @Test
+  void createUser_validInput_hashesBeforeTransactionStarts() {
+    // Act
+    userService.createUser(testUser);
+
+    // Assert
+    InOrder inOrder = inOrder(passwordHashingService, transactionManager, userRepository);
+    inOrder.verify(passwordHashingService).encode("testPassword");
+    inOrder.verify(transactionManager).getTransaction(any());
+    inOrder.verify(userRepository).save(any());
+    inOrder.verify(transactionManager).commit(any());
+  }
+
   @Test
   void createUser_duplicateUsername_throwsConflictException() {
     // Arrange
@@ -100,4 +165,215 @@ class UserServiceTest {
     // Assert
     assertEquals(UserStatus.ONLINE, createdUser.getStatus());
   }
+
+  @Test
+  void authenticate_onlineUser_isCachedAfterFirstLookup() {
+    // Arrange
+    testUser.setToken("token-1");
+    when(userRepository.findByToken("token-1")).thenReturn(testUser);
+    when(presenceService.isOnline(1L)).thenReturn(true);
+
+    // Act
+    AuthenticatedUser first = userService.authenticate("token-1");
+    AuthenticatedUser second = userService.authenticate("token-1");
+
+    // Assert
+    assertEquals(1L, first.getId());
+    assertSame(first, second);
+    verify(userRepository, times(1)).findByToken("token-1");
+  }
+
+  @Test
+  void authenticate_unknownOrOfflineUser_returnsNull() {
+    // Arrange
+    testUser.setToken("token-1");
+    when(userRepository.findByToken("token-1")).thenReturn(testUser);
+    when(presenceService.isOnline(1L)).thenReturn(false);
+
+    // Act & Assert
+    assertNull(userService.authenticate("token-1"));
+    assertNull(userService.authenticate("unknown"));
+  }
+
+  @Test
+  void logoutUser_onlineUser_marksOfflineWithoutWriting() {
+    // Arrange
+    when(presenceService.isOnline(1L)).thenReturn(true);
+
+    // Act
+    userService.logoutUser(1L);
+
+    // Assert
+    verify(presenceService).markOffline(1L);
+    verify(userRepository, never()).save(any());
+  }
+
+  @Test
+  void logoutUser_unknownUser_throwsNotFound() {
+    // Arrange
+    when(userRepository.existsById(99L)).thenReturn(false);
+
+    // Act & Assert
+    assertThrows(ResponseStatusException.class, () -> userService.logoutUser(99L));
+    verify(presenceService, never()).markOffline(any());
+  }
+
+  @Test
+  void loginUser_validCredentials_marksOnline() {
+    // Arrange
+    testUser.setPassword(new BCryptPasswordEncoder().encode("testPassword"));
+    when(userRepository.findByUsername("testuser")).thenReturn(testUser);
+
+    // Act
+    userService.loginUser("testuser", "testPassword");
+
+    // Assert
+    verify(presenceService).markOnline(1L);
+    verify(userRepository, never()).save(any());
+    verify(auditJournal).record(AuditEventType.LOGIN, 1L, "testuser");
+  }
+
+  @Test
+  void loginUser_unknownUsername_takesVerificationTimeWithoutHashing() {
+    // Arrange
+    testUser.setPassword(new BCryptPasswordEncoder().encode("testPassword"));
+    when(userRepository.findByUsername("testuser")).thenReturn(testUser);
+    userService.loginUser("testuser", "testPassword");
+    clearInvocations(passwordHashingService);
+
+    // Act
+    long start = System.nanoTime();
+    ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+        () -> userService.loginUser("unknown", "testPassword"));
+    long duration = System.nanoTime() - start;
+
+    // Assert
+    assertEquals(HttpStatus.UNAUTHORIZED, exception.getStatus());
+    verify(passwordHashingService, never()).matches(any(), any());
+    // the average of the single verification above
+    assertTrue(duration >= Duration.ofMillis(10).toNanos(), "took " + duration + " ns");
+  }
+
+  @Test
+  void updateUser_staleExpectedVersion_throwsPreconditionFailed() {
+    // Arrange
+    testUser.setVersion(4L);
+    when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+
+    // Act & Assert
+    ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+        () -> userService.updateUser(1L, new UserPutDTO(), 3L));
+    assertEquals(HttpStatus.PRECONDITION_FAILED, exception.getStatus());
+    verify(userRepository, never()).save(any());
+  }
+
+  @Test
+  void loginUser_outdatedHash_isUpgradedInBackground() {
+    // Arrange
+    String outdatedHash = new BCryptPasswordEncoder(4).encode("testPassword");
+    testUser.setPassword(outdatedHash);
+    when(userRepository.findByUsername("testuser")).thenReturn(testUser);
+
+    // Act
+    userService.loginUser("testuser", "testPassword");
+
+    // Assert
+    verify(userRepository, timeout(5000)).updatePassword(eq(1L), anyString(), eq(outdatedHash));
+  }
+
+  @Test
+  void loginUser_currentHash_isNotUpgraded() {
+    // Arrange
+    testUser.setPassword(new BCryptPasswordEncoder().encode("testPassword"));
+    when(userRepository.findByUsername("testuser")).thenReturn(testUser);
+
+    // Act
+    userService.loginUser("testuser", "testPassword");
+
+    // Assert
+    verify(userRepository, never()).updatePassword(any(), any(), any());
+  }
+
+  @Test
+  void getUserProfile_concurrentBurst_loadsUserOncePerKey() throws Exception {
+    // Arrange
+    CountDownLatch release = new CountDownLatch(1);
+    when(userRepository.findById(1L)).thenAnswer(invocation -> {
+      release.await();
+      return Optional.of(testUser);
+    });
+    ExecutorService executor = Executors.newFixedThreadPool(10);
+
+    // Act
+    List<Future<UserProfile>> profiles = new ArrayList<>();
+    try {
+      for (int i = 0; i < 10; i++) {
+        profiles.add(executor.submit(() -> userService.getUserProfile(1L)));
+      }
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (coalescedReads() < 9 && System.nanoTime() < deadline) {
+        Thread.sleep(1);
+      }
+      release.countDown();
+
+      // Assert
+      List<UserGetDTO> results = new ArrayList<>();
+      for (Future<UserProfile> profile : profiles) {
+        results.add(profile.get(5, TimeUnit.SECONDS).getUser());
+      }
+      assertTrue(results.stream().allMatch(profile -> "testuser".equals(profile.getUsername())));
+      // every caller gets its own copy to apply the live status to
+      assertEquals(10, results.stream().distinct().count());
+    } finally {
+      executor.shutdownNow();
+    }
+    verify(userRepository, times(1)).findById(1L);
+    assertEquals(9, coalescedReads());
+  }
+
+  @Test
+  void getUserProfile_afterBurst_loadsAgain() {
+    // Arrange
+    when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
+
+    // Act
+    userService.getUserProfile(1L);
+    testUser.setUsername("renamed");
+    UserGetDTO profile = userService.getUserProfile(1L).getUser();
+
+    // Assert
+    assertEquals("renamed", profile.getUsername());
+    verify(userRepository, times(2)).findById(1L);
+  }
+
+  @Test
+  void createUser_usernameCertainlyFree_skipsLookup() {
+    // Arrange: the filter holds no username
+    usernameFilter.rebuild();
+
+    // Act
+    userService.createUser(testUser);
+
+    // Assert
+    verify(userRepository, never()).findByUsername(any());
+    assertTrue(usernameFilter.mightExist("testuser"));
+  }
+
+  @Test
+  void isUsernameAvailable_takenUsername_returnsFalse() {
+    // Arrange
+    usernameFilter.rebuild();
+    usernameFilter.add("testuser");
+    when(userRepository.findByUsername("testuser")).thenReturn(testUser);
+
+    // Act & Assert
+    assertFalse(userService.isUsernameAvailable("testuser"));
+    assertTrue(userService.isUsernameAvailable("someoneelse"));
+    verify(userRepository, never()).findByUsername("someoneelse");
+  }
+
+  private double coalescedReads() {
+    return meterRegistry.get("single-flight.calls").tag("name", "users.profile").tag("result", "coalesced")
+        .counter().count();
+  }
 }
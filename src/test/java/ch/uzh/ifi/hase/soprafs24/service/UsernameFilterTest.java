@@ -0,0 +1,97 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.event.UserChangedEvent;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserEventDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UsernameFilterTest {
+
+  private UserRepository userRepository;
+  private SimpleMeterRegistry meterRegistry;
+  private UsernameFilter usernameFilter;
+  private AtomicInteger lookups;
+
+  @BeforeEach
+  void setup() {
+    userRepository = mock(UserRepository.class);
+    when(userRepository.streamAllUsernames()).thenReturn(Stream.of("anna", "bob"));
+    meterRegistry = new SimpleMeterRegistry();
+    usernameFilter = new UsernameFilter(userRepository, 1000, 0.01, meterRegistry);
+    lookups = new AtomicInteger();
+  }
+
+  @Test
+  void exists_beforeRebuild_alwaysLooksUp() {
+    // Act
+    boolean exists = usernameFilter.exists("carla", this::lookup);
+
+    // Assert
+    assertFalse(exists);
+    assertEquals(1, lookups.get());
+    assertTrue(usernameFilter.mightExist("carla"));
+  }
+
+  @Test
+  void exists_afterRebuild_looksUpOnlyUsernamesThatMayExist() {
+    // Arrange
+    usernameFilter.rebuild();
+
+    // Act
+    boolean anna = usernameFilter.exists("anna", this::lookup);
+    boolean carla = usernameFilter.exists("carla", this::lookup);
+
+    // Assert
+    assertTrue(anna);
+    assertFalse(carla);
+    assertEquals(1, lookups.get());
+    assertEquals(1, count("present"));
+    assertEquals(1, count("absent"));
+  }
+
+  @Test
+  void exists_usernameOfOtherInstance_isAddedFromEvent() {
+    // Arrange
+    usernameFilter.rebuild();
+    UserEventDTO change = new UserEventDTO();
+    change.setId(3L);
+    change.setUsername("dora");
+
+    // Act
+    usernameFilter.onUserChanged(new UserChangedEvent(change).localOnly());
+
+    // Assert
+    assertTrue(usernameFilter.mightExist("dora"));
+  }
+
+  @Test
+  void exists_renamedUsername_countsAsFalsePositive() {
+    // Arrange
+    usernameFilter.rebuild();
+
+    // Act: bob has been renamed, the filter still holds his old username
+    boolean bob = usernameFilter.exists("bob", username -> false);
+
+    // Assert
+    assertFalse(bob);
+    assertEquals(1, count("false-positive"));
+  }
+
+  private boolean lookup(String username) {
+    lookups.incrementAndGet();
+    return "anna".equals(username) || "bob".equals(username);
+  }
+
+  private double count(String result) {
+    return meterRegistry.get("users.username-filter.checks").tag("result", result).counter().count();
+  }
+}
@@ -0,0 +1,67 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class WarmupServiceTest {
+
+  private UserRepository userRepository;
+  private PasswordHashingService passwordHashingService;
+
+  @BeforeEach
+  void setup() {
+    userRepository = mock(UserRepository.class);
+    passwordHashingService = mock(PasswordHashingService.class);
+  }
+
+  @Test
+  void run_enabled_preloadsOnlineUsersAndCompletes() {
+    // Arrange
+    User user = new User();
+    user.setId(1L);
+    user.setName("Online User");
+    user.setUsername("online");
+    user.setStatus(UserStatus.ONLINE);
+    user.setCreationDate(LocalDate.now());
+    when(userRepository.findIdsByStatus(UserStatus.ONLINE)).thenReturn(Arrays.asList(1L, 2L));
+    when(userRepository.findAllById(any())).thenReturn(Collections.singletonList(user));
+    WarmupService warmupService = new WarmupService(userRepository, passwordHashingService, new ObjectMapper(),
+        true, 1, 3);
+
+    // Act
+    warmupService.run(null);
+
+    // Assert: at most preload-size users, each request path run per iteration
+    verify(userRepository).findAllById(Collections.singletonList(1L));
+    verify(userRepository, times(3)).findByUsername("online");
+    verify(passwordHashingService).matches(any(), any());
+    assertTrue(warmupService.whenCompleted().isDone());
+  }
+
+  @Test
+  void run_disabled_completesWithoutQueries() {
+    // Arrange
+    WarmupService warmupService = new WarmupService(userRepository, passwordHashingService, new ObjectMapper(),
+        false, 10, 3);
+    assertFalse(warmupService.whenCompleted().isDone());
+
+    // Act
+    warmupService.run(null);
+
+    // Assert
+    verifyNoInteractions(userRepository, passwordHashingService);
+    assertTrue(warmupService.whenCompleted().isDone());
+  }
+}